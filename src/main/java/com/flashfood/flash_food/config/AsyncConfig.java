@@ -37,4 +37,32 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Single-writer drain threads for batched stock mode (at most one task per food item at a time)
+     */
+    @Bean(name = "stockBatchExecutor")
+    public Executor stockBatchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(10000);
+        executor.setThreadNamePrefix("stock-batch-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Background reloads of stale cache entries (stale-while-revalidate); a full queue skips the refresh
+     */
+    @Bean(name = "cacheRefreshExecutor")
+    public Executor cacheRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("cache-refresh-");
+        executor.initialize();
+        return executor;
+    }
 }
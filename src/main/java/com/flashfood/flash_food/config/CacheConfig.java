@@ -0,0 +1,85 @@
+package com.flashfood.flash_food.config;
+
+import com.flashfood.flash_food.util.AppConstants;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Two-level caches (in-process L1, Redis L2) for item and store lookups (categories are served by CategoryTree)
+ * L1 TTLs bound how long a node that missed an invalidation can serve an old value; L2 TTLs bound Redis memory
+ *
+ * Metrics: flashfood.cache.requests (cache, level, result), flashfood.cache.loads (cache, outcome),
+ * flashfood.cache.stale.served (cache), flashfood.cache.evictions (cache, cause), flashfood.cache.l1.size (cache)
+ */
+@Configuration
+public class CacheConfig {
+    
+    @Value("${app.cache.local-max-size:10000}")
+    private long localMaxSize;
+    
+    // Food items carry live stock counts, so they are kept briefly
+    @Value("${app.cache.food-items.local-ttl-seconds:10}")
+    private long foodItemLocalTtlSeconds;
+    
+    @Value("${app.cache.food-items.remote-ttl-seconds:60}")
+    private long foodItemRemoteTtlSeconds;
+    
+    @Value("${app.cache.stores.local-ttl-seconds:300}")
+    private long storeLocalTtlSeconds;
+    
+    @Value("${app.cache.stores.remote-ttl-seconds:1800}")
+    private long storeRemoteTtlSeconds;
+    
+    // How long past its TTL an L1 entry is still served while it is reloaded in the background
+    @Value("${app.cache.stale-seconds:30}")
+    private long staleSeconds;
+    
+    // Cluster-wide load lock: held at most this long, waited on at most load-wait-ms before loading anyway
+    @Value("${app.cache.load-lock-ms:3000}")
+    private long loadLockMs;
+    
+    @Value("${app.cache.load-wait-ms:1000}")
+    private long loadWaitMs;
+    
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisTemplate<String, Object> redisTemplate,
+                                             StringRedisTemplate stringRedisTemplate,
+                                             RedisMessageListenerContainer listenerContainer,
+                                             @Qualifier("cacheRefreshExecutor") Executor refreshExecutor,
+                                             MeterRegistry meterRegistry) {
+        Consumer<String> broadcaster = cacheKey -> TwoLevelCacheManager.broadcast(stringRedisTemplate, cacheKey);
+        
+        List<TwoLevelCache> caches = List.of(
+                cache(AppConstants.CACHE_FOOD_ITEMS, AppConstants.REDIS_FOOD_ITEM_CACHE_PREFIX,
+                        foodItemLocalTtlSeconds, foodItemRemoteTtlSeconds,
+                        redisTemplate, broadcaster, refreshExecutor, meterRegistry),
+                cache(AppConstants.CACHE_STORES, AppConstants.REDIS_STORE_CACHE_PREFIX,
+                        storeLocalTtlSeconds, storeRemoteTtlSeconds,
+                        redisTemplate, broadcaster, refreshExecutor, meterRegistry));
+        
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(caches);
+        listenerContainer.addMessageListener(cacheManager, new ChannelTopic(AppConstants.REDIS_CACHE_CHANNEL));
+        return cacheManager;
+    }
+    
+    private TwoLevelCache cache(String name, String keyPrefix, long localTtlSeconds, long remoteTtlSeconds,
+                                RedisTemplate<String, Object> redisTemplate, Consumer<String> broadcaster,
+                                Executor refreshExecutor, MeterRegistry meterRegistry) {
+        return new TwoLevelCache(name, keyPrefix, localMaxSize,
+                Duration.ofSeconds(localTtlSeconds), Duration.ofSeconds(staleSeconds), Duration.ofSeconds(remoteTtlSeconds),
+                redisTemplate, broadcaster, refreshExecutor,
+                Duration.ofMillis(loadLockMs), Duration.ofMillis(loadWaitMs), meterRegistry);
+    }
+}
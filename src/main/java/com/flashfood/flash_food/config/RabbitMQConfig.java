@@ -1,10 +1,12 @@
 package com.flashfood.flash_food.config;
 
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.amqp.autoconfigure.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -18,6 +20,8 @@ public class RabbitMQConfig {
     public static final String NOTIFICATION_QUEUE = "flash-food.notification.queue";
     public static final String ORDER_QUEUE = "flash-food.order.queue";
     public static final String FLASH_SALE_QUEUE = "flash-food.flash-sale.queue";
+    public static final String ORDER_RESERVATION_QUEUE = "flash-food.order.reservation.queue";
+    public static final String ORDER_EXPIRED_QUEUE = "flash-food.order.expired.queue";
     
     // Exchange names
     public static final String NOTIFICATION_EXCHANGE = "flash-food.notification.exchange";
@@ -28,6 +32,11 @@ public class RabbitMQConfig {
     public static final String NOTIFICATION_ROUTING_KEY = "notification.#";
     public static final String ORDER_ROUTING_KEY = "order.#";
     public static final String FLASH_SALE_ROUTING_KEY = "flash-sale.#";
+    // Kept outside "order.#" so reservation messages never land in the order queue
+    public static final String ORDER_RESERVATION_ROUTING_KEY = "reservation.hold";
+    public static final String ORDER_EXPIRED_ROUTING_KEY = "reservation.expired";
+    
+    public static final int ORDER_EXPIRY_BATCH_SIZE = 100;
     
     // Notification Queue
     @Bean
@@ -69,6 +78,57 @@ public class RabbitMQConfig {
                 .with(ORDER_ROUTING_KEY);
     }
     
+    // Order Reservation Queue (delay queue without consumers)
+    // Each message carries the reservation window as per-message TTL and is dead-lettered
+    // back to the order exchange as "reservation.expired" when it runs out
+    @Bean
+    public Queue orderReservationQueue() {
+        return QueueBuilder.durable(ORDER_RESERVATION_QUEUE)
+                .deadLetterExchange(ORDER_EXCHANGE)
+                .deadLetterRoutingKey(ORDER_EXPIRED_ROUTING_KEY)
+                .build();
+    }
+    
+    @Bean
+    public Binding orderReservationBinding() {
+        return BindingBuilder
+                .bind(orderReservationQueue())
+                .to(orderExchange())
+                .with(ORDER_RESERVATION_ROUTING_KEY);
+    }
+    
+    // Order Expired Queue (reservations whose window ran out)
+    @Bean
+    public Queue orderExpiredQueue() {
+        return QueueBuilder.durable(ORDER_EXPIRED_QUEUE)
+                .build();
+    }
+    
+    @Bean
+    public Binding orderExpiredBinding() {
+        return BindingBuilder
+                .bind(orderExpiredQueue())
+                .to(orderExchange())
+                .with(ORDER_EXPIRED_ROUTING_KEY);
+    }
+    
+    /**
+     * Batch listener for expired reservations so stock is restored for many orders per transaction
+     * Waits at most one second to fill a batch
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory orderExpiryListenerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setPrefetchCount(ORDER_EXPIRY_BATCH_SIZE);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(ORDER_EXPIRY_BATCH_SIZE);
+        factory.setReceiveTimeout(1000L);
+        return factory;
+    }
+    
     // Flash Sale Queue (for mass notifications)
     @Bean
     public Queue flashSaleQueue() {
@@ -0,0 +1,492 @@
+package com.flashfood.flash_food.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Spring cache backed by a size-bounded in-process map (L1) in front of Redis (L2)
+ *
+ * Reads try L1, then L2 (copying the value into L1), then the loader. Puts write both levels. Evictions clear both
+ * levels and are handed to the broadcaster so every other node drops its L1 copy. Redis errors are logged and treated
+ * as misses: the database stays the fallback. Null values are not cached.
+ *
+ * Loads through get(key, loader) (@Cacheable(sync = true)) are single-flight: one loader per key runs on a node and
+ * concurrent callers wait for its result. Across nodes the loader takes a short Redis lock (SET NX); nodes that lose
+ * it wait for the lock to go away and take the winner's value from L2, loading themselves only if that takes too
+ * long. Callers inside a transaction never wait: they would hold their connection while polling, so they load
+ * themselves. An L1 entry past its TTL but within the stale window is still served while one background reload runs.
+ *
+ * A load that read the database before an eviction must not cache its value after it. Every eviction (local or
+ * broadcast) bumps an eviction generation for the key, and loads skip or undo their write when it changed while they
+ * ran. Loads on other nodes are covered by a second L2 delete and broadcast one load-lock TTL after the eviction.
+ *
+ * Values are shared between callers and must not be modified.
+ */
+@Slf4j
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+    
+    private static final String LOAD_LOCK_SUFFIX = ":loading";
+    private static final long REMOTE_POLL_MS = 20;
+    // Eviction generations are striped by key hash: a bump on a key only costs its stripe-mates one skipped write
+    private static final int GENERATION_STRIPES = 1024;
+    
+    /**
+     * KEYS[1] = load lock, ARGV[1] = this node's token
+     * Deletes the lock only while this node still holds it (it may have expired and been taken by another node)
+     */
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+    
+    private final String name;
+    private final String keyPrefix;
+    private final Cache<String, Entry> local;
+    private final Duration localTtl;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final Duration remoteTtl;
+    private final Consumer<String> invalidationBroadcaster;
+    private final Executor refreshExecutor;
+    private final Duration loadLockTtl;
+    private final Duration loadWait;
+    
+    // Loads running on this node, by cache key
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final String lockToken = UUID.randomUUID().toString();
+    private final AtomicLongArray evictionGenerations = new AtomicLongArray(GENERATION_STRIPES);
+    
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter remoteHits;
+    private final Counter remoteMisses;
+    private final Counter loaded;
+    private final Counter coalesced;
+    private final Counter loadedElsewhere;
+    private final Counter staleServed;
+    
+    public TwoLevelCache(String name,
+                         String keyPrefix,
+                         long localMaxSize,
+                         Duration localTtl,
+                         Duration staleTtl,
+                         Duration remoteTtl,
+                         RedisTemplate<String, Object> redisTemplate,
+                         Consumer<String> invalidationBroadcaster,
+                         Executor refreshExecutor,
+                         Duration loadLockTtl,
+                         Duration loadWait,
+                         MeterRegistry meterRegistry) {
+        super(false);
+        this.name = name;
+        this.keyPrefix = keyPrefix;
+        this.localTtl = localTtl;
+        this.redisTemplate = redisTemplate;
+        this.remoteTtl = remoteTtl;
+        this.invalidationBroadcaster = invalidationBroadcaster;
+        this.refreshExecutor = refreshExecutor;
+        this.loadLockTtl = loadLockTtl;
+        this.loadWait = loadWait;
+        this.localHits = requests(meterRegistry, "l1", "hit");
+        this.localMisses = requests(meterRegistry, "l1", "miss");
+        this.remoteHits = requests(meterRegistry, "l2", "hit");
+        this.remoteMisses = requests(meterRegistry, "l2", "miss");
+        this.loaded = loads(meterRegistry, "loaded");
+        this.coalesced = loads(meterRegistry, "coalesced");
+        this.loadedElsewhere = loads(meterRegistry, "loaded_elsewhere");
+        this.staleServed = Counter.builder("flashfood.cache.stale.served")
+                .description("Stale L1 values served while a background reload ran")
+                .tags("cache", name)
+                .register(meterRegistry);
+        this.local = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(localTtl.plus(staleTtl))
+                .removalListener((String key, Entry entry, RemovalCause cause) -> {
+                    if (cause != RemovalCause.REPLACED) {
+                        meterRegistry.counter("flashfood.cache.evictions",
+                                "cache", name, "cause", cause.name().toLowerCase()).increment();
+                    }
+                })
+                .build();
+        meterRegistry.gauge("flashfood.cache.l1.size", Tags.of("cache", name), local, Cache::estimatedSize);
+    }
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+    
+    @Override
+    protected Object lookup(Object key) {
+        String cacheKey = cacheKey(key);
+        
+        Entry entry = local.getIfPresent(cacheKey);
+        if (entry != null) {
+            localHits.increment();
+            return entry.value();
+        }
+        localMisses.increment();
+        
+        return remoteLookup(cacheKey);
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String cacheKey = cacheKey(key);
+        
+        Entry entry = local.getIfPresent(cacheKey);
+        if (entry != null) {
+            localHits.increment();
+            if (entry.isStale()) {
+                staleServed.increment();
+                refreshInBackground(cacheKey, entry.value(), valueLoader);
+            }
+            return (T) entry.value();
+        }
+        localMisses.increment();
+        
+        Object value = remoteLookup(cacheKey);
+        if (value != null) {
+            return (T) value;
+        }
+        return (T) load(key, cacheKey, valueLoader);
+    }
+    
+    @Override
+    public void put(Object key, Object value) {
+        write(cacheKey(key), value);
+    }
+    
+    @Override
+    public void evict(Object key) {
+        String cacheKey = cacheKey(key);
+        evictEverywhere(cacheKey);
+        // Again once any load that read the database before this eviction has written its value
+        CompletableFuture.delayedExecutor(loadLockTtl.toMillis(), TimeUnit.MILLISECONDS)
+                .execute(() -> evictEverywhere(cacheKey));
+    }
+    
+    @Override
+    public void clear() {
+        bumpAllGenerations();
+        local.invalidateAll();
+        List<String> keys = new ArrayList<>();
+        ScanOptions options = ScanOptions.scanOptions().match(keyPrefix + "*").count(500).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            cursor.forEachRemaining(keys::add);
+            if (!keys.isEmpty()) {
+                redisTemplate.delete(keys);
+            }
+        } catch (Exception e) {
+            log.error("Error clearing Redis cache {}", name, e);
+        }
+        invalidationBroadcaster.accept(keyPrefix + "*");
+    }
+    
+    /**
+     * Drop L1 entries after another node evicted them; a key ending in "*" drops the whole cache
+     */
+    public void invalidateLocal(String cacheKey) {
+        if (cacheKey.endsWith("*")) {
+            bumpAllGenerations();
+            local.invalidateAll();
+        } else {
+            bumpGeneration(cacheKey);
+            local.invalidate(cacheKey);
+        }
+    }
+    
+    /**
+     * Whether a Redis key belongs to this cache
+     */
+    public boolean owns(String cacheKey) {
+        return cacheKey.startsWith(keyPrefix);
+    }
+    
+    /**
+     * Run the loader once per key on this node; callers arriving meanwhile wait for the same result or exception
+     */
+    private Object load(Object key, String cacheKey, Callable<?> valueLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(cacheKey, future);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+        
+        try {
+            Object value = loadOnce(cacheKey, valueLoader);
+            future.complete(value);
+            return value;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            inFlight.remove(cacheKey, future);
+        }
+    }
+    
+    /**
+     * Refresh a stale entry on a background thread unless a load for the key is already running
+     */
+    private void refreshInBackground(String cacheKey, Object staleValue, Callable<?> valueLoader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(cacheKey, future) != null) {
+            return;
+        }
+        
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    future.complete(loadOnce(cacheKey, valueLoader));
+                } catch (Exception e) {
+                    // Readers keep the stale value until it expires; the next stale read retries
+                    log.warn("Error refreshing {} in the background", cacheKey, e);
+                    future.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(cacheKey, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Refresh queue full: anyone who joined keeps the stale value; the next stale read tries again
+            inFlight.remove(cacheKey, future);
+            future.complete(staleValue);
+        }
+    }
+    
+    /**
+     * Load from the database unless another node is already doing it, then write both levels
+     */
+    private Object loadOnce(String cacheKey, Callable<?> valueLoader) throws Exception {
+        long generation = generation(cacheKey);
+        String lockKey = cacheKey + LOAD_LOCK_SUFFIX;
+        boolean locked = tryLoadLock(lockKey);
+        if (!locked && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            Object value = awaitRemote(lockKey, cacheKey, generation);
+            if (value != null) {
+                loadedElsewhere.increment();
+                return value;
+            }
+        }
+        
+        try {
+            Object value = valueLoader.call();
+            loaded.increment();
+            writeUnlessEvicted(cacheKey, value, generation);
+            return value;
+        } finally {
+            if (locked) {
+                releaseLoadLock(lockKey);
+            }
+        }
+    }
+    
+    private boolean tryLoadLock(String lockKey) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, lockToken, loadLockTtl));
+        } catch (Exception e) {
+            // Without Redis every node loads for itself
+            log.warn("Error taking load lock {}", lockKey, e);
+            return true;
+        }
+    }
+    
+    private void releaseLoadLock(String lockKey) {
+        try {
+            redisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(lockKey), lockToken);
+        } catch (Exception e) {
+            // Expires after loadLockTtl
+            log.warn("Error releasing load lock {}", lockKey, e);
+        }
+    }
+    
+    /**
+     * Wait for another node's load to finish (its lock is released after it wrote L2), then read its value
+     */
+    private Object awaitRemote(String lockKey, String cacheKey, long generation) throws InterruptedException {
+        long deadline = System.nanoTime() + loadWait.toNanos();
+        try {
+            while (Boolean.TRUE.equals(redisTemplate.hasKey(lockKey))) {
+                if (System.nanoTime() >= deadline) {
+                    return null;
+                }
+                Thread.sleep(REMOTE_POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Error waiting for load lock {}", lockKey, e);
+            return null;
+        }
+        
+        Object value = remoteGet(cacheKey);
+        if (value != null) {
+            putLocalUnlessEvicted(cacheKey, value, generation);
+        }
+        return value;
+    }
+    
+    private Object remoteLookup(String cacheKey) {
+        long generation = generation(cacheKey);
+        Object value = remoteGet(cacheKey);
+        if (value != null) {
+            remoteHits.increment();
+            putLocalUnlessEvicted(cacheKey, value, generation);
+        } else {
+            remoteMisses.increment();
+        }
+        return value;
+    }
+    
+    private void write(String cacheKey, Object value) {
+        if (value == null) {
+            return;
+        }
+        local.put(cacheKey, new Entry(value, freshUntil()));
+        try {
+            redisTemplate.opsForValue().set(cacheKey, value, remoteTtl);
+        } catch (Exception e) {
+            log.warn("Error writing {} to Redis cache", cacheKey, e);
+        }
+    }
+    
+    /**
+     * Write both levels unless the key was evicted since the load began; an eviction racing the write wins
+     */
+    private void writeUnlessEvicted(String cacheKey, Object value, long generation) {
+        if (generation(cacheKey) != generation) {
+            return;
+        }
+        write(cacheKey, value);
+        if (generation(cacheKey) != generation) {
+            local.invalidate(cacheKey);
+            deleteRemote(cacheKey);
+        }
+    }
+    
+    /**
+     * Copy an L2 value into L1 unless the key was evicted since it was read
+     */
+    private void putLocalUnlessEvicted(String cacheKey, Object value, long generation) {
+        if (generation(cacheKey) != generation) {
+            return;
+        }
+        local.put(cacheKey, new Entry(value, freshUntil()));
+        if (generation(cacheKey) != generation) {
+            local.invalidate(cacheKey);
+        }
+    }
+    
+    private void evictEverywhere(String cacheKey) {
+        bumpGeneration(cacheKey);
+        local.invalidate(cacheKey);
+        deleteRemote(cacheKey);
+        invalidationBroadcaster.accept(cacheKey);
+    }
+    
+    private void deleteRemote(String cacheKey) {
+        try {
+            redisTemplate.delete(cacheKey);
+        } catch (Exception e) {
+            // The entry still expires after remoteTtl
+            log.error("Error evicting {} from Redis cache", cacheKey, e);
+        }
+    }
+    
+    private long generation(String cacheKey) {
+        return evictionGenerations.get(stripe(cacheKey));
+    }
+    
+    private void bumpGeneration(String cacheKey) {
+        evictionGenerations.incrementAndGet(stripe(cacheKey));
+    }
+    
+    private void bumpAllGenerations() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            evictionGenerations.incrementAndGet(i);
+        }
+    }
+    
+    private static int stripe(String cacheKey) {
+        return cacheKey.hashCode() & (GENERATION_STRIPES - 1);
+    }
+    
+    private String cacheKey(Object key) {
+        return keyPrefix + key;
+    }
+    
+    private long freshUntil() {
+        return System.nanoTime() + localTtl.toNanos();
+    }
+    
+    private Object remoteGet(String cacheKey) {
+        try {
+            return redisTemplate.opsForValue().get(cacheKey);
+        } catch (Exception e) {
+            log.warn("Error reading {} from Redis cache, falling back to the database", cacheKey, e);
+            return null;
+        }
+    }
+    
+    private Counter requests(MeterRegistry meterRegistry, String level, String result) {
+        return Counter.builder("flashfood.cache.requests")
+                .description("Two-level cache lookups by level and result")
+                .tags("cache", name, "level", level, "result", result)
+                .register(meterRegistry);
+    }
+    
+    private Counter loads(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("flashfood.cache.loads")
+                .description("Cache misses by how they were resolved")
+                .tags("cache", name, "outcome", outcome)
+                .register(meterRegistry);
+    }
+    
+    /**
+     * L1 value with the System.nanoTime after which it is served stale
+     */
+    private record Entry(Object value, long freshUntil) {
+        
+        boolean isStale() {
+            return System.nanoTime() - freshUntil > 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.flashfood.flash_food.config;
+
+import com.flashfood.flash_food.util.AppConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.transaction.AbstractTransactionSupportingCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Cache manager for the fixed set of two-level caches declared in CacheConfig
+ *
+ * Evictions are broadcast on "cache:invalidate" with the Redis key as the message; every node (this one included,
+ * harmlessly) drops the matching L1 entry. Pub/sub is fire-and-forget, so a node that misses a message serves the old
+ * value until its L1 entry expires. Puts and evictions made inside a transaction are applied after it commits.
+ */
+@Slf4j
+public class TwoLevelCacheManager extends AbstractTransactionSupportingCacheManager implements MessageListener {
+    
+    private final List<TwoLevelCache> caches;
+    
+    public TwoLevelCacheManager(List<TwoLevelCache> caches) {
+        this.caches = caches;
+        setTransactionAware(true);
+    }
+    
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        return caches;
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String cacheKey = new String(message.getBody(), StandardCharsets.UTF_8);
+        for (TwoLevelCache cache : caches) {
+            if (cache.owns(cacheKey)) {
+                cache.invalidateLocal(cacheKey);
+                return;
+            }
+        }
+        log.warn("Ignoring invalidation for unknown cache key: {}", cacheKey);
+    }
+    
+    /**
+     * Broadcaster handed to every cache
+     */
+    public static void broadcast(StringRedisTemplate stringRedisTemplate, String cacheKey) {
+        try {
+            stringRedisTemplate.convertAndSend(AppConstants.REDIS_CACHE_CHANNEL, cacheKey);
+        } catch (Exception e) {
+            // Other nodes drop the entry when their L1 copy expires
+            log.error("Error broadcasting cache invalidation for {}", cacheKey, e);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.flashfood.flash_food.controller;
 import com.flashfood.flash_food.dto.request.CategoryRequest;
 import com.flashfood.flash_food.dto.response.ApiResponse;
 import com.flashfood.flash_food.dto.response.CategoryResponse;
+import com.flashfood.flash_food.dto.response.FacetCountsResponse;
 import com.flashfood.flash_food.service.CategoryService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -140,6 +141,17 @@ public class CategoryController {
         return ResponseEntity.ok(ApiResponse.success(categories));
     }
     
+    /**
+     * Get live flash-sale item counts per category, store and geo cell
+     * GET /api/categories/facets
+     */
+    @GetMapping("/facets")
+    public ResponseEntity<ApiResponse<FacetCountsResponse>> getFacetCounts() {
+        log.info("REST request to get facet counts");
+        FacetCountsResponse facets = categoryService.findFacetCounts();
+        return ResponseEntity.ok(ApiResponse.success(facets));
+    }
+    
     /**
      * Get child categories of a parent
      * GET /api/categories/{parentId}/children
@@ -1,9 +1,12 @@
 package com.flashfood.flash_food.controller;
 
+import com.flashfood.flash_food.dto.request.FlashSaleFilter;
 import com.flashfood.flash_food.dto.request.FoodItemRequest;
 import com.flashfood.flash_food.dto.response.ApiResponse;
+import com.flashfood.flash_food.dto.response.CursorPageResponse;
 import com.flashfood.flash_food.dto.response.FoodItemResponse;
 import com.flashfood.flash_food.service.FoodItemService;
+import com.flashfood.flash_food.util.AppConstants;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -102,6 +105,22 @@ public class FoodItemController {
         return ResponseEntity.ok(ApiResponse.success(response));
     }
 
+    /**
+     * Get all food items with keyset pagination (no total count, constant cost at any depth)
+     * @param cursor nextCursor of the previous slice; omit for the first one
+     * @param size Slice size
+     * @return Slice of food items, newest first
+     */
+    @GetMapping("/scroll")
+    public ResponseEntity<ApiResponse<CursorPageResponse<FoodItemResponse>>> scrollAllFoodItems(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size) {
+
+        log.info("GET /api/food-items/scroll - Scrolling all food items");
+        CursorPageResponse<FoodItemResponse> response = foodItemService.scrollAll(cursor, size);
+        return ResponseEntity.ok(ApiResponse.success(response));
+    }
+
     /**
      * Get food items by store
      * @param storeId Store ID
@@ -152,34 +171,38 @@ public class FoodItemController {
 
     /**
      * Get available food items (in stock, not expired, within sale period)
-     * @param pageable Pagination parameters
+     * @param filter Optional storeId, categoryId, minPrice, maxPrice and minDiscount
+     * @param pageable Pagination parameters; sort by saleEndTime, discountPercentage or flashPrice
      * @return Page of available food items
      */
     @GetMapping("/available")
     public ResponseEntity<ApiResponse<Page<FoodItemResponse>>> getAvailableFoodItems(
+            @Valid FlashSaleFilter filter,
             @PageableDefault(size = 20, sort = "flashPrice", direction = Sort.Direction.ASC) Pageable pageable) {
         
         log.info("GET /api/food-items/available - Getting available food items");
-        Page<FoodItemResponse> response = foodItemService.findAvailableFoodItems(pageable);
+        Page<FoodItemResponse> response = foodItemService.findAvailableFoodItems(filter, pageable);
         return ResponseEntity.ok(ApiResponse.success(response));
     }
 
     /**
      * Get flash sale food items (currently on sale)
-     * @param pageable Pagination parameters
+     * @param filter Optional storeId, categoryId, minPrice, maxPrice and minDiscount
+     * @param pageable Pagination parameters; sort by saleEndTime, discountPercentage or flashPrice
      * @return Page of flash sale food items
      */
     @GetMapping("/flash-sale")
     public ResponseEntity<ApiResponse<Page<FoodItemResponse>>> getFlashSaleFoodItems(
+            @Valid FlashSaleFilter filter,
             @PageableDefault(size = 20, sort = "discountPercentage", direction = Sort.Direction.DESC) Pageable pageable) {
         
         log.info("GET /api/food-items/flash-sale - Getting flash sale food items");
-        Page<FoodItemResponse> response = foodItemService.findFlashSaleFoodItems(pageable);
+        Page<FoodItemResponse> response = foodItemService.findFlashSaleFoodItems(filter, pageable);
         return ResponseEntity.ok(ApiResponse.success(response));
     }
 
     /**
-     * Search food items by keyword
+     * Search food items by keyword, ranked by relevance (sort parameters are ignored)
      * @param keyword Search keyword
      * @param pageable Pagination parameters
      * @return Page of matching food items
@@ -187,7 +210,7 @@ public class FoodItemController {
     @GetMapping("/search")
     public ResponseEntity<ApiResponse<Page<FoodItemResponse>>> searchFoodItems(
             @RequestParam String keyword,
-            @PageableDefault(size = 20, sort = "createdAt", direction = Sort.Direction.DESC) Pageable pageable) {
+            @PageableDefault(size = 20) Pageable pageable) {
         
         log.info("GET /api/food-items/search?keyword={} - Searching food items", keyword);
         Page<FoodItemResponse> response = foodItemService.searchFoodItems(keyword, pageable);
@@ -210,4 +233,21 @@ public class FoodItemController {
         FoodItemResponse response = foodItemService.updateStatus(id, status);
         return ResponseEntity.ok(ApiResponse.success(response, "Food item status updated successfully"));
     }
+
+    /**
+     * Switch stock mode of a food item (database row lock or Redis ledger)
+     * @param id Food item ID
+     * @param mode New stock mode
+     * @return Updated food item
+     */
+    @PatchMapping("/{id}/stock-mode")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<FoodItemResponse>> updateStockMode(
+            @PathVariable Long id,
+            @RequestParam String mode) {
+
+        log.info("PATCH /api/food-items/{}/stock-mode?mode={} - Updating stock mode", id, mode);
+        FoodItemResponse response = foodItemService.updateStockMode(id, mode);
+        return ResponseEntity.ok(ApiResponse.success(response, "Food item stock mode updated successfully"));
+    }
 }
@@ -1,9 +1,15 @@
 package com.flashfood.flash_food.controller;
 
+import com.flashfood.flash_food.dto.request.BulkOrderStatusRequest;
 import com.flashfood.flash_food.dto.request.CreateOrderRequest;
 import com.flashfood.flash_food.dto.response.ApiResponse;
+import com.flashfood.flash_food.dto.response.BulkOrderStatusResponse;
+import com.flashfood.flash_food.dto.response.CursorPageResponse;
 import com.flashfood.flash_food.dto.response.OrderResponse;
+import com.flashfood.flash_food.service.AdmissionService;
+import com.flashfood.flash_food.service.IdempotencyService;
 import com.flashfood.flash_food.service.OrderService;
+import com.flashfood.flash_food.util.AppConstants;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -27,19 +33,28 @@ import org.springframework.web.bind.annotation.*;
 public class OrderController {
 
     private final OrderService orderService;
+    private final IdempotencyService idempotencyService;
+    private final AdmissionService admissionService;
 
     /**
      * Create a new order
+     * Retries carrying the same Idempotency-Key get the original order back instead of placing a new one.
+     * During a flash sale the buyer may be queued (429 with a queue token) and retries with X-Queue-Token.
+     * @param idempotencyKey Optional client generated key, reused on retries of the same submission
+     * @param queueToken Token from an earlier queued answer
      * @param request Order creation data
      * @return Created order
      */
     @PostMapping
     @PreAuthorize("hasRole('CUSTOMER')")
     public ResponseEntity<ApiResponse<OrderResponse>> createOrder(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(value = "X-Queue-Token", required = false) String queueToken,
             @Valid @RequestBody CreateOrderRequest request) {
         
         log.info("POST /api/orders - Creating new order");
-        OrderResponse response = orderService.createOrder(request);
+        OrderResponse response = idempotencyService.execute(idempotencyKey, request, OrderResponse.class,
+                () -> admissionService.admit(queueToken, request, () -> orderService.createOrder(request)));
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(ApiResponse.success(response, "Order created successfully"));
     }
@@ -109,6 +124,23 @@ public class OrderController {
         return ResponseEntity.ok(ApiResponse.success(response, "Order completed successfully"));
     }
 
+    /**
+     * Move many orders of a store to the same status (store dashboard)
+     * @param storeId Store ID
+     * @param request Order IDs and target status
+     * @return Moved orders and skipped orders with their current status
+     */
+    @PatchMapping("/store/{storeId}/status")
+    @PreAuthorize("hasAnyRole('STORE_OWNER', 'ADMIN')")
+    public ResponseEntity<ApiResponse<BulkOrderStatusResponse>> updateStoreOrderStatuses(
+            @PathVariable Long storeId,
+            @Valid @RequestBody BulkOrderStatusRequest request) {
+
+        log.info("PATCH /api/orders/store/{}/status - Moving {} orders to {}", storeId, request.getOrderIds().size(), request.getStatus());
+        BulkOrderStatusResponse response = orderService.updateStoreOrderStatuses(storeId, request);
+        return ResponseEntity.ok(ApiResponse.success(response, "Order statuses updated"));
+    }
+
     /**
      * Process payment for order
      * @param orderId Order ID
@@ -163,6 +195,23 @@ public class OrderController {
         return ResponseEntity.ok(ApiResponse.success(response));
     }
 
+    /**
+     * Get current user's orders with keyset pagination (no total count, constant cost at any depth)
+     * @param cursor nextCursor of the previous slice; omit for the first one
+     * @param size Slice size
+     * @return Slice of user's orders, newest first
+     */
+    @GetMapping("/my-orders/scroll")
+    @PreAuthorize("hasRole('CUSTOMER')")
+    public ResponseEntity<ApiResponse<CursorPageResponse<OrderResponse>>> scrollMyOrders(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size) {
+
+        log.info("GET /api/orders/my-orders/scroll - Scrolling current user's orders");
+        CursorPageResponse<OrderResponse> response = orderService.scrollMyOrders(cursor, size);
+        return ResponseEntity.ok(ApiResponse.success(response));
+    }
+
     /**
      * Get current user's orders by status
      * @param status Order status
@@ -230,4 +279,21 @@ public class OrderController {
         Page<OrderResponse> response = orderService.findAllOrders(pageable);
         return ResponseEntity.ok(ApiResponse.success(response));
     }
+
+    /**
+     * Get all orders with keyset pagination (admin only)
+     * @param cursor nextCursor of the previous slice; omit for the first one
+     * @param size Slice size
+     * @return Slice of orders, newest first
+     */
+    @GetMapping("/all/scroll")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<CursorPageResponse<OrderResponse>>> scrollAllOrders(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size) {
+
+        log.info("GET /api/orders/all/scroll - Scrolling all orders (admin)");
+        CursorPageResponse<OrderResponse> response = orderService.scrollAllOrders(cursor, size);
+        return ResponseEntity.ok(ApiResponse.success(response));
+    }
 }
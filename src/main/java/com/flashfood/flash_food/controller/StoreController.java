@@ -2,8 +2,10 @@ package com.flashfood.flash_food.controller;
 
 import com.flashfood.flash_food.dto.request.CreateStoreRequest;
 import com.flashfood.flash_food.dto.response.ApiResponse;
+import com.flashfood.flash_food.dto.response.CursorPageResponse;
 import com.flashfood.flash_food.dto.response.StoreResponse;
 import com.flashfood.flash_food.service.StoreService;
+import com.flashfood.flash_food.util.AppConstants;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -108,6 +110,21 @@ public class StoreController {
         return ResponseEntity.ok(ApiResponse.success(stores));
     }
     
+    /**
+     * Get all stores with keyset pagination, newest first (no total count)
+     * GET /api/stores/scroll?size=20&cursor={nextCursor of the previous slice}
+     */
+    @GetMapping("/scroll")
+    public ResponseEntity<ApiResponse<CursorPageResponse<StoreResponse>>> scrollAllStores(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = AppConstants.DEFAULT_PAGE_SIZE) int size) {
+        
+        log.info("REST request to scroll stores - size: {}", size);
+        CursorPageResponse<StoreResponse> stores = storeService.scrollAll(cursor, size);
+        
+        return ResponseEntity.ok(ApiResponse.success(stores));
+    }
+    
     /**
      * Get stores by type
      * GET /api/stores/type/{type}?page=0&size=10
@@ -143,6 +160,23 @@ public class StoreController {
         return ResponseEntity.ok(ApiResponse.success(stores));
     }
     
+    /**
+     * Search active stores by keyword, ranked by relevance
+     * GET /api/stores/search?keyword=banh&page=0&size=20
+     */
+    @GetMapping("/search")
+    public ResponseEntity<ApiResponse<Page<StoreResponse>>> searchStores(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        
+        log.info("REST request to search stores - keyword: {}", keyword);
+        Pageable pageable = PageRequest.of(page, size);
+        Page<StoreResponse> stores = storeService.searchStores(keyword, pageable);
+        
+        return ResponseEntity.ok(ApiResponse.success(stores));
+    }
+    
     /**
      * Find nearby stores within radius
      * GET /api/stores/nearby?lat=10.762622&lon=106.660172&radius=5
@@ -159,6 +193,40 @@ public class StoreController {
         return ResponseEntity.ok(ApiResponse.success(stores));
     }
     
+    /**
+     * Scroll nearby stores, nearest first
+     * GET /api/stores/nearby/scroll?lat=10.762622&lon=106.660172&radius=5&size=20&cursor={nextCursor of the previous slice}
+     */
+    @GetMapping("/nearby/scroll")
+    public ResponseEntity<ApiResponse<CursorPageResponse<StoreResponse>>> scrollNearbyStores(
+            @RequestParam Double lat,
+            @RequestParam Double lon,
+            @RequestParam(defaultValue = "5.0") Double radius,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        
+        log.info("REST request to scroll nearby stores - lat: {}, lon: {}, radius: {}km", lat, lon, radius);
+        CursorPageResponse<StoreResponse> stores = storeService.scrollNearbyStores(lat, lon, radius, cursor, size);
+        
+        return ResponseEntity.ok(ApiResponse.success(stores));
+    }
+    
+    /**
+     * Find the stores nearest a location
+     * GET /api/stores/nearest?lat=10.762622&lon=106.660172&limit=10
+     */
+    @GetMapping("/nearest")
+    public ResponseEntity<ApiResponse<List<StoreResponse>>> findNearestStores(
+            @RequestParam Double lat,
+            @RequestParam Double lon,
+            @RequestParam(defaultValue = "10") int limit) {
+        
+        log.info("REST request to find nearest stores - lat: {}, lon: {}, limit: {}", lat, lon, limit);
+        List<StoreResponse> stores = storeService.findNearestStores(lat, lon, limit);
+        
+        return ResponseEntity.ok(ApiResponse.success(stores));
+    }
+    
     /**
      * Get my stores (current user's stores)
      * GET /api/stores/my-stores
@@ -0,0 +1,22 @@
+package com.flashfood.flash_food.dto.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Message object for the order reservation delay queue
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderExpiryMessage {
+    
+    private Long orderId;
+    private String orderNumber;
+    private LocalDateTime expiresAt;
+}
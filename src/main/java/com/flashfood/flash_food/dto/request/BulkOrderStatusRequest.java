@@ -0,0 +1,29 @@
+package com.flashfood.flash_food.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for moving many orders of a store to the same status in one call
+ * Client sends the target status as a string
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkOrderStatusRequest {
+    
+    @NotEmpty(message = "Order IDs cannot be empty")
+    @Size(max = 200, message = "At most 200 orders can be updated at once")
+    private List<Long> orderIds;
+    
+    @NotBlank(message = "Status is required")
+    private String status; // e.g. "confirmed", "preparing", "ready", "completed"
+}
@@ -0,0 +1,36 @@
+package com.flashfood.flash_food.dto.request;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Optional query filters for the live deal listings (/available, /flash-sale)
+ * Every field left empty matches all items
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlashSaleFilter {
+    
+    private Long storeId;
+    
+    private Long categoryId;
+    
+    @PositiveOrZero(message = "Minimum price must not be negative")
+    private BigDecimal minPrice;
+    
+    @PositiveOrZero(message = "Maximum price must not be negative")
+    private BigDecimal maxPrice;
+    
+    @Min(value = 0, message = "Minimum discount must be between 0 and 100")
+    @Max(value = 100, message = "Minimum discount must be between 0 and 100")
+    private Integer minDiscount;
+}
@@ -0,0 +1,24 @@
+package com.flashfood.flash_food.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DTO for the result of a bulk order status update
+ * Orders that could not be moved are reported with their current status ("not_found" if missing)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkOrderStatusResponse {
+    
+    private String status;
+    private List<Long> updatedOrderIds;
+    private Map<Long, String> skippedOrders;
+}
@@ -9,7 +9,7 @@ import lombok.NoArgsConstructor;
  * DTO for category response
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class CategoryResponse {
@@ -26,4 +26,7 @@ public class CategoryResponse {
     
     // For hierarchical display
     private Integer level; // 0 for root, 1 for child, etc.
+
+    // Live flash-sale items in this category and its subcategories (null when counts are unavailable)
+    private Long liveItemCount;
 }
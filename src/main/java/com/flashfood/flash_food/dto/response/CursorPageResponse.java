@@ -0,0 +1,24 @@
+package com.flashfood.flash_food.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO for one slice of a keyset (cursor) paginated listing
+ * No total count is computed; the client passes nextCursor back until hasNext is false
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageResponse<T> {
+    
+    private List<T> content;
+    private Integer size;
+    private boolean hasNext;
+    private String nextCursor;
+}
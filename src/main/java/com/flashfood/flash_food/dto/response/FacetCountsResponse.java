@@ -0,0 +1,23 @@
+package com.flashfood.flash_food.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * DTO for live flash-sale item counts
+ * Category counts include subcategories; cells are "latIndex_lonIndex" grid cells of app.facets.cell-size-degrees
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetCountsResponse {
+    
+    private Map<Long, Long> categories;
+    private Map<Long, Long> stores;
+    private Map<String, Long> cells;
+}
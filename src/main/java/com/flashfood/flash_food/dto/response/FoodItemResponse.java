@@ -1,5 +1,7 @@
 package com.flashfood.flash_food.dto.response;
 
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.StockMode;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -38,9 +40,42 @@ public class FoodItemResponse {
     
     // Status as string for client
     private String status;
+    private String stockMode;
     
+    private LocalDateTime createdAt;
+
     // Calculated fields
     private Boolean isAvailable;
     private Long timeUntilSaleStart; // in seconds
     private Long timeUntilSaleEnd; // in seconds
+
+    /**
+     * Projection constructor for FoodItemRepository.RESPONSE_SELECT
+     */
+    public FoodItemResponse(Long id, Long storeId, String storeName, String name, String description, String imageUrl,
+                            BigDecimal originalPrice, BigDecimal flashPrice, Integer discountPercentage,
+                            Integer totalQuantity, Integer availableQuantity,
+                            LocalDateTime saleStartTime, LocalDateTime saleEndTime,
+                            Long categoryId, String categoryName, String categorySlug,
+                            FoodItemStatus status, StockMode stockMode, LocalDateTime createdAt) {
+        this.id = id;
+        this.storeId = storeId;
+        this.storeName = storeName;
+        this.name = name;
+        this.description = description;
+        this.imageUrl = imageUrl;
+        this.originalPrice = originalPrice;
+        this.flashPrice = flashPrice;
+        this.discountPercentage = discountPercentage;
+        this.totalQuantity = totalQuantity;
+        this.availableQuantity = availableQuantity;
+        this.saleStartTime = saleStartTime;
+        this.saleEndTime = saleEndTime;
+        this.categoryId = categoryId;
+        this.categoryName = categoryName;
+        this.categorySlug = categorySlug;
+        this.status = status != null ? status.getDisplayName() : null;
+        this.stockMode = stockMode != null ? stockMode.getDisplayName() : null;
+        this.createdAt = createdAt;
+    }
 }
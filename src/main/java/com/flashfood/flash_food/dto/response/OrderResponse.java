@@ -36,6 +36,7 @@ public class OrderResponse {
     
     private LocalDateTime pickupTime;
     private String specialInstructions;
+    private LocalDateTime reservationExpiresAt;
     private LocalDateTime createdAt;
     
     @Data
@@ -0,0 +1,21 @@
+package com.flashfood.flash_food.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for a buyer waiting in the flash-sale queue
+ * The client resubmits the order with the same X-Queue-Token after retryAfterMs
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueuePositionResponse {
+    
+    private String queueToken;
+    private Long position;
+    private Long retryAfterMs;
+}
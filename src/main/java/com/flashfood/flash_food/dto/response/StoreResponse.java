@@ -1,10 +1,13 @@
 package com.flashfood.flash_food.dto.response;
 
+import com.flashfood.flash_food.entity.StoreStatus;
+import com.flashfood.flash_food.entity.StoreType;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 
 /**
@@ -35,7 +38,33 @@ public class StoreResponse {
     private LocalTime flashSaleTime;
     private Double rating;
     private Integer totalRatings;
+    private LocalDateTime createdAt;
     
     // Distance in meters (calculated from user location)
     private Double distance;
+
+    /**
+     * Projection constructor for StoreRepository.RESPONSE_SELECT
+     */
+    public StoreResponse(Long id, String name, String address, String phoneNumber, Double latitude, Double longitude,
+                         StoreType type, StoreStatus status, String description, String imageUrl,
+                         LocalTime openTime, LocalTime closeTime, LocalTime flashSaleTime,
+                         Double rating, Integer totalRatings, LocalDateTime createdAt) {
+        this.id = id;
+        this.name = name;
+        this.address = address;
+        this.phoneNumber = phoneNumber;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.type = type != null ? type.getDisplayName() : null;
+        this.status = status != null ? status.getDisplayName() : null;
+        this.description = description;
+        this.imageUrl = imageUrl;
+        this.openTime = openTime;
+        this.closeTime = closeTime;
+        this.flashSaleTime = flashSaleTime;
+        this.rating = rating;
+        this.totalRatings = totalRatings;
+        this.createdAt = createdAt;
+    }
 }
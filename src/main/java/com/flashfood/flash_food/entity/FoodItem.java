@@ -19,7 +19,13 @@ import java.time.LocalDateTime;
  * FoodItem entity - Represents flash sale food items
  */
 @Entity
-@Table(name = "food_items")
+@Table(name = "food_items", indexes = {
+    // Catalog browse: status equality first, then the sale window range
+    @Index(name = "idx_food_item_status_sale", columnList = "status, saleStartTime, saleEndTime"),
+    @Index(name = "idx_food_item_store_status", columnList = "store_id, status"),
+    @Index(name = "idx_food_item_category_status", columnList = "category_id, status"),
+    @Index(name = "idx_food_item_created", columnList = "createdAt, id")
+})
 @Getter
 @Setter
 @Builder
@@ -59,6 +65,9 @@ public class FoodItem {
     @Column(nullable = false)
     private Integer availableQuantity;
     
+    // Where availableQuantity is claimed (row lock, Redis ledger, batched writer or node lease)
+    private StockMode stockMode = StockMode.DATABASE;
+    
     // Flash sale period
     private LocalDateTime saleStartTime;
     private LocalDateTime saleEndTime;
@@ -15,7 +15,9 @@ import java.time.LocalDateTime;
  * Notification entity - Represents notifications sent to users
  */
 @Entity
-@Table(name = "notifications")
+@Table(name = "notifications", indexes = {
+    @Index(name = "idx_notification_user_created", columnList = "user_id, createdAt, id")
+})
 @Getter
 @Setter
 @Builder
@@ -19,7 +19,14 @@ import java.util.List;
  * Order entity - Represents customer orders
  */
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+    // Keyset pagination: (createdAt, id) ranges, per user and overall
+    @Index(name = "idx_order_user_created", columnList = "user_id, createdAt, id"),
+    @Index(name = "idx_order_created", columnList = "createdAt, id"),
+    // Dashboard and "my orders" filters: equality columns first, then the default sort
+    @Index(name = "idx_order_store_status_created", columnList = "store_id, status, createdAt"),
+    @Index(name = "idx_order_user_status_created", columnList = "user_id, status, createdAt")
+})
 @Getter
 @Setter
 @Builder
@@ -63,6 +70,9 @@ public class Order {
     @Column(length = 500)
     private String specialInstructions;
     
+    // Stock is held for unpaid PENDING orders until this deadline
+    private LocalDateTime reservationExpiresAt;
+    
     // For cancellation tracking
     private String cancellationReason;
     private LocalDateTime cancelledAt;
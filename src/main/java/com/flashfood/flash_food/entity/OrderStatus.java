@@ -4,7 +4,10 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
 
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -32,6 +35,19 @@ public enum OrderStatus {
             Arrays.stream(values())
                   .collect(Collectors.toMap(e -> e.displayName.toLowerCase(), e -> e));
     
+    // State graph: allowed next statuses for each status (terminal statuses have none)
+    private static final Map<OrderStatus, Set<OrderStatus>> TRANSITIONS = new EnumMap<>(OrderStatus.class);
+    
+    static {
+        TRANSITIONS.put(PENDING, EnumSet.of(CONFIRMED, CANCELLED));
+        TRANSITIONS.put(CONFIRMED, EnumSet.of(PREPARING));
+        TRANSITIONS.put(PREPARING, EnumSet.of(READY, EXPIRED));
+        TRANSITIONS.put(READY, EnumSet.of(COMPLETED, EXPIRED));
+        TRANSITIONS.put(COMPLETED, EnumSet.noneOf(OrderStatus.class));
+        TRANSITIONS.put(CANCELLED, EnumSet.noneOf(OrderStatus.class));
+        TRANSITIONS.put(EXPIRED, EnumSet.noneOf(OrderStatus.class));
+    }
+    
     OrderStatus(int code, String displayName) {
         this.code = code;
         this.displayName = displayName;
@@ -46,6 +62,19 @@ public enum OrderStatus {
         return displayName;
     }
     
+    /**
+     * Statuses an order may be in to move to the target status (used as the compare-and-set guard)
+     */
+    public static Set<OrderStatus> previousStatuses(OrderStatus target) {
+        Set<OrderStatus> previous = EnumSet.noneOf(OrderStatus.class);
+        TRANSITIONS.forEach((status, next) -> {
+            if (next.contains(target)) {
+                previous.add(status);
+            }
+        });
+        return previous;
+    }
+    
     /**
      * Convert from database integer code to enum
      */
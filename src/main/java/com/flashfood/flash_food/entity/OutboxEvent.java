@@ -0,0 +1,53 @@
+package com.flashfood.flash_food.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * OutboxEvent entity - A broker message written in the same transaction as the change it announces
+ * OutboxRelay publishes unpublished rows in id order and stamps publishedAt once the broker confirms them
+ */
+@Entity
+@Table(name = "outbox_events", indexes = {
+    @Index(name = "idx_outbox_unpublished", columnList = "publishedAt, id")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private String exchange;
+    
+    @Column(nullable = false)
+    private String routingKey;
+    
+    // JSON body as produced by the AMQP message converter
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+    
+    // __TypeId__ header so consumers deserialize to the right class
+    private String payloadType;
+    
+    // Per-message TTL counted from createdAt; the relay sends whatever is left of it
+    private Long ttlMillis;
+    
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    private LocalDateTime publishedAt;
+}
@@ -0,0 +1,64 @@
+package com.flashfood.flash_food.entity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Stock mode enumeration - decides where availableQuantity of a food item is claimed
+ * DB: Integer (1, 2, 3...) | Backend: Enum (DATABASE, REDIS...) | Client: String ("database", "redis"...)
+ */
+public enum StockMode {
+    DATABASE(1, "database"),   // Row lock + conditional decrement on food_items
+    REDIS(2, "redis"),         // Atomic Lua claim on the Redis stock ledger, Postgres synced asynchronously
+    BATCHED(3, "batched"),     // In-JVM single writer per item, one conditional UPDATE per batch of buyers
+    LEASED(4, "leased");       // Each node leases a block of units and sells it from an in-memory counter
+    
+    private final int code;
+    private final String displayName;
+    
+    private static final Map<Integer, StockMode> CODE_LOOKUP =
+            Arrays.stream(values())
+                  .collect(Collectors.toMap(StockMode::getCode, e -> e));
+    
+    private static final Map<String, StockMode> NAME_LOOKUP =
+            Arrays.stream(values())
+                  .collect(Collectors.toMap(e -> e.displayName.toLowerCase(), e -> e));
+    
+    StockMode(int code, String displayName) {
+        this.code = code;
+        this.displayName = displayName;
+    }
+    
+    public int getCode() {
+        return code;
+    }
+    
+    @JsonValue
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    public static StockMode fromCode(int code) {
+        StockMode mode = CODE_LOOKUP.get(code);
+        if (mode == null) {
+            throw new IllegalArgumentException("Invalid StockMode code: " + code);
+        }
+        return mode;
+    }
+    
+    @JsonCreator
+    public static StockMode fromDisplayName(String displayName) {
+        if (displayName == null || displayName.isEmpty()) {
+            throw new IllegalArgumentException("StockMode displayName cannot be null or empty");
+        }
+        StockMode mode = NAME_LOOKUP.get(displayName.toLowerCase());
+        if (mode == null) {
+            throw new IllegalArgumentException("Invalid StockMode name: " + displayName);
+        }
+        return mode;
+    }
+}
@@ -17,7 +17,9 @@ import java.time.LocalDateTime;
  * Store entity - Represents food stores/restaurants
  */
 @Entity
-@Table(name = "stores")
+@Table(name = "stores", indexes = {
+    @Index(name = "idx_store_created", columnList = "createdAt, id")
+})
 @Getter
 @Setter
 @Builder
@@ -0,0 +1,23 @@
+package com.flashfood.flash_food.entity.converter;
+
+import com.flashfood.flash_food.entity.StockMode;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * JPA Converter for StockMode enum
+ * Converts StockMode (enum) <-> Integer (database)
+ */
+@Converter(autoApply = true)
+public class StockModeConverter implements AttributeConverter<StockMode, Integer> {
+    
+    @Override
+    public Integer convertToDatabaseColumn(StockMode attribute) {
+        return attribute == null ? null : attribute.getCode();
+    }
+    
+    @Override
+    public StockMode convertToEntityAttribute(Integer dbData) {
+        return dbData == null ? null : StockMode.fromCode(dbData);
+    }
+}
@@ -0,0 +1,21 @@
+package com.flashfood.flash_food.exception;
+
+import lombok.Getter;
+
+/**
+ * Exception thrown when a buyer is not admitted yet and has been placed in the flash-sale queue
+ */
+@Getter
+public class AdmissionQueuedException extends BaseException {
+    
+    private final String queueToken;
+    private final long position;
+    private final long retryAfterMs;
+    
+    public AdmissionQueuedException(String queueToken, long position, long retryAfterMs) {
+        super(String.format("Sale is busy, you are number %d in the queue", position));
+        this.queueToken = queueToken;
+        this.position = position;
+        this.retryAfterMs = retryAfterMs;
+    }
+}
@@ -1,7 +1,9 @@
 package com.flashfood.flash_food.exception;
 
 import com.flashfood.flash_food.dto.response.ApiResponse;
+import com.flashfood.flash_food.dto.response.QueuePositionResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -51,6 +53,33 @@ public class GlobalExceptionHandler {
                 .body(ApiResponse.error(HttpStatus.BAD_REQUEST, ex.getMessage()));
     }
     
+    @ExceptionHandler(AdmissionQueuedException.class)
+    public ResponseEntity<ApiResponse<QueuePositionResponse>> handleAdmissionQueued(AdmissionQueuedException ex) {
+        log.debug("Buyer queued: {}", ex.getMessage());
+        QueuePositionResponse position = QueuePositionResponse.builder()
+                .queueToken(ex.getQueueToken())
+                .position(ex.getPosition())
+                .retryAfterMs(ex.getRetryAfterMs())
+                .build();
+        return ResponseEntity
+                .status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (ex.getRetryAfterMs() + 999) / 1000)))
+                .body(ApiResponse.<QueuePositionResponse>builder()
+                        .success(false)
+                        .message(ex.getMessage())
+                        .httpCode(HttpStatus.TOO_MANY_REQUESTS.value())
+                        .data(position)
+                        .build());
+    }
+    
+    @ExceptionHandler(OrderStateConflictException.class)
+    public ResponseEntity<ApiResponse<Void>> handleOrderStateConflict(OrderStateConflictException ex) {
+        log.error("Order state conflict: {}", ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error(HttpStatus.CONFLICT, ex.getMessage()));
+    }
+    
     @ExceptionHandler(InvalidOperationException.class)
     public ResponseEntity<ApiResponse<Void>> handleInvalidOperation(InvalidOperationException ex) {
         log.error("Invalid operation: {}", ex.getMessage());
@@ -0,0 +1,19 @@
+package com.flashfood.flash_food.exception;
+
+import com.flashfood.flash_food.entity.OrderStatus;
+
+/**
+ * Exception thrown when an order is no longer in a status that allows the requested transition
+ * (typically because another request moved it first)
+ */
+public class OrderStateConflictException extends BaseException {
+    
+    public OrderStateConflictException(String message) {
+        super(message);
+    }
+    
+    public OrderStateConflictException(Long orderId, OrderStatus current, OrderStatus target) {
+        super(String.format("Order %d is '%s' and cannot be moved to '%s'", 
+                orderId, current.getDisplayName(), target.getDisplayName()));
+    }
+}
@@ -1,17 +1,26 @@
 package com.flashfood.flash_food.repository;
 
+import com.flashfood.flash_food.dto.response.FoodItemResponse;
 import com.flashfood.flash_food.entity.FoodItem;
 import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.StockMode;
 import com.flashfood.flash_food.entity.Store;
 import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,12 +31,40 @@ import java.util.Optional;
 @Repository
 public interface FoodItemRepository extends JpaRepository<FoodItem, Long> {
     
+    /**
+     * Read-only list queries select straight into FoodItemResponse (JPQL constructor expression):
+     * no managed entities, proxies or snapshots for dirty checking. Status and stock mode still go through
+     * their auto-applied converters, so the constructor receives enums.
+     */
+    String RESPONSE_SELECT = """
+        SELECT new com.flashfood.flash_food.dto.response.FoodItemResponse(
+            f.id, s.id, s.name, f.name, f.description, f.imageUrl, 
+            f.originalPrice, f.flashPrice, f.discountPercentage, f.totalQuantity, f.availableQuantity, 
+            f.saleStartTime, f.saleEndTime, c.id, c.name, c.slug, f.status, f.stockMode, f.createdAt) 
+        FROM FoodItem f 
+        JOIN f.store s 
+        LEFT JOIN f.category c 
+    """;
+    
     List<FoodItem> findByStore(Store store);
     
     List<FoodItem> findByStoreAndStatus(Store store, FoodItemStatus status);
     
     List<FoodItem> findByStatus(FoodItemStatus status);
     
+    /**
+     * Single item with everything FoodItemResponse needs in one query
+     */
+    @EntityGraph(attributePaths = {"store", "category"})
+    Optional<FoodItem> findWithStoreAndCategoryById(Long id);
+    
+    /**
+     * Page of all items with store and category joined, so mapping the page adds no queries
+     */
+    @Override
+    @EntityGraph(attributePaths = {"store", "category"})
+    Page<FoodItem> findAll(Pageable pageable);
+    
     /**
      * Find food item with pessimistic write lock for handling concurrency
      * Use this when updating quantity to prevent overselling
@@ -37,17 +74,143 @@ public interface FoodItemRepository extends JpaRepository<FoodItem, Long> {
     Optional<FoodItem> findByIdWithLock(@Param("id") Long id);
     
     /**
-     * Find available food items for flash sale
+     * Items that are live or go live before :startsBefore, with units left (idx_food_item_status_sale)
+     * Source of the in-memory flash-sale catalog; the exact sale window is checked when it is read
+     * Rows in :leased mode count as having units left: their row reads 0 while nodes still sell from leases
      */
-    @Query("""
-        SELECT f FROM FoodItem f 
-        WHERE f.status = 'AVAILABLE' 
-        AND f.availableQuantity > 0 
-        AND f.saleStartTime <= :now 
+    @Query(RESPONSE_SELECT + """
+        WHERE f.status = :status 
+        AND (f.availableQuantity > 0 OR f.stockMode = :leased) 
+        AND f.saleStartTime <= :startsBefore 
         AND f.saleEndTime > :now 
         AND f.isExpired = false
     """)
-    List<FoodItem> findAvailableFlashSaleItems(@Param("now") LocalDateTime now);
+    List<FoodItemResponse> findLiveResponses(@Param("status") FoodItemStatus status,
+                                             @Param("leased") StockMode leased,
+                                             @Param("now") LocalDateTime now,
+                                             @Param("startsBefore") LocalDateTime startsBefore);
+    
+    /**
+     * One item if it is live or goes live before :startsBefore (same conditions as findLiveResponses)
+     */
+    @Query(RESPONSE_SELECT + """
+        WHERE f.id = :id 
+        AND f.status = :status 
+        AND (f.availableQuantity > 0 OR f.stockMode = :leased) 
+        AND f.saleStartTime <= :startsBefore 
+        AND f.saleEndTime > :now 
+        AND f.isExpired = false
+    """)
+    Optional<FoodItemResponse> findLiveResponseById(@Param("id") Long id,
+                                                    @Param("status") FoodItemStatus status,
+                                                    @Param("leased") StockMode leased,
+                                                    @Param("now") LocalDateTime now,
+                                                    @Param("startsBefore") LocalDateTime startsBefore);
+    
+    /**
+     * Page of items with a given status (idx_food_item_status_sale)
+     */
+    @Query(RESPONSE_SELECT + """
+        WHERE f.status = :status
+    """)
+    Page<FoodItemResponse> findPageByStatus(@Param("status") FoodItemStatus status, Pageable pageable);
+    
+    /**
+     * Page of all items
+     */
+    @Query(RESPONSE_SELECT)
+    Page<FoodItemResponse> findAllResponses(Pageable pageable);
+    
+    /**
+     * Page of a store's items, soft-deleted ones excluded (idx_food_item_store_status)
+     */
+    @Query(RESPONSE_SELECT + """
+        WHERE s.id = :storeId 
+        AND f.status <> :deleted
+    """)
+    Page<FoodItemResponse> findPageByStore(@Param("storeId") Long storeId,
+                                           @Param("deleted") FoodItemStatus deleted,
+                                           Pageable pageable);
+    
+    /**
+     * Page of a category's items, soft-deleted ones excluded (idx_food_item_category_status)
+     */
+    @Query(RESPONSE_SELECT + """
+        WHERE c.id = :categoryId 
+        AND f.status <> :deleted
+    """)
+    Page<FoodItemResponse> findPageByCategory(@Param("categoryId") Long categoryId,
+                                              @Param("deleted") FoodItemStatus deleted,
+                                              Pageable pageable);
+    
+    /**
+     * All items, newest first, strictly after the given (createdAt, id) position (keyset pagination, no COUNT)
+     */
+    @Query(RESPONSE_SELECT + """
+        WHERE f.createdAt < :createdAt OR (f.createdAt = :createdAt AND f.id < :id) 
+        ORDER BY f.createdAt DESC, f.id DESC
+    """)
+    List<FoodItemResponse> findAllBefore(@Param("createdAt") LocalDateTime createdAt,
+                                         @Param("id") Long id,
+                                         Limit limit);
+    
+    /**
+     * Items by ID in no particular order (a page of search results)
+     */
+    @Query(RESPONSE_SELECT + """
+        WHERE f.id IN :ids
+    """)
+    List<FoodItemResponse> findResponsesByIds(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Searchable text of every item that can still be ordered or is yet to go on sale (not closed, expired or past
+     * its sale end), source of the search index
+     */
+    @Query("""
+        SELECT f.id AS id, f.name AS name, f.description AS description, c.name AS categoryName, s.name AS storeName 
+        FROM FoodItem f 
+        JOIN f.store s 
+        LEFT JOIN f.category c 
+        WHERE f.status NOT IN :closed 
+        AND f.isExpired = false 
+        AND f.saleEndTime > :now
+    """)
+    List<SearchDocumentView> findSearchDocuments(@Param("closed") Collection<FoodItemStatus> closed,
+                                                 @Param("now") LocalDateTime now);
+    
+    /**
+     * Same as findSearchDocuments for the given IDs; closed or missing IDs are simply absent
+     */
+    @Query("""
+        SELECT f.id AS id, f.name AS name, f.description AS description, c.name AS categoryName, s.name AS storeName 
+        FROM FoodItem f 
+        JOIN f.store s 
+        LEFT JOIN f.category c 
+        WHERE f.id IN :ids 
+        AND f.status NOT IN :closed 
+        AND f.isExpired = false 
+        AND f.saleEndTime > :now
+    """)
+    List<SearchDocumentView> findSearchDocumentsByIds(@Param("ids") Collection<Long> ids,
+                                                      @Param("closed") Collection<FoodItemStatus> closed,
+                                                      @Param("now") LocalDateTime now);
+    
+    /**
+     * Same as findSearchDocuments for one store's items (reindexed when the store is renamed)
+     */
+    @Query("""
+        SELECT f.id AS id, f.name AS name, f.description AS description, c.name AS categoryName, s.name AS storeName 
+        FROM FoodItem f 
+        JOIN f.store s 
+        LEFT JOIN f.category c 
+        WHERE s.id = :storeId 
+        AND f.status NOT IN :closed 
+        AND f.isExpired = false 
+        AND f.saleEndTime > :now
+    """)
+    List<SearchDocumentView> findSearchDocumentsByStore(@Param("storeId") Long storeId,
+                                                        @Param("closed") Collection<FoodItemStatus> closed,
+                                                        @Param("now") LocalDateTime now);
     
     /**
      * Find food items by store that are currently on sale
@@ -82,4 +245,321 @@ public interface FoodItemRepository extends JpaRepository<FoodItem, Long> {
         AND f.availableQuantity >= :quantity
     """)
     int decrementQuantity(@Param("id") Long id, @Param("quantity") Integer quantity);
+    
+    /**
+     * Reserve every database-mode line of an order in one statement, all or nothing
+     * Rows are locked in ascending id order so concurrent carts cannot deadlock; lines must be merged by id
+     * Marks items OUT_OF_STOCK when the order takes their last units
+     * Rows from before stock modes have a NULL stock_mode and count as DATABASE (code 1)
+     * @return The short lines (rows missing or in another mode report 0 available and inStockMode false);
+     *         empty when every line was reserved
+     */
+    @Transactional
+    @Query(value = """
+        WITH req AS (
+            SELECT r.id, r.quantity 
+            FROM unnest(CAST(:ids AS bigint[]), CAST(:quantities AS integer[])) AS r(id, quantity)
+        ), locked AS (
+            SELECT f.id, f.available_quantity 
+            FROM food_items f 
+            WHERE f.id IN (SELECT id FROM req) 
+            AND COALESCE(f.stock_mode, 1) = :stockMode 
+            ORDER BY f.id 
+            FOR UPDATE
+        ), short AS (
+            SELECT req.id, req.quantity, COALESCE(locked.available_quantity, 0) AS available, 
+                locked.id IS NOT NULL AS in_stock_mode 
+            FROM req 
+            LEFT JOIN locked ON locked.id = req.id 
+            WHERE locked.id IS NULL 
+            OR locked.available_quantity < req.quantity
+        ), upd AS (
+            UPDATE food_items f 
+            SET available_quantity = f.available_quantity - req.quantity, 
+                status = CASE WHEN f.available_quantity = req.quantity THEN :outOfStock ELSE f.status END 
+            FROM req 
+            WHERE f.id = req.id 
+            AND f.available_quantity >= req.quantity 
+            AND NOT EXISTS (SELECT 1 FROM short) 
+            RETURNING f.id
+        )
+        SELECT short.id AS foodItemId, short.quantity AS requested, short.available AS available, 
+            short.in_stock_mode AS inStockMode 
+        FROM short 
+        ORDER BY short.id
+    """, nativeQuery = true)
+    List<StockShortageView> reserveQuantities(@Param("ids") Long[] ids,
+                                              @Param("quantities") Integer[] quantities,
+                                              @Param("stockMode") int stockMode,
+                                              @Param("outOfStock") int outOfStock);
+    
+    /**
+     * Give back every database-mode line of one or many cancelled orders in one statement
+     * Rows are locked in ascending id order like reserveQuantities; lines must be merged by id
+     * Flips OUT_OF_STOCK items back to AVAILABLE in the same pass; rows no longer in :stockMode are skipped
+     * Rows from before stock modes have a NULL stock_mode and count as DATABASE (code 1)
+     * @return IDs of the rows restored
+     */
+    @Transactional
+    @Query(value = """
+        WITH req AS (
+            SELECT r.id, r.quantity 
+            FROM unnest(CAST(:ids AS bigint[]), CAST(:quantities AS integer[])) AS r(id, quantity)
+        ), locked AS (
+            SELECT f.id 
+            FROM food_items f 
+            WHERE f.id IN (SELECT id FROM req) 
+            AND COALESCE(f.stock_mode, 1) = :stockMode 
+            ORDER BY f.id 
+            FOR UPDATE
+        )
+        UPDATE food_items f 
+        SET available_quantity = f.available_quantity + req.quantity, 
+            status = CASE WHEN f.status = :outOfStock THEN :available ELSE f.status END 
+        FROM req 
+        WHERE f.id = req.id 
+        AND f.id IN (SELECT id FROM locked) 
+        RETURNING f.id
+    """, nativeQuery = true)
+    List<Long> restoreQuantities(@Param("ids") Long[] ids,
+                                 @Param("quantities") Integer[] quantities,
+                                 @Param("stockMode") int stockMode,
+                                 @Param("available") int available,
+                                 @Param("outOfStock") int outOfStock);
+    
+    /**
+     * Claim a whole batch of units in its own transaction (batched stock mode)
+     * Only an item that is on sale (:available) in :stockMode can be claimed from, so a pre-sale, closed or
+     * switched item never reaches OUT_OF_STOCK through a claim. Marks the item OUT_OF_STOCK when the batch takes
+     * the last units
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query("""
+        UPDATE FoodItem f 
+        SET f.availableQuantity = f.availableQuantity - :quantity, 
+            f.status = CASE WHEN f.availableQuantity = :quantity THEN :outOfStock ELSE f.status END 
+        WHERE f.id = :id 
+        AND f.availableQuantity >= :quantity 
+        AND f.status = :available 
+        AND f.stockMode = :stockMode
+    """)
+    int claimQuantity(@Param("id") Long id,
+                      @Param("quantity") Integer quantity,
+                      @Param("stockMode") StockMode stockMode,
+                      @Param("available") FoodItemStatus available,
+                      @Param("outOfStock") FoodItemStatus outOfStock);
+    
+    /**
+     * Take units in its own transaction whatever the item's stock mode (units the Redis ledger sold while closing)
+     * Only an AVAILABLE item is marked OUT_OF_STOCK when the last units go, so a pre-sale or closed item keeps its
+     * status
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query("""
+        UPDATE FoodItem f 
+        SET f.availableQuantity = f.availableQuantity - :quantity, 
+            f.status = CASE WHEN f.availableQuantity = :quantity AND f.status = :available 
+                THEN :outOfStock ELSE f.status END 
+        WHERE f.id = :id 
+        AND f.availableQuantity >= :quantity
+    """)
+    int deductQuantity(@Param("id") Long id,
+                       @Param("quantity") Integer quantity,
+                       @Param("available") FoodItemStatus available,
+                       @Param("outOfStock") FoodItemStatus outOfStock);
+    
+    /**
+     * Give units back in its own transaction (compensation for claims whose order failed)
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query("""
+        UPDATE FoodItem f 
+        SET f.availableQuantity = f.availableQuantity + :quantity, 
+            f.status = CASE WHEN f.status = :outOfStock THEN :available ELSE f.status END 
+        WHERE f.id = :id
+    """)
+    int restoreQuantity(@Param("id") Long id,
+                        @Param("quantity") Integer quantity,
+                        @Param("available") FoodItemStatus available,
+                        @Param("outOfStock") FoodItemStatus outOfStock);
+    
+    /**
+     * Lease a block of units to this node in its own transaction (leased stock mode)
+     * Grants at least :needed units, at most :blockSize, shrinking to available / :divisor near the end of stock
+     * Status is left untouched: other nodes may still be selling from their leases
+     * @return Units granted, or empty if fewer than :needed units remain
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(value = """
+        UPDATE food_items f 
+        SET available_quantity = f.available_quantity - g.granted 
+        FROM (
+            SELECT id, LEAST(available_quantity, GREATEST(:needed, LEAST(:blockSize, available_quantity / :divisor))) AS granted 
+            FROM food_items 
+            WHERE id = :id 
+            AND stock_mode = :stockMode 
+            FOR UPDATE
+        ) g 
+        WHERE f.id = g.id 
+        AND g.granted >= :needed 
+        RETURNING g.granted
+    """, nativeQuery = true)
+    Optional<Integer> leaseQuantity(@Param("id") Long id,
+                                    @Param("needed") int needed,
+                                    @Param("blockSize") int blockSize,
+                                    @Param("divisor") int divisor,
+                                    @Param("stockMode") int stockMode);
+    
+    @Query("SELECT f.availableQuantity FROM FoodItem f WHERE f.id = :id")
+    Optional<Integer> findAvailableQuantityById(@Param("id") Long id);
+    
+    /**
+     * Remaining units of an item that is still sold in :stockMode with one of :statuses; empty otherwise
+     */
+    @Query("""
+        SELECT f.availableQuantity 
+        FROM FoodItem f 
+        WHERE f.id = :id 
+        AND f.stockMode = :stockMode 
+        AND f.status IN :statuses
+    """)
+    Optional<Integer> findAvailableQuantityInMode(@Param("id") Long id,
+                                                  @Param("stockMode") StockMode stockMode,
+                                                  @Param("statuses") Collection<FoodItemStatus> statuses);
+    
+    /**
+     * Resolve stock modes for a set of items without hydrating (or locking) the entities
+     */
+    @Query("SELECT f.id AS id, f.stockMode AS stockMode FROM FoodItem f WHERE f.id IN :ids")
+    List<StockModeView> findStockModes(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * IDs only, used to seed the node-local sold-out filter
+     */
+    @Query("SELECT f.id FROM FoodItem f WHERE f.status = :status")
+    List<Long> findIdsByStatus(@Param("status") FoodItemStatus status);
+    
+    /**
+     * IDs of items that can never be ordered again (expired, cancelled, deleted or past their sale end)
+     */
+    @Query("SELECT f.id FROM FoodItem f WHERE f.status IN :statuses OR f.saleEndTime < :now")
+    List<Long> findClosedIds(@Param("statuses") Collection<FoodItemStatus> statuses,
+                             @Param("now") LocalDateTime now);
+    
+    /**
+     * Facets of every live item (available, units left, sale started and not ended), for the facet drift check
+     * Rows in :leased mode count as having units left, as in findLiveResponses
+     */
+    @Query("""
+        SELECT f.id AS id, c.id AS categoryId, s.id AS storeId, s.latitude AS latitude, s.longitude AS longitude 
+        FROM FoodItem f 
+        JOIN f.store s 
+        LEFT JOIN f.category c 
+        WHERE f.status = :status 
+        AND (f.availableQuantity > 0 OR f.stockMode = :leased) 
+        AND f.saleStartTime <= :now 
+        AND f.saleEndTime > :now 
+        AND f.isExpired = false
+    """)
+    List<LiveFacetView> findLiveFacets(@Param("status") FoodItemStatus status,
+                                       @Param("leased") StockMode leased,
+                                       @Param("now") LocalDateTime now);
+    
+    /**
+     * Same as findLiveFacets for the given IDs; IDs that are not live are simply missing
+     */
+    @Query("""
+        SELECT f.id AS id, c.id AS categoryId, s.id AS storeId, s.latitude AS latitude, s.longitude AS longitude 
+        FROM FoodItem f 
+        JOIN f.store s 
+        LEFT JOIN f.category c 
+        WHERE f.id IN :ids 
+        AND f.status = :status 
+        AND (f.availableQuantity > 0 OR f.stockMode = :leased) 
+        AND f.saleStartTime <= :now 
+        AND f.saleEndTime > :now 
+        AND f.isExpired = false
+    """)
+    List<LiveFacetView> findLiveFacetsByIds(@Param("ids") Collection<Long> ids,
+                                            @Param("status") FoodItemStatus status,
+                                            @Param("leased") StockMode leased,
+                                            @Param("now") LocalDateTime now);
+    
+    /**
+     * IDs of items in the given status whose sale started in (from, to]
+     */
+    @Query("""
+        SELECT f.id FROM FoodItem f 
+        WHERE f.status = :status 
+        AND f.saleStartTime > :from 
+        AND f.saleStartTime <= :to
+    """)
+    List<Long> findIdsBySaleStartedBetween(@Param("status") FoodItemStatus status,
+                                           @Param("from") LocalDateTime from,
+                                           @Param("to") LocalDateTime to);
+    
+    /**
+     * Copy the Redis ledger value back to Postgres (Redis stock mode only)
+     * Flips AVAILABLE <-> OUT_OF_STOCK in the same statement
+     */
+    @Modifying
+    @Query("""
+        UPDATE FoodItem f 
+        SET f.availableQuantity = :quantity, 
+            f.status = CASE 
+                WHEN :quantity = 0 AND f.status = :available THEN :outOfStock 
+                WHEN :quantity > 0 AND f.status = :outOfStock THEN :available 
+                ELSE f.status END 
+        WHERE f.id = :id 
+        AND f.stockMode = :stockMode
+    """)
+    int syncAvailableQuantity(@Param("id") Long id,
+                              @Param("quantity") Integer quantity,
+                              @Param("stockMode") StockMode stockMode,
+                              @Param("available") FoodItemStatus available,
+                              @Param("outOfStock") FoodItemStatus outOfStock);
+    
+    /**
+     * A line that could not be reserved
+     */
+    interface StockShortageView {
+        Long getFoodItemId();
+        Integer getRequested();
+        Integer getAvailable();
+        // False when the row was not read: missing, or switched to another stock mode
+        Boolean getInStockMode();
+    }
+    
+    /**
+     * Lightweight projection of an item's stock mode
+     */
+    interface StockModeView {
+        Long getId();
+        StockMode getStockMode();
+    }
+    
+    /**
+     * What a live item is counted under: its category, its store and its store's location
+     */
+    interface LiveFacetView {
+        Long getId();
+        Long getCategoryId();
+        Long getStoreId();
+        Double getLatitude();
+        Double getLongitude();
+    }
+    
+    /**
+     * Searchable text of an item
+     */
+    interface SearchDocumentView {
+        Long getId();
+        String getName();
+        String getDescription();
+        String getCategoryName();
+        String getStoreName();
+    }
 }
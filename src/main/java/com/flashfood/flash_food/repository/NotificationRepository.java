@@ -2,6 +2,7 @@ package com.flashfood.flash_food.repository;
 
 import com.flashfood.flash_food.entity.Notification;
 import com.flashfood.flash_food.entity.NotificationType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -21,6 +22,20 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     
     Page<Notification> findByUserIdOrderByCreatedAtDesc(Long userId, Pageable pageable);
     
+    /**
+     * A user's inbox, newest first, strictly after the given (createdAt, id) position (keyset pagination, no COUNT)
+     */
+    @Query("""
+        SELECT n FROM Notification n 
+        WHERE n.user.id = :userId 
+        AND (n.createdAt < :createdAt OR (n.createdAt = :createdAt AND n.id < :id)) 
+        ORDER BY n.createdAt DESC, n.id DESC
+    """)
+    List<Notification> findByUserIdBefore(@Param("userId") Long userId,
+                                          @Param("createdAt") LocalDateTime createdAt,
+                                          @Param("id") Long id,
+                                          Limit limit);
+    
     List<Notification> findByUserIdAndIsReadFalseOrderByCreatedAtDesc(Long userId);
     
     Long countByUserIdAndIsReadFalse(Long userId);
@@ -2,15 +2,21 @@ package com.flashfood.flash_food.repository;
 
 import com.flashfood.flash_food.entity.Order;
 import com.flashfood.flash_food.entity.OrderStatus;
+import com.flashfood.flash_food.entity.PaymentStatus;
 import com.flashfood.flash_food.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,27 +26,87 @@ import java.util.Optional;
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
     
+    @EntityGraph(attributePaths = {"store", "orderItems", "orderItems.foodItem"})
     Optional<Order> findByOrderNumber(String orderNumber);
     
     List<Order> findByUser(User user);
     
+    /**
+     * Order pages join the store; items and their food items are batch fetched
+     * (hibernate.default_batch_fetch_size), since fetch-joining a collection would page in memory
+     */
+    @EntityGraph(attributePaths = {"store"})
     Page<Order> findByUser(User user, Pageable pageable);
     
+    @Override
+    @EntityGraph(attributePaths = {"store"})
+    Page<Order> findAll(Pageable pageable);
+    
     List<Order> findByStatus(OrderStatus status);
     
+    /**
+     * A user's orders, newest first, strictly after the given (createdAt, id) position (keyset pagination, no COUNT)
+     */
+    @EntityGraph(attributePaths = {"store"})
+    @Query("""
+        SELECT o FROM Order o 
+        WHERE o.user.id = :userId 
+        AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) 
+        ORDER BY o.createdAt DESC, o.id DESC
+    """)
+    List<Order> findByUserIdBefore(@Param("userId") Long userId,
+                                   @Param("createdAt") LocalDateTime createdAt,
+                                   @Param("id") Long id,
+                                   Limit limit);
+    
+    /**
+     * All orders, newest first, strictly after the given (createdAt, id) position (keyset pagination, no COUNT)
+     */
+    @EntityGraph(attributePaths = {"store"})
+    @Query("""
+        SELECT o FROM Order o 
+        WHERE o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id) 
+        ORDER BY o.createdAt DESC, o.id DESC
+    """)
+    List<Order> findAllBefore(@Param("createdAt") LocalDateTime createdAt,
+                              @Param("id") Long id,
+                              Limit limit);
+    
+    /**
+     * One page of a user's orders in a status (idx_order_user_status_created)
+     */
+    @EntityGraph(attributePaths = {"store"})
     @Query("""
         SELECT o FROM Order o 
         WHERE o.user.id = :userId 
         AND o.status = :status
     """)
-    List<Order> findByUserIdAndStatus(@Param("userId") Long userId, @Param("status") OrderStatus status);
+    Page<Order> findByUserIdAndStatus(@Param("userId") Long userId,
+                                      @Param("status") OrderStatus status,
+                                      Pageable pageable);
     
+    /**
+     * One page of a store's orders (idx_order_store_status_created)
+     */
+    @EntityGraph(attributePaths = {"store"})
+    @Query("""
+        SELECT o FROM Order o 
+        WHERE o.store.id = :storeId
+    """)
+    Page<Order> findByStoreId(@Param("storeId") Long storeId, Pageable pageable);
+    
+    /**
+     * One page of a store's orders in a status (idx_order_store_status_created)
+     */
+    @EntityGraph(attributePaths = {"store"})
     @Query("""
         SELECT o FROM Order o 
         WHERE o.store.id = :storeId 
         AND o.status = :status
     """)
-    List<Order> findByStoreIdAndStatus(@Param("storeId") Long storeId, @Param("status") OrderStatus status);
+    Page<Order> findByStoreIdAndStatus(@Param("storeId") Long storeId,
+                                       @Param("status") OrderStatus status,
+                                       Pageable pageable);
     
     /**
      * Find orders that need to be auto-expired
@@ -52,6 +118,93 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     """)
     List<Order> findOrdersToExpire(@Param("expiryTime") LocalDateTime expiryTime);
     
+    /**
+     * Load an order with everything OrderResponse needs in one query
+     */
+    @EntityGraph(attributePaths = {"store", "orderItems", "orderItems.foodItem"})
+    Optional<Order> findWithItemsById(Long id);
+    
+    @EntityGraph(attributePaths = {"orderItems", "orderItems.foodItem"})
+    List<Order> findAllWithItemsByIdIn(Collection<Long> ids);
+    
+    @Query("SELECT o.status FROM Order o WHERE o.id = :id")
+    Optional<OrderStatus> findStatusById(@Param("id") Long id);
+    
+    @Query("SELECT o.id AS id, o.status AS status FROM Order o WHERE o.id IN :ids AND o.store.id = :storeId")
+    List<OrderStatusView> findStatusesByStore(@Param("ids") Collection<Long> ids, @Param("storeId") Long storeId);
+    
+    /**
+     * Compare-and-set status transition: only moves the order if it is still in one of the expected statuses
+     * @return 1 if the order moved, 0 if it was not found or another request changed it first
+     */
+    @Modifying
+    @Query("""
+        UPDATE Order o 
+        SET o.status = :target, o.updatedAt = :now 
+        WHERE o.id = :id 
+        AND o.status IN :expected
+    """)
+    int transitionStatus(@Param("id") Long id,
+                         @Param("expected") Collection<OrderStatus> expected,
+                         @Param("target") OrderStatus target,
+                         @Param("now") LocalDateTime now);
+    
+    /**
+     * Bulk compare-and-set transition for a store's orders
+     * @return IDs of the orders that moved
+     */
+    @Transactional
+    @Query(value = """
+        UPDATE orders 
+        SET status = :target, updated_at = :now 
+        WHERE id IN (:ids) 
+        AND store_id = :storeId 
+        AND status IN (:expected) 
+        RETURNING id
+    """, nativeQuery = true)
+    List<Long> transitionStoreOrders(@Param("ids") Collection<Long> ids,
+                                     @Param("storeId") Long storeId,
+                                     @Param("expected") Collection<Integer> expected,
+                                     @Param("target") int target,
+                                     @Param("now") LocalDateTime now);
+    
+    /**
+     * Compare-and-set cancellation of PENDING orders
+     * With unpaidOnly, orders whose payment completed in the meantime are left alone
+     * @return IDs of the orders that were cancelled
+     */
+    @Transactional
+    @Query(value = """
+        UPDATE orders 
+        SET status = :cancelled, cancellation_reason = :reason, cancelled_at = :now, updated_at = :now 
+        WHERE id IN (:ids) 
+        AND status = :pending 
+        AND (:unpaidOnly = false OR payment_status IS DISTINCT FROM :paid) 
+        RETURNING id
+    """, nativeQuery = true)
+    List<Long> cancelPendingOrders(@Param("ids") Collection<Long> ids,
+                                   @Param("pending") int pending,
+                                   @Param("cancelled") int cancelled,
+                                   @Param("unpaidOnly") boolean unpaidOnly,
+                                   @Param("paid") int paid,
+                                   @Param("reason") String reason,
+                                   @Param("now") LocalDateTime now);
+    
+    /**
+     * Mark an order paid unless it was cancelled or expired first
+     */
+    @Modifying
+    @Query("""
+        UPDATE Order o 
+        SET o.paymentStatus = :paid, o.updatedAt = :now 
+        WHERE o.id = :id 
+        AND o.status NOT IN :closed
+    """)
+    int markPaid(@Param("id") Long id,
+                 @Param("paid") PaymentStatus paid,
+                 @Param("closed") Collection<OrderStatus> closed,
+                 @Param("now") LocalDateTime now);
+    
     /**
      * Get order statistics for a store
      */
@@ -61,4 +214,12 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
         AND o.status = 'COMPLETED'
     """)
     Long countCompletedOrdersByStore(@Param("storeId") Long storeId);
+    
+    /**
+     * Lightweight projection of an order's status
+     */
+    interface OrderStatusView {
+        Long getId();
+        OrderStatus getStatus();
+    }
 }
@@ -1,13 +1,19 @@
 package com.flashfood.flash_food.repository;
 
+import com.flashfood.flash_food.dto.response.StoreResponse;
 import com.flashfood.flash_food.entity.Store;
 import com.flashfood.flash_food.entity.StoreStatus;
 import com.flashfood.flash_food.entity.StoreType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +23,18 @@ import java.util.Optional;
 @Repository
 public interface StoreRepository extends JpaRepository<Store, Long> {
     
+    /**
+     * Read-only list queries select straight into StoreResponse (JPQL constructor expression)
+     * Type and status go through their auto-applied converters, so the constructor receives enums
+     */
+    String RESPONSE_SELECT = """
+        SELECT new com.flashfood.flash_food.dto.response.StoreResponse(
+            s.id, s.name, s.address, s.phoneNumber, s.latitude, s.longitude, s.type, s.status, 
+            s.description, s.imageUrl, s.openTime, s.closeTime, s.flashSaleTime, 
+            s.rating, s.totalRatings, s.createdAt) 
+        FROM Store s 
+    """;
+    
     Optional<Store> findByIdAndStatus(Long id, StoreStatus status);
     
     List<Store> findByStatus(StoreStatus status);
@@ -25,24 +43,113 @@ public interface StoreRepository extends JpaRepository<Store, Long> {
     
     List<Store> findByOwnerEmail(String ownerEmail);
     
+    @Query(RESPONSE_SELECT)
+    Page<StoreResponse> findAllResponses(Pageable pageable);
+    
+    @Query(RESPONSE_SELECT + """
+        WHERE s.type = :type
+    """)
+    Page<StoreResponse> findResponsesByType(@Param("type") StoreType type, Pageable pageable);
+    
+    @Query(RESPONSE_SELECT + """
+        WHERE s.status = :status
+    """)
+    Page<StoreResponse> findResponsesByStatus(@Param("status") StoreStatus status, Pageable pageable);
+    
     /**
-     * Find stores by name (for search functionality)
+     * All stores, newest first, strictly after the given (createdAt, id) position (keyset pagination, no COUNT)
+     */
+    @Query(RESPONSE_SELECT + """
+        WHERE s.createdAt < :createdAt OR (s.createdAt = :createdAt AND s.id < :id) 
+        ORDER BY s.createdAt DESC, s.id DESC
+    """)
+    List<StoreResponse> findAllBefore(@Param("createdAt") LocalDateTime createdAt,
+                                      @Param("id") Long id,
+                                      Limit limit);
+    
+    /**
+     * Stores by ID in no particular order (a page of search or nearby results)
+     */
+    @Query(RESPONSE_SELECT + """
+        WHERE s.id IN :ids
+    """)
+    List<StoreResponse> findResponsesByIds(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Stores by ID with the given status, in no particular order
+     */
+    @Query(RESPONSE_SELECT + """
+        WHERE s.id IN :ids 
+        AND s.status = :status
+    """)
+    List<StoreResponse> findResponsesByIdsAndStatus(@Param("ids") Collection<Long> ids,
+                                                    @Param("status") StoreStatus status);
+    
+    /**
+     * Searchable text of every store with the given status, source of the search index
      */
     @Query("""
-        SELECT s FROM Store s 
-        WHERE LOWER(s.name) LIKE LOWER(CONCAT('%', :keyword, '%'))
-        AND s.status = 'ACTIVE'
+        SELECT s.id AS id, s.name AS name, s.address AS address, s.description AS description 
+        FROM Store s 
+        WHERE s.status = :status
     """)
-    List<Store> searchByName(@Param("keyword") String keyword);
+    List<SearchDocumentView> findSearchDocuments(@Param("status") StoreStatus status);
     
     /**
-     * Find active stores with coordinates (for Redis Geo indexing)
+     * Same as findSearchDocuments for the given IDs; IDs with another status are simply absent
      */
     @Query("""
-        SELECT s FROM Store s 
+        SELECT s.id AS id, s.name AS name, s.address AS address, s.description AS description 
+        FROM Store s 
+        WHERE s.id IN :ids 
+        AND s.status = :status
+    """)
+    List<SearchDocumentView> findSearchDocumentsByIds(@Param("ids") Collection<Long> ids,
+                                                      @Param("status") StoreStatus status);
+    
+    /**
+     * Locations of active stores with coordinates and an ID above afterId, by ID (keyset batches for the geo indexes)
+     */
+    @Query("""
+        SELECT s.id AS id, s.latitude AS latitude, s.longitude AS longitude 
+        FROM Store s 
         WHERE s.status = 'ACTIVE' 
         AND s.latitude IS NOT NULL 
+        AND s.longitude IS NOT NULL 
+        AND s.id > :afterId 
+        ORDER BY s.id
+    """)
+    List<LocationView> findActiveStoresWithCoordinates(@Param("afterId") Long afterId, Limit limit);
+    
+    /**
+     * Locations of the given stores that are active and have coordinates
+     */
+    @Query("""
+        SELECT s.id AS id, s.latitude AS latitude, s.longitude AS longitude 
+        FROM Store s 
+        WHERE s.id IN :ids 
+        AND s.status = 'ACTIVE' 
+        AND s.latitude IS NOT NULL 
         AND s.longitude IS NOT NULL
     """)
-    List<Store> findActiveStoresWithCoordinates();
+    List<LocationView> findActiveLocationsByIds(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Location of a store
+     */
+    interface LocationView {
+        Long getId();
+        Double getLatitude();
+        Double getLongitude();
+    }
+    
+    /**
+     * Searchable text of a store
+     */
+    interface SearchDocumentView {
+        Long getId();
+        String getName();
+        String getAddress();
+        String getDescription();
+    }
 }
@@ -3,6 +3,8 @@ package com.flashfood.flash_food.repository;
 import com.flashfood.flash_food.entity.User;
 import com.flashfood.flash_food.entity.UserRole;
 import com.flashfood.flash_food.entity.UserStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -27,6 +29,17 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     List<User> findByStatus(UserStatus status);
     
+    /**
+     * Page of users whose name, email or phone number contains the pattern (see SearchText.containsPattern)
+     */
+    @Query("""
+        SELECT u FROM User u 
+        WHERE LOWER(u.fullName) LIKE :pattern 
+        OR LOWER(u.email) LIKE :pattern 
+        OR u.phoneNumber LIKE :pattern
+    """)
+    Page<User> searchByKeyword(@Param("pattern") String pattern, Pageable pageable);
+    
     /**
      * Find users that have a specific role
      * Uses JOIN on user_roles table
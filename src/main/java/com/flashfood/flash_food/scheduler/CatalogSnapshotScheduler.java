@@ -0,0 +1,89 @@
+package com.flashfood.flash_food.scheduler;
+
+import com.flashfood.flash_food.service.CategoryTree;
+import com.flashfood.flash_food.service.FlashSaleCatalog;
+import com.flashfood.flash_food.service.RedisGeoService;
+import com.flashfood.flash_food.service.SearchIndex;
+import com.flashfood.flash_food.service.StoreGeoIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the in-memory flash-sale catalog from Postgres
+ * Refreshes stock counts and admits items whose sale is about to start; edits are applied in between by broadcast
+ * Also catches up the category tree on nodes that missed a broadcast version,
+ * and rebuilds the search and store geo indexes (in memory and in Redis) so they never drift far from the database
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CatalogSnapshotScheduler {
+    
+    private final FlashSaleCatalog flashSaleCatalog;
+    private final CategoryTree categoryTree;
+    private final SearchIndex searchIndex;
+    private final StoreGeoIndex storeGeoIndex;
+    private final RedisGeoService redisGeoService;
+    
+    /**
+     * Run on startup and every 5 seconds (configurable)
+     */
+    @Scheduled(fixedDelayString = "${app.catalog.snapshot.refresh-interval-ms:5000}")
+    public void rebuildCatalogSnapshot() {
+        try {
+            flashSaleCatalog.rebuild();
+        } catch (Exception e) {
+            log.error("Error rebuilding flash-sale catalog, keeping the previous snapshot", e);
+        }
+    }
+
+    /**
+     * Run every 30 seconds (configurable); a Redis read unless this node is behind
+     */
+    @Scheduled(fixedDelayString = "${app.category.tree.check-interval-ms:30000}")
+    public void checkCategoryTreeVersion() {
+        try {
+            categoryTree.rebuildIfBehind();
+        } catch (Exception e) {
+            log.error("Error checking category tree version, keeping the current tree", e);
+        }
+    }
+
+    /**
+     * Run on startup and every 10 minutes (configurable); edits are applied in between by broadcast
+     */
+    @Scheduled(fixedDelayString = "${app.search.rebuild-interval-ms:600000}")
+    public void rebuildSearchIndex() {
+        try {
+            searchIndex.rebuild();
+        } catch (Exception e) {
+            log.error("Error rebuilding search index, keeping the previous index", e);
+        }
+    }
+
+    /**
+     * Run on startup and every 10 minutes (configurable); nearby queries use Redis Geo until the first build
+     */
+    @Scheduled(fixedDelayString = "${app.geo.rebuild-interval-ms:600000}")
+    public void rebuildStoreGeoIndex() {
+        try {
+            storeGeoIndex.rebuild();
+        } catch (Exception e) {
+            log.error("Error rebuilding store geo index, keeping the previous index", e);
+        }
+    }
+
+    /**
+     * Run on startup and every hour (configurable); one node at a time, readers keep the old index until the swap
+     */
+    @Scheduled(fixedDelayString = "${app.geo.redis.reindex-interval-ms:3600000}")
+    public void reindexRedisGeo() {
+        try {
+            redisGeoService.reindexStores();
+        } catch (Exception e) {
+            log.error("Error reindexing Redis geo, keeping the current index", e);
+        }
+    }
+}
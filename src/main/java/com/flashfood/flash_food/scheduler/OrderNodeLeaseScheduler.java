@@ -0,0 +1,30 @@
+package com.flashfood.flash_food.scheduler;
+
+import com.flashfood.flash_food.util.OrderNumberGenerator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps this node's order node id leased in Redis (only when app.order.node-id is not set)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderNodeLeaseScheduler {
+    
+    private final OrderNumberGenerator orderNumberGenerator;
+    
+    /**
+     * Run every 20 seconds (configurable), well inside the 60 second lease
+     */
+    @Scheduled(fixedDelayString = "${app.order.node-lease-renew-interval-ms:20000}")
+    public void renewOrderNodeLease() {
+        try {
+            orderNumberGenerator.renewNodeLease();
+        } catch (Exception e) {
+            log.error("Error renewing order node id lease, will retry", e);
+        }
+    }
+}
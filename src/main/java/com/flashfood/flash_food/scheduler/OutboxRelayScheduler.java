@@ -0,0 +1,58 @@
+package com.flashfood.flash_food.scheduler;
+
+import com.flashfood.flash_food.service.OutboxRelay;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Drains the transactional outbox to RabbitMQ and purges old published events
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OutboxRelayScheduler {
+    
+    private final OutboxRelay outboxRelay;
+    
+    @Value("${app.outbox.batch-size:200}")
+    private int batchSize;
+    
+    @Value("${app.outbox.max-batches-per-run:50}")
+    private int maxBatchesPerRun;
+    
+    @Value("${app.outbox.retention-hours:24}")
+    private long retentionHours;
+    
+    /**
+     * Run every 200 ms (configurable); keeps sending while batches come back full
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.relay-interval-ms:200}")
+    public void relayOutbox() {
+        try {
+            for (int i = 0; i < maxBatchesPerRun; i++) {
+                if (outboxRelay.relayBatch() < batchSize) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            // The batch stays unpublished and is retried on the next run
+            log.error("Error relaying outbox events", e);
+        }
+    }
+    
+    /**
+     * Run hourly to delete published events past the retention window
+     */
+    @Scheduled(cron = "0 30 * * * *")
+    public void purgePublishedOutboxEvents() {
+        int deleted = outboxRelay.purgePublished(Duration.ofHours(retentionHours));
+        if (deleted > 0) {
+            log.info("Purged {} published outbox events", deleted);
+        }
+    }
+}
@@ -6,6 +6,8 @@ import com.flashfood.flash_food.entity.Order;
 import com.flashfood.flash_food.entity.OrderStatus;
 import com.flashfood.flash_food.repository.FoodItemRepository;
 import com.flashfood.flash_food.repository.OrderRepository;
+import com.flashfood.flash_food.service.SearchIndex;
+import com.flashfood.flash_food.service.SoldOutFilter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -25,6 +27,8 @@ public class StatusUpdateScheduler {
     
     private final FoodItemRepository foodItemRepository;
     private final OrderRepository orderRepository;
+    private final SoldOutFilter soldOutFilter;
+    private final SearchIndex searchIndex;
     
     /**
      * Run every 5 minutes to mark expired food items
@@ -41,6 +45,8 @@ public class StatusUpdateScheduler {
             item.setIsExpired(true);
             item.setStatus(FoodItemStatus.EXPIRED);
             foodItemRepository.save(item);
+            soldOutFilter.syncAfterCommit(item);
+            searchIndex.refreshFoodItemAfterCommit(item.getId());
             log.info("Marked food item {} as expired", item.getId());
         }
         
@@ -0,0 +1,115 @@
+package com.flashfood.flash_food.scheduler;
+
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.StockMode;
+import com.flashfood.flash_food.repository.FoodItemRepository;
+import com.flashfood.flash_food.service.LiveFacetCounts;
+import com.flashfood.flash_food.service.RedisStockService;
+import com.flashfood.flash_food.service.SoldOutFilter;
+import com.flashfood.flash_food.service.StockLeaseService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies the Redis stock ledger back to Postgres for items in Redis stock mode
+ * Redis is the source of truth for those items, so writing the absolute value is idempotent
+ * Also hands expired node-local stock leases back to Postgres, resyncs the sold-out filter, admits items whose sale
+ * started to the live facet counts and checks those counts for drift
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StockReconciliationScheduler {
+    
+    private final RedisStockService redisStockService;
+    private final FoodItemRepository foodItemRepository;
+    private final StockLeaseService stockLeaseService;
+    private final SoldOutFilter soldOutFilter;
+    private final LiveFacetCounts liveFacetCounts;
+    
+    @Value("${app.stock.reconcile-batch-size:500}")
+    private int batchSize;
+    
+    /**
+     * Run every second (configurable) to sync dirty ledgers
+     */
+    @Scheduled(fixedDelayString = "${app.stock.reconcile-interval-ms:1000}")
+    @Transactional
+    public void reconcileRedisStock() {
+        List<Long> dirtyIds = redisStockService.popDirty(batchSize);
+        if (dirtyIds.isEmpty()) {
+            return;
+        }
+        
+        try {
+            Map<Long, Integer> stock = redisStockService.readStock(dirtyIds);
+            stock.forEach((id, quantity) -> foodItemRepository.syncAvailableQuantity(
+                    id, quantity, StockMode.REDIS, FoodItemStatus.AVAILABLE, FoodItemStatus.OUT_OF_STOCK));
+            
+            log.debug("Reconciled Redis stock for {} food items", stock.size());
+        } catch (RuntimeException e) {
+            // Put the IDs back so the next run retries them
+            redisStockService.markDirty(dirtyIds);
+            log.error("Error reconciling Redis stock, will retry {} food items", dirtyIds.size(), e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Run every 5 seconds (configurable) to return leases that expired or whose sale ended
+     */
+    @Scheduled(fixedDelayString = "${app.stock.lease.sweep-interval-ms:5000}")
+    public void returnExpiredStockLeases() {
+        int returned = stockLeaseService.returnExpiredLeases();
+        if (returned > 0) {
+            log.debug("Returned {} expired stock leases", returned);
+        }
+    }
+    
+    /**
+     * Rebuild the sold-out filter from Postgres on startup and every 30 seconds (configurable)
+     * Broadcasts keep it current in between; this heals any message a node missed
+     */
+    @Scheduled(fixedDelayString = "${app.stock.sold-out.resync-interval-ms:30000}")
+    public void resyncSoldOutFilter() {
+        try {
+            soldOutFilter.resync();
+        } catch (Exception e) {
+            log.error("Error resyncing sold-out filter", e);
+        }
+    }
+    
+    /**
+     * Count items in the live facets as their sale starts, checked every 5 seconds (configurable)
+     */
+    @Scheduled(fixedDelayString = "${app.facets.sale-start-interval-ms:5000}")
+    public void admitStartedSales() {
+        try {
+            int started = liveFacetCounts.admitStartedSales();
+            if (started > 0) {
+                log.debug("Admitted {} food items whose sale started to the live facet counts", started);
+            }
+        } catch (Exception e) {
+            log.error("Error admitting started sales to the live facet counts", e);
+        }
+    }
+    
+    /**
+     * Compare the live facet counts with Postgres every minute (configurable) and correct any drift
+     */
+    @Scheduled(fixedDelayString = "${app.facets.reconcile-interval-ms:60000}")
+    public void reconcileLiveFacetCounts() {
+        try {
+            liveFacetCounts.reconcile();
+        } catch (Exception e) {
+            log.error("Error reconciling live facet counts", e);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.dto.request.CreateOrderRequest;
+import com.flashfood.flash_food.entity.StockMode;
+import com.flashfood.flash_food.exception.AdmissionQueuedException;
+import com.flashfood.flash_food.exception.InsufficientStockException;
+import com.flashfood.flash_food.repository.FoodItemRepository;
+import com.flashfood.flash_food.util.AppConstants;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Flash-sale admission control (virtual waiting room) per food item
+ *
+ * Before an order reaches the database each line asks Redis for a slot. About as many buyers as there are
+ * units left (plus a margin for failed payments) are admitted at once; everybody else gets a position in a
+ * FIFO queue and a token to retry with, and once the stock hint reaches zero with nobody in flight buyers are
+ * turned away without touching Postgres. State is shared by all app nodes:
+ *   admission:{food_item:ID}:stock   - remaining stock hint, loaded from the ledger/DB and refreshed every few seconds
+ *                                      (-1 for leased items: their units sit in node leases no row or key counts,
+ *                                      so they are not gated)
+ *   admission:{food_item:ID}:active  - admitted buyers placing an order (score = lease expiry)
+ *   admission:{food_item:ID}:queue   - waiting buyers (score = ticket number)
+ *   admission:{food_item:ID}:seen    - last poll of each waiting buyer, so abandoned tickets drop out
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AdmissionService {
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisStockService redisStockService;
+    private final SoldOutFilter soldOutFilter;
+    private final FoodItemRepository foodItemRepository;
+    
+    @Value("${app.admission.margin:5}")
+    private int margin;
+    
+    @Value("${app.admission.active-lease-ms:15000}")
+    private long activeLeaseMs;
+    
+    @Value("${app.admission.queue-idle-ms:10000}")
+    private long queueIdleMs;
+    
+    @Value("${app.admission.stock-hint-ttl-seconds:5}")
+    private long stockHintTtlSeconds;
+    
+    @Value("${app.admission.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+    
+    @Value("${app.admission.key-ttl-minutes:30}")
+    private long keyTtlMinutes;
+    
+    private static final long LOAD_LOCK_MS = 2000;
+    private static final int UNGATED = -1;
+    private static final int MAX_STALE_PER_CALL = 100;
+    
+    private static final long ADMITTED = 0;
+    private static final long QUEUED = 1;
+    private static final long SOLD_OUT = 2;
+    private static final long LOAD = 3;
+    
+    /**
+     * KEYS[1] = stock hint, KEYS[2] = active, KEYS[3] = queue, KEYS[4] = seen, KEYS[5] = ticket seq, KEYS[6] = load lock
+     * ARGV[1] = member, ARGV[2] = now ms, ARGV[3] = active lease ms, ARGV[4] = margin, ARGV[5] = queue idle ms,
+     * ARGV[6] = load lock ms, ARGV[7] = key TTL ms, ARGV[8] = max stale tickets dropped per call
+     * Returns {0} admitted, {1, position} queued, {2} sold out, {3} caller must load the stock hint
+     */
+    private static final RedisScript<List> ADMIT_SCRIPT = new DefaultRedisScript<>("""
+            local member = ARGV[1]
+            local now = tonumber(ARGV[2])
+            redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', now)
+            local stale = redis.call('ZRANGEBYSCORE', KEYS[4], '-inf', now - tonumber(ARGV[5]), 'LIMIT', 0, tonumber(ARGV[8]))
+            for _, m in ipairs(stale) do
+                redis.call('ZREM', KEYS[3], m)
+                redis.call('ZREM', KEYS[4], m)
+            end
+            for i = 2, 5 do
+                redis.call('PEXPIRE', KEYS[i], ARGV[7])
+            end
+            
+            if redis.call('ZSCORE', KEYS[2], member) then
+                redis.call('ZADD', KEYS[2], now + tonumber(ARGV[3]), member)
+                return {0}
+            end
+            
+            local stock = redis.call('GET', KEYS[1])
+            local active = redis.call('ZCARD', KEYS[2])
+            local rank = redis.call('ZRANK', KEYS[3], member)
+            if stock then
+                stock = tonumber(stock)
+                if stock < 0 then
+                    return {0}
+                end
+                if stock <= 0 and active == 0 then
+                    redis.call('ZREM', KEYS[3], member)
+                    redis.call('ZREM', KEYS[4], member)
+                    return {2}
+                end
+                local capacity = stock + tonumber(ARGV[4]) - active
+                local ahead = rank or redis.call('ZCARD', KEYS[3])
+                if ahead < capacity then
+                    redis.call('ZREM', KEYS[3], member)
+                    redis.call('ZREM', KEYS[4], member)
+                    redis.call('ZADD', KEYS[2], now + tonumber(ARGV[3]), member)
+                    return {0}
+                end
+            elseif redis.call('SET', KEYS[6], '1', 'NX', 'PX', ARGV[6]) then
+                return {3}
+            end
+            
+            if not rank then
+                redis.call('ZADD', KEYS[3], redis.call('INCR', KEYS[5]), member)
+                rank = redis.call('ZRANK', KEYS[3], member)
+            end
+            redis.call('ZADD', KEYS[4], now, member)
+            return {1, rank + 1}
+            """, List.class);
+    
+    /**
+     * KEYS[1] = stock hint, KEYS[2] = active. ARGV[1] = member, ARGV[2] = units sold (0 when the order failed)
+     * Ungated hints (-1) are left alone
+     */
+    private static final RedisScript<Long> COMPLETE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('ZREM', KEYS[2], ARGV[1])
+            local sold = tonumber(ARGV[2])
+            local stock = tonumber(redis.call('GET', KEYS[1]))
+            if sold > 0 and stock and stock >= 0 then
+                if redis.call('DECRBY', KEYS[1], sold) < 0 then
+                    redis.call('SET', KEYS[1], '0', 'KEEPTTL')
+                end
+            end
+            return 0
+            """, Long.class);
+    
+    /**
+     * Run an order submission once the buyer is admitted for every food item in it
+     * @param queueToken Token from an earlier queued answer, or null on the first attempt
+     * @param request Order being submitted
+     * @param action Order placement (must not run inside the caller's transaction)
+     * @throws AdmissionQueuedException if the buyer has to wait; carries the token and position to retry with
+     * @throws InsufficientStockException if an item is sold out
+     */
+    public <T> T admit(String queueToken, CreateOrderRequest request, Supplier<T> action) {
+        Map<Long, Integer> quantities = new TreeMap<>();
+        request.getItems().forEach(line -> quantities.merge(line.getFoodItemId(), line.getQuantity(), Integer::sum));
+        
+        // Known sold-out items are turned away before any Redis round trip
+        soldOutFilter.rejectIfSoldOut(quantities.keySet());
+        
+        String token = queueToken == null || queueToken.isBlank() ? UUID.randomUUID().toString() : queueToken;
+        String member = currentPrincipal() + ":" + token;
+        
+        List<Long> admitted = new ArrayList<>();
+        try {
+            for (Long foodItemId : quantities.keySet()) {
+                enter(foodItemId, member, token);
+                admitted.add(foodItemId);
+            }
+        } catch (AdmissionQueuedException | InsufficientStockException e) {
+            admitted.forEach(id -> complete(id, member, 0));
+            throw e;
+        } catch (Exception e) {
+            // The waiting room must not take orders down with Redis; fall back to the stock checks alone
+            log.warn("Admission control unavailable, placing order without it", e);
+            return action.get();
+        }
+        
+        T result;
+        try {
+            result = action.get();
+        } catch (InsufficientStockException e) {
+            // The hint was too optimistic: drop it so the next buyer reloads the real remaining quantity
+            admitted.forEach(id -> complete(id, member, 0));
+            dropStockHints(admitted);
+            throw e;
+        } catch (RuntimeException e) {
+            admitted.forEach(id -> complete(id, member, 0));
+            throw e;
+        }
+        
+        admitted.forEach(id -> complete(id, member, quantities.get(id)));
+        return result;
+    }
+    
+    private void enter(Long foodItemId, String member, String token) {
+        List<String> keys = List.of(key(foodItemId, "stock"), key(foodItemId, "active"), key(foodItemId, "queue"),
+                key(foodItemId, "seen"), key(foodItemId, "seq"), key(foodItemId, "loading"));
+        
+        // At most one extra pass: the caller that won the load lock fills the stock hint and asks again
+        for (int attempt = 0; attempt < 2; attempt++) {
+            List<?> result = stringRedisTemplate.execute(ADMIT_SCRIPT, keys, member,
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(activeLeaseMs), String.valueOf(margin),
+                    String.valueOf(queueIdleMs), String.valueOf(LOAD_LOCK_MS),
+                    String.valueOf(keyTtlMinutes * 60_000), String.valueOf(MAX_STALE_PER_CALL));
+            long status = toLong(result.get(0));
+            
+            if (status == ADMITTED) {
+                return;
+            }
+            if (status == SOLD_OUT) {
+                throw new InsufficientStockException("Food item " + foodItemId + " is sold out");
+            }
+            if (status == QUEUED) {
+                throw new AdmissionQueuedException(token, toLong(result.get(1)), pollIntervalMs);
+            }
+            if (status == LOAD) {
+                loadStockHint(foodItemId);
+            }
+        }
+        
+        throw new AdmissionQueuedException(token, 1, pollIntervalMs);
+    }
+    
+    private void complete(Long foodItemId, String member, int sold) {
+        try {
+            stringRedisTemplate.execute(COMPLETE_SCRIPT, List.of(key(foodItemId, "stock"), key(foodItemId, "active")),
+                    member, String.valueOf(sold));
+        } catch (Exception e) {
+            // The active lease expires on its own
+            log.error("Error releasing admission of food item {}", foodItemId, e);
+        }
+    }
+    
+    /**
+     * Read the remaining quantity once for the whole cluster (the caller holds the load lock)
+     * The Redis ledger wins over the row for items in Redis mode. The row of a leased item excludes the units
+     * held in node leases, so leased items get the ungated hint instead of turning buyers away early.
+     */
+    private void loadStockHint(Long foodItemId) {
+        try {
+            Integer remaining = redisStockService.readStock(List.of(foodItemId)).get(foodItemId);
+            if (remaining == null) {
+                boolean leased = foodItemRepository.findStockModes(List.of(foodItemId)).stream()
+                        .anyMatch(view -> view.getStockMode() == StockMode.LEASED);
+                remaining = leased ? UNGATED : foodItemRepository.findAvailableQuantityById(foodItemId).orElse(0);
+            }
+            stringRedisTemplate.opsForValue().set(key(foodItemId, "stock"), String.valueOf(remaining),
+                    Duration.ofSeconds(stockHintTtlSeconds));
+            log.debug("Loaded admission stock hint for food item {}: {}", foodItemId, remaining);
+        } finally {
+            stringRedisTemplate.delete(key(foodItemId, "loading"));
+        }
+    }
+    
+    private void dropStockHints(List<Long> foodItemIds) {
+        try {
+            stringRedisTemplate.delete(foodItemIds.stream().map(id -> key(id, "stock")).toList());
+        } catch (Exception e) {
+            log.error("Error dropping admission stock hints for food items {}", foodItemIds, e);
+        }
+    }
+    
+    private String currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getName() != null ? authentication.getName() : "anonymous";
+    }
+    
+    /**
+     * All keys of one item share a hash slot so the scripts also run on Redis Cluster
+     */
+    private static String key(Long foodItemId, String suffix) {
+        return AppConstants.REDIS_ADMISSION_PREFIX + "{food_item:" + foodItemId + "}:" + suffix;
+    }
+    
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : Long.parseLong(value.toString());
+    }
+}
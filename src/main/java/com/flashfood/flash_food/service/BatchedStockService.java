@@ -0,0 +1,307 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.entity.FoodItem;
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.StockMode;
+import com.flashfood.flash_food.exception.InsufficientStockException;
+import com.flashfood.flash_food.exception.InvalidOperationException;
+import com.flashfood.flash_food.repository.FoodItemRepository;
+import com.flashfood.flash_food.util.TransactionCallbacks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Group-commit stock claims for food items in StockMode.BATCHED
+ *
+ * Concurrent buyers of the same item are queued in memory and a single writer per item drains the
+ * queue: the whole batch is settled with one conditional UPDATE (claimQuantity) in its own transaction,
+ * so N buyers cost one row-lock round trip instead of N. When the batch does not fit, the writer reads
+ * the remaining quantity once and accepts buyers first-come-first-served until it runs out.
+ * Claims only take units from an item that is on sale in batched mode; callers validate the item first.
+ */
+@Slf4j
+@Service
+public class BatchedStockService {
+    
+    private final FoodItemRepository foodItemRepository;
+    private final SoldOutFilter soldOutFilter;
+    private final Executor stockBatchExecutor;
+    
+    @Value("${app.stock.batch.max-size:200}")
+    private int maxBatchSize = 200;
+    
+    @Value("${app.stock.batch.wait-timeout-ms:5000}")
+    private long waitTimeoutMs = 5000;
+    
+    // Retries when the row changed between reading availability and the partial claim
+    private static final int MAX_SETTLE_ATTEMPTS = 3;
+    // Statuses under which a failed claim means too few units rather than an item off sale
+    private static final Set<FoodItemStatus> SELLING_STATUSES =
+            EnumSet.of(FoodItemStatus.AVAILABLE, FoodItemStatus.OUT_OF_STOCK);
+    
+    private final Map<Long, ItemQueue> queues = new ConcurrentHashMap<>();
+    
+    public BatchedStockService(FoodItemRepository foodItemRepository,
+                               SoldOutFilter soldOutFilter,
+                               @Qualifier("stockBatchExecutor") Executor stockBatchExecutor) {
+        this.foodItemRepository = foodItemRepository;
+        this.soldOutFilter = soldOutFilter;
+        this.stockBatchExecutor = stockBatchExecutor;
+    }
+    
+    /**
+     * Claim stock for the batched lines of an order
+     * Lines are claimed one item at a time; if a later line fails, earlier claims are given back.
+     * Call it outside any transaction: buyers wait for the item's writer, and the writer needs a pooled connection
+     * of its own. If the order is not placed afterwards, the caller gives the units back with release().
+     * @param foodItems Food items by ID (used for messages)
+     * @param quantities Requested quantity by food item ID (no duplicate IDs)
+     */
+    public void reserve(Map<Long, FoodItem> foodItems, Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        
+        Map<Long, Integer> claimed = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+                reserve(foodItems.get(line.getKey()), line.getValue());
+                claimed.put(line.getKey(), line.getValue());
+            }
+        } catch (RuntimeException e) {
+            release(claimed);
+            throw e;
+        }
+    }
+    
+    /**
+     * Claim stock for a single item, waiting for the item's writer to settle the batch
+     * @throws InsufficientStockException if the batch settled without enough units for this buyer
+     */
+    public void reserve(FoodItem foodItem, int quantity) {
+        Claim claim = new Claim(quantity);
+        ItemQueue queue = queues.computeIfAbsent(foodItem.getId(), id -> new ItemQueue());
+        queue.pending.add(claim);
+        scheduleDrain(foodItem.getId(), queue);
+        
+        Outcome outcome = await(claim);
+        if (!outcome.granted()) {
+            if (outcome.available() == 0) {
+                soldOutFilter.markSoldOut(foodItem.getId());
+            }
+            throw new InsufficientStockException(foodItem.getName(), quantity, outcome.available());
+        }
+    }
+    
+    /**
+     * Return units immediately (compensation for a failed order)
+     */
+    public void release(Map<Long, Integer> quantities) {
+        quantities.forEach((id, quantity) -> {
+            try {
+                foodItemRepository.restoreQuantity(id, quantity, FoodItemStatus.AVAILABLE, FoodItemStatus.OUT_OF_STOCK);
+                soldOutFilter.markAvailable(List.of(id));
+            } catch (Exception e) {
+                log.error("Error releasing {} batched units of food item {}", quantity, id, e);
+            }
+        });
+    }
+    
+    /**
+     * Return units once the surrounding transaction commits (order cancellation)
+     */
+    public void releaseAfterCommit(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> copy = new LinkedHashMap<>(quantities);
+        TransactionCallbacks.runAfterCommit(() -> release(copy));
+    }
+    
+    private Outcome await(Claim claim) {
+        try {
+            return claim.result.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Withdraw the claim; if the writer completed it first, honour its decision
+            if (claim.result.complete(Outcome.WITHDRAWN)) {
+                throw new InvalidOperationException("Timed out waiting for stock, please retry");
+            }
+            return claim.result.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (claim.result.complete(Outcome.WITHDRAWN)) {
+                throw new InvalidOperationException("Interrupted while waiting for stock");
+            }
+            return claim.result.join();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause
+                    ? cause
+                    : new InvalidOperationException("Failed to reserve stock, please retry");
+        }
+    }
+    
+    private void scheduleDrain(Long foodItemId, ItemQueue queue) {
+        if (!queue.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            stockBatchExecutor.execute(() -> drain(foodItemId, queue));
+        } catch (RejectedExecutionException e) {
+            queue.draining.set(false);
+            failPending(queue, new InvalidOperationException("Too many pending orders, please retry"));
+        }
+    }
+    
+    /**
+     * Single writer loop for one item; only one drain task per item runs at a time
+     */
+    private void drain(Long foodItemId, ItemQueue queue) {
+        try {
+            List<Claim> batch;
+            while (!(batch = pollBatch(queue)).isEmpty()) {
+                try {
+                    settle(foodItemId, batch);
+                } catch (RuntimeException e) {
+                    log.error("Error settling batch of {} claims for food item {}", batch.size(), foodItemId, e);
+                    batch.forEach(claim -> claim.result.completeExceptionally(e));
+                }
+            }
+        } finally {
+            queue.draining.set(false);
+            // A buyer may have enqueued after the last poll but before the flag was cleared
+            if (!queue.pending.isEmpty()) {
+                scheduleDrain(foodItemId, queue);
+            }
+        }
+    }
+    
+    private List<Claim> pollBatch(ItemQueue queue) {
+        List<Claim> batch = new ArrayList<>();
+        Claim claim;
+        while (batch.size() < maxBatchSize && (claim = queue.pending.poll()) != null) {
+            // Skip buyers that already gave up waiting
+            if (!claim.result.isDone()) {
+                batch.add(claim);
+            }
+        }
+        return batch;
+    }
+    
+    private void settle(Long foodItemId, List<Claim> batch) {
+        List<Claim> candidates = batch;
+        int leftover = 0;
+        
+        for (int attempt = 0; attempt < MAX_SETTLE_ATTEMPTS; attempt++) {
+            int total = sum(candidates);
+            if (total > 0 && foodItemRepository.claimQuantity(foodItemId, total, StockMode.BATCHED,
+                    FoodItemStatus.AVAILABLE, FoodItemStatus.OUT_OF_STOCK) == 1) {
+                grant(foodItemId, candidates);
+                reject(batch, candidates, leftover);
+                return;
+            }
+            
+            // The batch does not fit: accept buyers in arrival order while units remain
+            // An item that left the sale or batched mode since it was validated is not sold out, just not on sale
+            int available = foodItemRepository
+                    .findAvailableQuantityInMode(foodItemId, StockMode.BATCHED, SELLING_STATUSES)
+                    .orElseThrow(() -> new InvalidOperationException(
+                            "Food item " + foodItemId + " is no longer on sale, please retry"));
+            List<Claim> fitting = new ArrayList<>();
+            int remaining = available;
+            for (Claim claim : batch) {
+                if (claim.quantity <= remaining) {
+                    fitting.add(claim);
+                    remaining -= claim.quantity;
+                }
+            }
+            
+            if (fitting.isEmpty()) {
+                reject(batch, fitting, available);
+                return;
+            }
+            candidates = fitting;
+            leftover = remaining;
+        }
+        
+        throw new InvalidOperationException("Stock changed while settling batch, please retry");
+    }
+    
+    private void grant(Long foodItemId, List<Claim> granted) {
+        int withdrawn = 0;
+        for (Claim claim : granted) {
+            if (!claim.result.complete(Outcome.GRANTED)) {
+                withdrawn += claim.quantity;
+            }
+        }
+        // Buyers that timed out while the UPDATE ran never see their units: put them back
+        if (withdrawn > 0) {
+            release(Map.of(foodItemId, withdrawn));
+        }
+        log.debug("Settled batch of {} claims for food item {}", granted.size(), foodItemId);
+    }
+    
+    private void reject(List<Claim> batch, List<Claim> granted, int available) {
+        for (Claim claim : batch) {
+            if (!granted.contains(claim)) {
+                claim.result.complete(Outcome.rejected(available));
+            }
+        }
+    }
+    
+    private void failPending(ItemQueue queue, RuntimeException error) {
+        Claim claim;
+        while ((claim = queue.pending.poll()) != null) {
+            claim.result.completeExceptionally(error);
+        }
+    }
+    
+    private static int sum(List<Claim> claims) {
+        int total = 0;
+        for (Claim claim : claims) {
+            total += claim.quantity;
+        }
+        return total;
+    }
+    
+    private static final class ItemQueue {
+        private final Queue<Claim> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+    }
+    
+    private static final class Claim {
+        private final int quantity;
+        private final CompletableFuture<Outcome> result = new CompletableFuture<>();
+        
+        private Claim(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+    
+    private record Outcome(boolean granted, int available) {
+        private static final Outcome GRANTED = new Outcome(true, 0);
+        private static final Outcome WITHDRAWN = new Outcome(false, 0);
+        
+        private static Outcome rejected(int available) {
+            return new Outcome(false, available);
+        }
+    }
+}
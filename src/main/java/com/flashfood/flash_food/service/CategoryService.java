@@ -2,6 +2,7 @@ package com.flashfood.flash_food.service;
 
 import com.flashfood.flash_food.dto.request.CategoryRequest;
 import com.flashfood.flash_food.dto.response.CategoryResponse;
+import com.flashfood.flash_food.dto.response.FacetCountsResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -72,4 +73,10 @@ public interface CategoryService {
      * @return List of child categories
      */
     List<CategoryResponse> findChildCategories(Long parentId);
+    
+    /**
+     * Count live flash-sale items per category (including subcategories), store and geo cell
+     * @return Facet counts, empty maps when counts are unavailable
+     */
+    FacetCountsResponse findFacetCounts();
 }
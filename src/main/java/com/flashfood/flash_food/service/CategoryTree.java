@@ -0,0 +1,378 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.dto.response.CategoryResponse;
+import com.flashfood.flash_food.entity.Category;
+import com.flashfood.flash_food.exception.InvalidOperationException;
+import com.flashfood.flash_food.repository.CategoryRepository;
+import com.flashfood.flash_food.util.AppConstants;
+import com.flashfood.flash_food.util.TransactionCallbacks;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Node-local, immutable copy of the whole category tree
+ *
+ * The tree is small and rarely changes, so every category read is served from memory. Each version is built from one
+ * query and swapped in atomically; a request works on the Snapshot it fetched and never sees a half-applied change.
+ * Versions come from a Redis counter shared by all nodes: a committed write bumps it, rebuilds this node and broadcasts
+ * the new version on "category_tree:changed". Nodes that missed the broadcast catch up when the scheduler sees that
+ * the counter is ahead of their snapshot.
+ */
+@Slf4j
+@Service
+public class CategoryTree implements MessageListener {
+    
+    private final CategoryRepository categoryRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    
+    // Null until first use
+    private volatile Snapshot snapshot;
+    
+    public CategoryTree(CategoryRepository categoryRepository,
+                        StringRedisTemplate stringRedisTemplate,
+                        RedisMessageListenerContainer listenerContainer) {
+        this.categoryRepository = categoryRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+    
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(AppConstants.REDIS_CATEGORY_TREE_CHANNEL));
+    }
+    
+    /**
+     * Current version of the tree, loading it on first use
+     */
+    public Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                rebuild(sharedVersion());
+            }
+            return snapshot;
+        }
+    }
+    
+    /**
+     * Load the tree from Postgres as the given version; older versions never replace newer ones
+     */
+    public void rebuild(long version) {
+        Snapshot fresh = new Snapshot(version, categoryRepository.findAll());
+        synchronized (this) {
+            if (snapshot == null || version >= snapshot.version) {
+                snapshot = fresh;
+            }
+        }
+        log.debug("Rebuilt category tree version {} with {} categories", version, fresh.nodes.length);
+    }
+    
+    /**
+     * Rebuild when another node published a version this one has not seen (heals missed broadcasts)
+     */
+    public void rebuildIfBehind() {
+        long version = sharedVersion();
+        Snapshot current = snapshot;
+        if (current == null || version > current.version) {
+            rebuild(version);
+        }
+    }
+    
+    /**
+     * Publish a new version once the surrounding transaction commits
+     */
+    public void invalidateAfterCommit() {
+        TransactionCallbacks.runAfterCommit(() -> {
+            long version = nextVersion();
+            try {
+                rebuild(version);
+            } catch (Exception e) {
+                // The scheduler retries: the shared counter is now ahead of this node
+                log.error("Error rebuilding category tree version {}", version, e);
+            }
+            try {
+                stringRedisTemplate.convertAndSend(AppConstants.REDIS_CATEGORY_TREE_CHANNEL, String.valueOf(version));
+            } catch (Exception e) {
+                log.error("Error broadcasting category tree version {}", version, e);
+            }
+        });
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            long version = Long.parseLong(body);
+            Snapshot current = snapshot;
+            if (current != null && version > current.version) {
+                rebuild(version);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed category tree message: {}", body);
+        } catch (Exception e) {
+            log.error("Error rebuilding category tree after broadcast {}", body, e);
+        }
+    }
+    
+    private long sharedVersion() {
+        try {
+            String version = stringRedisTemplate.opsForValue().get(AppConstants.REDIS_CATEGORY_TREE_VERSION_KEY);
+            return version != null ? Long.parseLong(version) : 0;
+        } catch (Exception e) {
+            log.warn("Error reading category tree version, keeping the local one", e);
+            Snapshot current = snapshot;
+            return current != null ? current.version : 0;
+        }
+    }
+    
+    private long nextVersion() {
+        try {
+            Long version = stringRedisTemplate.opsForValue().increment(AppConstants.REDIS_CATEGORY_TREE_VERSION_KEY);
+            if (version != null) {
+                return version;
+            }
+        } catch (Exception e) {
+            log.error("Error bumping category tree version, other nodes catch up on their next check", e);
+        }
+        Snapshot current = snapshot;
+        return current != null ? current.version + 1 : 1;
+    }
+    
+    /**
+     * One immutable version of the tree
+     * Nodes are ordered by (displayOrder, id); children of node i are childList[childStart[i] .. childStart[i + 1])
+     * in the same order. Responses are shared by every reader of this version and must not be modified.
+     */
+    public static final class Snapshot {
+        
+        private static final Comparator<CategoryResponse> DISPLAY_ORDER = Comparator
+                .comparing((CategoryResponse category) -> category.getDisplayOrder() != null ? category.getDisplayOrder() : 0)
+                .thenComparing(CategoryResponse::getId);
+        
+        private final long version;
+        private final CategoryResponse[] nodes;
+        private final int[] parent; // -1 for roots and for parents that no longer exist
+        private final int[] childStart;
+        private final int[] childList;
+        private final int[] roots;
+        private final Map<Long, Integer> byId;
+        private final Map<String, Integer> bySlug;
+        
+        private Snapshot(long version, List<Category> categories) {
+            int size = categories.size();
+            List<Category> sorted = new ArrayList<>(categories);
+            sorted.sort(Comparator.comparing((Category category) -> category.getDisplayOrder() != null ? category.getDisplayOrder() : 0)
+                    .thenComparing(Category::getId));
+            
+            Map<Long, Integer> ids = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                ids.put(sorted.get(i).getId(), i);
+            }
+            
+            // Parent links read the foreign key only; the parent itself is never loaded
+            int[] parents = new int[size];
+            int[] childCounts = new int[size + 1];
+            int rootCount = 0;
+            for (int i = 0; i < size; i++) {
+                Category category = sorted.get(i);
+                Integer parentIndex = category.getParent() != null ? ids.get(category.getParent().getId()) : null;
+                parents[i] = parentIndex != null ? parentIndex : -1;
+                if (parents[i] < 0) {
+                    rootCount++;
+                } else {
+                    childCounts[parents[i] + 1]++;
+                }
+            }
+            
+            int[] starts = new int[size + 1];
+            for (int i = 0; i < size; i++) {
+                starts[i + 1] = starts[i] + childCounts[i + 1];
+            }
+            int[] next = Arrays.copyOf(starts, size);
+            int[] children = new int[size - rootCount];
+            int[] rootNodes = new int[rootCount];
+            int nextRoot = 0;
+            // Nodes are visited in display order, so every child list comes out in display order too
+            for (int i = 0; i < size; i++) {
+                if (parents[i] < 0) {
+                    rootNodes[nextRoot++] = i;
+                } else {
+                    children[next[parents[i]]++] = i;
+                }
+            }
+            
+            CategoryResponse[] responses = new CategoryResponse[size];
+            Map<String, Integer> slugs = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                Category category = sorted.get(i);
+                int parentIndex = parents[i];
+                responses[i] = CategoryResponse.builder()
+                        .id(category.getId())
+                        .name(category.getName())
+                        .slug(category.getSlug())
+                        .description(category.getDescription())
+                        .iconUrl(category.getIconUrl())
+                        .displayOrder(category.getDisplayOrder())
+                        .isActive(category.getIsActive())
+                        .parentId(parentIndex >= 0 ? sorted.get(parentIndex).getId() : null)
+                        .parentName(parentIndex >= 0 ? sorted.get(parentIndex).getName() : null)
+                        .level(depth(parents, i))
+                        .build();
+                slugs.put(category.getSlug(), i);
+            }
+            
+            this.version = version;
+            this.nodes = responses;
+            this.parent = parents;
+            this.childStart = starts;
+            this.childList = children;
+            this.roots = rootNodes;
+            this.byId = ids;
+            this.bySlug = slugs;
+        }
+        
+        public long getVersion() {
+            return version;
+        }
+        
+        public Optional<CategoryResponse> findById(Long id) {
+            Integer node = byId.get(id);
+            return node != null ? Optional.of(nodes[node]) : Optional.empty();
+        }
+        
+        public Optional<CategoryResponse> findBySlug(String slug) {
+            Integer node = bySlug.get(slug);
+            return node != null ? Optional.of(nodes[node]) : Optional.empty();
+        }
+        
+        /**
+         * Add the counts of every category to all of its ancestors; categories not in this version are dropped
+         */
+        public Map<Long, Long> rollUp(Map<Long, Long> counts) {
+            long[] totals = new long[nodes.length];
+            counts.forEach((id, count) -> {
+                Integer node = byId.get(id);
+                // Bounded by the node count in case the parent links form a cycle
+                for (int current = node != null ? node : -1, steps = 0; current >= 0 && steps <= nodes.length;
+                     current = parent[current], steps++) {
+                    totals[current] += count;
+                }
+            });
+            Map<Long, Long> rolledUp = new HashMap<>(nodes.length * 2);
+            for (int i = 0; i < nodes.length; i++) {
+                rolledUp.put(nodes[i].getId(), totals[i]);
+            }
+            return rolledUp;
+        }
+        
+        /**
+         * Page of all categories, sortable by id, name, slug or displayOrder
+         */
+        public Page<CategoryResponse> findAll(Pageable pageable) {
+            List<CategoryResponse> all = new ArrayList<>(Arrays.asList(nodes));
+            if (pageable.getSort().isSorted()) {
+                all.sort(comparator(pageable.getSort()));
+            }
+            if (pageable.isUnpaged()) {
+                return new PageImpl<>(all, pageable, all.size());
+            }
+            int from = (int) Math.min(pageable.getOffset(), all.size());
+            int to = Math.min(from + pageable.getPageSize(), all.size());
+            return new PageImpl<>(all.subList(from, to), pageable, all.size());
+        }
+        
+        /**
+         * Active categories in display order
+         */
+        public List<CategoryResponse> active() {
+            List<CategoryResponse> active = new ArrayList<>();
+            for (CategoryResponse node : nodes) {
+                if (Boolean.TRUE.equals(node.getIsActive())) {
+                    active.add(node);
+                }
+            }
+            return active;
+        }
+        
+        /**
+         * Active root categories in display order
+         */
+        public List<CategoryResponse> activeRoots() {
+            return activeNodes(roots, 0, roots.length);
+        }
+        
+        /**
+         * Active direct children of a category in display order, or empty if the category does not exist
+         */
+        public List<CategoryResponse> activeChildren(Long id) {
+            Integer node = byId.get(id);
+            if (node == null) {
+                return List.of();
+            }
+            return activeNodes(childList, childStart[node], childStart[node + 1]);
+        }
+        
+        private List<CategoryResponse> activeNodes(int[] list, int from, int to) {
+            List<CategoryResponse> active = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                if (Boolean.TRUE.equals(nodes[list[i]].getIsActive())) {
+                    active.add(nodes[list[i]]);
+                }
+            }
+            return active;
+        }
+        
+        private static Comparator<CategoryResponse> comparator(Sort sort) {
+            Comparator<CategoryResponse> comparator = null;
+            for (Sort.Order order : sort) {
+                Comparator<CategoryResponse> next = switch (order.getProperty()) {
+                    case "id" -> Comparator.comparing(CategoryResponse::getId);
+                    case "name" -> Comparator.comparing(CategoryResponse::getName, String.CASE_INSENSITIVE_ORDER);
+                    case "slug" -> Comparator.comparing(CategoryResponse::getSlug);
+                    case "displayOrder" -> DISPLAY_ORDER;
+                    default -> throw new InvalidOperationException(
+                            "Categories can only be sorted by id, name, slug or displayOrder");
+                };
+                if (order.isDescending()) {
+                    next = next.reversed();
+                }
+                comparator = comparator == null ? next : comparator.thenComparing(next);
+            }
+            return comparator.thenComparing(CategoryResponse::getId);
+        }
+        
+        /**
+         * Distance to the root; a parent cycle (possible through updates) stops after visiting every node once
+         */
+        private static int depth(int[] parents, int node) {
+            int depth = 0;
+            for (int current = parents[node]; current >= 0 && depth < parents.length; current = parents[current]) {
+                depth++;
+            }
+            return depth;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.dto.request.FlashSaleFilter;
+import com.flashfood.flash_food.dto.response.FoodItemResponse;
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.StockMode;
+import com.flashfood.flash_food.exception.InvalidOperationException;
+import com.flashfood.flash_food.repository.FoodItemRepository;
+import com.flashfood.flash_food.util.AppConstants;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Node-local, read-only snapshot of the live flash-sale catalog
+ *
+ * Holds every item that is on sale or goes live within the lookahead window (FoodItemRepository.findLiveResponses).
+ * Filter and sort fields are copied into primitive columns, and row positions are pre-sorted by sale end, discount
+ * and flash price, so a listing is one pass over an index with no database round trip. Every change builds a new
+ * immutable Snapshot and swaps it in through a volatile field: readers never lock and always see one version.
+ * A single-item change copies the columns and patches its row and its place in each index; only the periodic
+ * rebuild sorts, and it does so before taking the update lock.
+ *
+ * Changes made on this node are applied after commit and broadcast on "catalog:changed" (see NodeBroadcast); other
+ * nodes reload the item from Postgres. The whole snapshot is also rebuilt every few seconds, which refreshes stock
+ * counts and picks up items entering the lookahead window. Sold-out and closed items are hidden at once through
+ * SoldOutFilter.
+ *
+ * Metrics: flashfood.catalog.live.items is the number of items in the current snapshot.
+ */
+@Slf4j
+@Service
+public class FlashSaleCatalog {
+    
+    public static final String SORT_SALE_END = "saleEndTime";
+    public static final String SORT_DISCOUNT = "discountPercentage";
+    public static final String SORT_PRICE = "flashPrice";
+    
+    private final FoodItemRepository foodItemRepository;
+    private final SoldOutFilter soldOutFilter;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final NodeBroadcast broadcast;
+    private final RebuildReplay rebuildReplay = new RebuildReplay();
+    private final Duration lookahead;
+    
+    // Replaced only under rebuildReplay
+    private volatile Snapshot snapshot = Snapshot.of(List.of());
+    
+    public FlashSaleCatalog(FoodItemRepository foodItemRepository,
+                            SoldOutFilter soldOutFilter,
+                            StringRedisTemplate stringRedisTemplate,
+                            RedisMessageListenerContainer listenerContainer,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.catalog.snapshot.lookahead-minutes:10}") long lookaheadMinutes) {
+        this.foodItemRepository = foodItemRepository;
+        this.soldOutFilter = soldOutFilter;
+        this.listenerContainer = listenerContainer;
+        this.broadcast = new NodeBroadcast("flash-sale catalog", AppConstants.REDIS_CATALOG_CHANNEL,
+                stringRedisTemplate, foodItemId -> refresh(Long.valueOf(foodItemId)));
+        this.lookahead = Duration.ofMinutes(lookaheadMinutes);
+        meterRegistry.gauge("flashfood.catalog.live.items", this, catalog -> catalog.snapshot.rows.length);
+    }
+    
+    @PostConstruct
+    public void subscribe() {
+        broadcast.subscribe(listenerContainer);
+    }
+    
+    /**
+     * Items strictly inside their sale window
+     */
+    public Page<FoodItemResponse> findAvailable(FlashSaleFilter filter, Pageable pageable) {
+        return find(filter, pageable, false);
+    }
+    
+    /**
+     * Items inside their sale window, bounds inclusive
+     */
+    public Page<FoodItemResponse> findFlashSale(FlashSaleFilter filter, Pageable pageable) {
+        return find(filter, pageable, true);
+    }
+    
+    /**
+     * Reload every live item from Postgres and swap in a fresh snapshot
+     * Items refreshed while it loads are reloaded again on the new snapshot
+     */
+    public void rebuild() {
+        Set<Long> replay = rebuildReplay.rebuild(() -> {
+            LocalDateTime now = LocalDateTime.now();
+            return Snapshot.of(foodItemRepository.findLiveResponses(FoodItemStatus.AVAILABLE, StockMode.LEASED, now,
+                    now.plus(lookahead)));
+        }, fresh -> snapshot = fresh);
+        log.debug("Rebuilt flash-sale catalog with {} live items", snapshot.rows.length);
+        replay.forEach(this::refresh);
+    }
+    
+    /**
+     * Reload one item from Postgres: add or replace it if it is live, drop it otherwise
+     */
+    public void refresh(Long foodItemId) {
+        LocalDateTime now = LocalDateTime.now();
+        Optional<FoodItemResponse> row = foodItemRepository.findLiveResponseById(
+                foodItemId, FoodItemStatus.AVAILABLE, StockMode.LEASED, now, now.plus(lookahead));
+        
+        rebuildReplay.update(List.of(foodItemId), () -> snapshot = row.isPresent()
+                ? snapshot.with(row.get())
+                : snapshot.without(foodItemId));
+    }
+    
+    /**
+     * Refresh an item on this node once the surrounding transaction commits, then tell the other nodes
+     */
+    public void refreshAfterCommit(Long foodItemId) {
+        broadcast.applyAfterCommit(foodItemId.toString());
+    }
+    
+    private Page<FoodItemResponse> find(FlashSaleFilter filter, Pageable pageable, boolean inclusive) {
+        Snapshot current = snapshot;
+        Sort.Order order = sortOrder(pageable.getSort());
+        int[] index = current.index(order.getProperty());
+        boolean descending = order.isDescending();
+        
+        long storeId = filter != null && filter.getStoreId() != null ? filter.getStoreId() : 0;
+        long categoryId = filter != null && filter.getCategoryId() != null ? filter.getCategoryId() : 0;
+        long minPrice = filter != null && filter.getMinPrice() != null ? toCents(filter.getMinPrice()) : Long.MIN_VALUE;
+        long maxPrice = filter != null && filter.getMaxPrice() != null ? toCents(filter.getMaxPrice()) : Long.MAX_VALUE;
+        int minDiscount = filter != null && filter.getMinDiscount() != null ? filter.getMinDiscount() : Integer.MIN_VALUE;
+        long now = System.currentTimeMillis();
+        
+        long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+        int pageSize = pageable.isPaged() ? pageable.getPageSize() : Integer.MAX_VALUE;
+        List<FoodItemResponse> content = new ArrayList<>(Math.min(pageSize, index.length));
+        long total = 0;
+        
+        for (int i = 0; i < index.length; i++) {
+            int row = index[descending ? index.length - 1 - i : i];
+            
+            boolean open = inclusive
+                    ? current.saleStarts[row] <= now && now <= current.saleEnds[row]
+                    : current.saleStarts[row] < now && now < current.saleEnds[row];
+            if (!open
+                    || (storeId != 0 && current.storeIds[row] != storeId)
+                    || (categoryId != 0 && current.categoryIds[row] != categoryId)
+                    || current.flashPrices[row] < minPrice
+                    || current.flashPrices[row] > maxPrice
+                    || current.discounts[row] < minDiscount
+                    || soldOutFilter.isUnavailable(current.rows[row].getId())) {
+                continue;
+            }
+            
+            if (total >= offset && content.size() < pageSize) {
+                content.add(current.rows[row]);
+            }
+            total++;
+        }
+        
+        return new PageImpl<>(content, pageable, total);
+    }
+    
+    private static Sort.Order sortOrder(Sort sort) {
+        Sort.Order order = sort.stream().findFirst().orElse(Sort.Order.asc(SORT_SALE_END));
+        String property = order.getProperty();
+        if (!property.equals(SORT_SALE_END) && !property.equals(SORT_DISCOUNT) && !property.equals(SORT_PRICE)) {
+            throw new InvalidOperationException("Live listings can only be sorted by "
+                    + SORT_SALE_END + ", " + SORT_DISCOUNT + " or " + SORT_PRICE);
+        }
+        return order;
+    }
+    
+    private static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+    
+    private static long toEpochMillis(LocalDateTime time, long fallback) {
+        return time != null ? time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : fallback;
+    }
+    
+    /**
+     * Orders two row positions of one snapshot without boxing them
+     */
+    @FunctionalInterface
+    private interface RowOrder {
+        int compare(int left, int right);
+    }
+    
+    /**
+     * One immutable version of the catalog: a column per filter or sort field, all indexed by row position
+     * Rows are shared by every request that reads this version and must not be modified
+     */
+    private static final class Snapshot {
+        
+        private final FoodItemResponse[] rows;
+        private final long[] ids;
+        private final long[] storeIds;
+        private final long[] categoryIds;
+        private final long[] saleStarts;
+        private final long[] saleEnds;
+        private final long[] flashPrices; // cents
+        private final int[] discounts;
+        
+        // Row positions in ascending order of each sort key, ties broken by id; set before the version is published
+        private int[] bySaleEnd;
+        private int[] byDiscount;
+        private int[] byPrice;
+        
+        private Snapshot(int size) {
+            this.rows = new FoodItemResponse[size];
+            this.ids = new long[size];
+            this.storeIds = new long[size];
+            this.categoryIds = new long[size];
+            this.saleStarts = new long[size];
+            this.saleEnds = new long[size];
+            this.flashPrices = new long[size];
+            this.discounts = new int[size];
+        }
+        
+        /**
+         * Columns of another version, cut or extended to size
+         */
+        private Snapshot(Snapshot source, int size) {
+            this.rows = Arrays.copyOf(source.rows, size);
+            this.ids = Arrays.copyOf(source.ids, size);
+            this.storeIds = Arrays.copyOf(source.storeIds, size);
+            this.categoryIds = Arrays.copyOf(source.categoryIds, size);
+            this.saleStarts = Arrays.copyOf(source.saleStarts, size);
+            this.saleEnds = Arrays.copyOf(source.saleEnds, size);
+            this.flashPrices = Arrays.copyOf(source.flashPrices, size);
+            this.discounts = Arrays.copyOf(source.discounts, size);
+        }
+        
+        private static Snapshot of(Collection<FoodItemResponse> live) {
+            Snapshot snapshot = new Snapshot(live.size());
+            int row = 0;
+            for (FoodItemResponse item : live) {
+                snapshot.set(row++, item);
+            }
+            snapshot.bySaleEnd = sorted(row, snapshot::compareSaleEnd);
+            snapshot.byDiscount = sorted(row, snapshot::compareDiscount);
+            snapshot.byPrice = sorted(row, snapshot::comparePrice);
+            return snapshot;
+        }
+        
+        /**
+         * New version with the item added or replaced
+         */
+        private Snapshot with(FoodItemResponse item) {
+            int row = positionOf(item.getId());
+            boolean added = row < 0;
+            if (added) {
+                row = rows.length;
+            }
+            
+            Snapshot next = new Snapshot(this, added ? rows.length + 1 : rows.length);
+            next.set(row, item);
+            next.bySaleEnd = place(bySaleEnd, row, added, next::compareSaleEnd);
+            next.byDiscount = place(byDiscount, row, added, next::compareDiscount);
+            next.byPrice = place(byPrice, row, added, next::comparePrice);
+            return next;
+        }
+        
+        /**
+         * New version without the item (this one if it is absent); the last row moves into its position
+         */
+        private Snapshot without(long id) {
+            int row = positionOf(id);
+            if (row < 0) {
+                return this;
+            }
+            
+            int last = rows.length - 1;
+            Snapshot next = new Snapshot(this, last);
+            if (row != last) {
+                next.set(row, rows[last]);
+            }
+            next.bySaleEnd = remove(bySaleEnd, row, last);
+            next.byDiscount = remove(byDiscount, row, last);
+            next.byPrice = remove(byPrice, row, last);
+            return next;
+        }
+        
+        private int[] index(String property) {
+            return switch (property) {
+                case SORT_DISCOUNT -> byDiscount;
+                case SORT_PRICE -> byPrice;
+                default -> bySaleEnd;
+            };
+        }
+        
+        private void set(int row, FoodItemResponse item) {
+            rows[row] = item;
+            ids[row] = item.getId();
+            storeIds[row] = item.getStoreId() != null ? item.getStoreId() : 0;
+            categoryIds[row] = item.getCategoryId() != null ? item.getCategoryId() : 0;
+            saleStarts[row] = toEpochMillis(item.getSaleStartTime(), Long.MIN_VALUE);
+            saleEnds[row] = toEpochMillis(item.getSaleEndTime(), Long.MAX_VALUE);
+            flashPrices[row] = item.getFlashPrice() != null ? toCents(item.getFlashPrice()) : 0;
+            discounts[row] = item.getDiscountPercentage() != null ? item.getDiscountPercentage() : 0;
+        }
+        
+        private int positionOf(long id) {
+            for (int row = 0; row < ids.length; row++) {
+                if (ids[row] == id) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+        
+        private int compareSaleEnd(int left, int right) {
+            int order = Long.compare(saleEnds[left], saleEnds[right]);
+            return order != 0 ? order : Long.compare(ids[left], ids[right]);
+        }
+        
+        private int compareDiscount(int left, int right) {
+            int order = Integer.compare(discounts[left], discounts[right]);
+            return order != 0 ? order : Long.compare(ids[left], ids[right]);
+        }
+        
+        private int comparePrice(int left, int right) {
+            int order = Long.compare(flashPrices[left], flashPrices[right]);
+            return order != 0 ? order : Long.compare(ids[left], ids[right]);
+        }
+        
+        /**
+         * Row positions 0..size-1 in order (merge sort on int[], no boxing)
+         */
+        private static int[] sorted(int size, RowOrder order) {
+            int[] index = new int[size];
+            for (int row = 0; row < size; row++) {
+                index[row] = row;
+            }
+            mergeSort(index, new int[size], 0, size, order);
+            return index;
+        }
+        
+        private static void mergeSort(int[] index, int[] buffer, int from, int to, RowOrder order) {
+            if (to - from < 2) {
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            mergeSort(index, buffer, from, middle, order);
+            mergeSort(index, buffer, middle, to, order);
+            if (order.compare(index[middle - 1], index[middle]) <= 0) {
+                return;
+            }
+            
+            System.arraycopy(index, from, buffer, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                boolean takeLeft = right >= to || (left < middle && order.compare(buffer[left], buffer[right]) <= 0);
+                index[i] = takeLeft ? buffer[left++] : buffer[right++];
+            }
+        }
+        
+        /**
+         * Copy of an index with the row taken out and binary-inserted at its place under the new column values
+         * @param added Whether the row is new (not in the index yet)
+         */
+        private static int[] place(int[] index, int row, boolean added, RowOrder order) {
+            int[] result = new int[added ? index.length + 1 : index.length];
+            int size = 0;
+            for (int position : index) {
+                if (position != row) {
+                    result[size++] = position;
+                }
+            }
+            
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (order.compare(result[middle], row) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            System.arraycopy(result, low, result, low + 1, size - low);
+            result[low] = row;
+            return result;
+        }
+        
+        /**
+         * Copy of an index without the row, with the last row renamed to the position it moved into
+         */
+        private static int[] remove(int[] index, int row, int last) {
+            int[] result = new int[index.length - 1];
+            int size = 0;
+            for (int position : index) {
+                if (position != row) {
+                    result[size++] = position == last ? row : position;
+                }
+            }
+            return result;
+        }
+    }
+}
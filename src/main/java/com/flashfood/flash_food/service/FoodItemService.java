@@ -1,6 +1,8 @@
 package com.flashfood.flash_food.service;
 
+import com.flashfood.flash_food.dto.request.FlashSaleFilter;
 import com.flashfood.flash_food.dto.request.FoodItemRequest;
+import com.flashfood.flash_food.dto.response.CursorPageResponse;
 import com.flashfood.flash_food.dto.response.FoodItemResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -48,6 +50,14 @@ public interface FoodItemService {
      */
     Page<FoodItemResponse> findAll(Pageable pageable);
     
+    /**
+     * Find all food items with keyset pagination, newest first
+     * @param cursor Token from the previous slice, or null for the first one
+     * @param size Slice size
+     * @return Slice of food items and the cursor of the next one
+     */
+    CursorPageResponse<FoodItemResponse> scrollAll(String cursor, int size);
+    
     /**
      * Find food items by store
      * @param storeId Store ID
@@ -73,21 +83,24 @@ public interface FoodItemService {
     Page<FoodItemResponse> findByStatus(String status, Pageable pageable);
     
     /**
-     * Find available food items (status = AVAILABLE, not expired)
-     * @param pageable Pagination parameters
+     * Find available food items (status = AVAILABLE, not expired), served from the in-memory catalog
+     * @param filter Optional store, category, price and discount filters
+     * @param pageable Pagination parameters; sortable by saleEndTime, discountPercentage or flashPrice
      * @return Page of available food items
      */
-    Page<FoodItemResponse> findAvailableFoodItems(Pageable pageable);
+    Page<FoodItemResponse> findAvailableFoodItems(FlashSaleFilter filter, Pageable pageable);
     
     /**
-     * Find food items on flash sale now (within sale period)
-     * @param pageable Pagination parameters
+     * Find food items on flash sale now (within sale period), served from the in-memory catalog
+     * @param filter Optional store, category, price and discount filters
+     * @param pageable Pagination parameters; sortable by saleEndTime, discountPercentage or flashPrice
      * @return Page of flash sale food items
      */
-    Page<FoodItemResponse> findFlashSaleFoodItems(Pageable pageable);
+    Page<FoodItemResponse> findFlashSaleFoodItems(FlashSaleFilter filter, Pageable pageable);
     
     /**
-     * Search food items by name or description
+     * Search food items by name, category, store or description, best match first
+     * Diacritics and case are ignored; partial and slightly misspelled words still match
      * @param keyword Search keyword
      * @param pageable Pagination parameters
      * @return Page of matching food items
@@ -101,4 +114,12 @@ public interface FoodItemService {
      * @return Updated food item
      */
     FoodItemResponse updateStatus(Long id, String status);
+    
+    /**
+     * Switch where the item's stock is claimed (database row lock or Redis ledger)
+     * @param id Food item ID
+     * @param stockMode New stock mode as string
+     * @return Updated food item
+     */
+    FoodItemResponse updateStockMode(Long id, String stockMode);
 }
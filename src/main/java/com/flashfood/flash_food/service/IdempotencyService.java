@@ -0,0 +1,229 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.exception.InvalidOperationException;
+import com.flashfood.flash_food.util.AppConstants;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency keys for retried client requests (order submission)
+ *
+ * The first request with a key stores an in-flight marker in "idempotency:{user}:{key}" with SET NX and runs
+ * the action; its result replaces the marker for a short TTL. A retry with the same key gets the stored result
+ * back without touching the database, and a duplicate arriving while the first attempt runs waits for it.
+ * If the first attempt fails the marker is removed so the next retry runs the action again.
+ *
+ * The marker TTL only covers a node that dies mid-action: while the action runs, its TTL is renewed every third of
+ * it, so a slow action never loses the key to a duplicate. A SHA-256 fingerprint of the request is kept next to the
+ * key ("{key}:request"), and reusing a key for a different request is rejected instead of replaying another result.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IdempotencyService {
+    
+    private final RedisTemplate<String, Object> redisTemplate;
+    
+    @Value("${app.idempotency.in-flight-ttl-seconds:30}")
+    private long inFlightTtlSeconds;
+    
+    @Value("${app.idempotency.result-ttl-minutes:10}")
+    private long resultTtlMinutes;
+    
+    @Value("${app.idempotency.wait-timeout-ms:10000}")
+    private long waitTimeoutMs;
+    
+    private static final String IN_FLIGHT_PREFIX = "in-flight:";
+    private static final String FINGERPRINT_SUFFIX = ":request";
+    private static final int MAX_KEY_LENGTH = 100;
+    private static final long MIN_POLL_MS = 20;
+    private static final long MAX_POLL_MS = 200;
+    
+    private final ScheduledExecutorService renewalScheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("idempotency-renewal").daemon().factory());
+    
+    /**
+     * Run an action at most once per idempotency key of the current user
+     * @param key Client supplied idempotency key, or null to run the action without deduplication
+     * @param request Request the key was sent with; its toString() is fingerprinted, so it must list every field
+     *                in a stable order (Lombok @Data request DTOs do)
+     * @param type Result type stored for replays
+     * @param action Action to run (must not run inside the caller's transaction)
+     * @return Result of the action, or the stored result of an earlier request with the same key
+     */
+    public <T> T execute(String key, Object request, Class<T> type, Supplier<T> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidOperationException("Idempotency key must not exceed " + MAX_KEY_LENGTH + " characters");
+        }
+        
+        String redisKey = AppConstants.REDIS_IDEMPOTENCY_PREFIX + currentPrincipal() + ":" + key;
+        String fingerprintKey = redisKey + FINGERPRINT_SUFFIX;
+        String fingerprint = fingerprint(request);
+        String marker = IN_FLIGHT_PREFIX + UUID.randomUUID();
+        long deadline = System.currentTimeMillis() + waitTimeoutMs;
+        long pollMs = MIN_POLL_MS;
+        
+        while (true) {
+            List<Object> stored;
+            try {
+                if (Boolean.TRUE.equals(redisTemplate.opsForValue()
+                        .setIfAbsent(redisKey, marker, Duration.ofSeconds(inFlightTtlSeconds)))) {
+                    redisTemplate.opsForValue().set(fingerprintKey, fingerprint, Duration.ofMinutes(resultTtlMinutes));
+                    return runOnce(redisKey, fingerprintKey, marker, action);
+                }
+                stored = redisTemplate.opsForValue().multiGet(List.of(redisKey, fingerprintKey));
+            } catch (Exception e) {
+                // Redis being down must not block orders; the request just loses deduplication
+                log.warn("Idempotency store unavailable, running request {} without it", key, e);
+                return action.get();
+            }
+            
+            // The fingerprint can lag the marker by one write; a missing one is checked again on the next pass
+            Object storedFingerprint = stored != null ? stored.get(1) : null;
+            if (storedFingerprint != null && !fingerprint.equals(storedFingerprint)) {
+                throw new InvalidOperationException("This idempotency key was already used for a different request");
+            }
+            
+            Object result = stored != null ? stored.get(0) : null;
+            if (type.isInstance(result)) {
+                log.debug("Replaying stored result for idempotency key {}", key);
+                return type.cast(result);
+            }
+            
+            // result == null means the first attempt failed and released the key: claim it on the next pass
+            if (result != null) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new InvalidOperationException("A request with this idempotency key is still being processed, please retry");
+                }
+                sleep(pollMs);
+                pollMs = Math.min(pollMs * 2, MAX_POLL_MS);
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        renewalScheduler.shutdownNow();
+    }
+    
+    private <T> T runOnce(String redisKey, String fingerprintKey, String marker, Supplier<T> action) {
+        MarkerRenewal renewal = new MarkerRenewal(redisKey, marker);
+        T result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            renewal.stop();
+            release(redisKey, fingerprintKey, marker);
+            throw e;
+        }
+        renewal.stop();
+        
+        try {
+            redisTemplate.opsForValue().set(redisKey, result, Duration.ofMinutes(resultTtlMinutes));
+            redisTemplate.expire(fingerprintKey, Duration.ofMinutes(resultTtlMinutes));
+        } catch (Exception e) {
+            // The action already succeeded; a retry after this point runs it again
+            log.error("Error storing result for idempotency key {}", redisKey, e);
+        }
+        return result;
+    }
+    
+    private void release(String redisKey, String fingerprintKey, String marker) {
+        try {
+            // Only remove our own marker, never a result or another attempt's marker
+            if (marker.equals(redisTemplate.opsForValue().get(redisKey))) {
+                redisTemplate.delete(List.of(redisKey, fingerprintKey));
+            }
+        } catch (Exception e) {
+            log.error("Error releasing idempotency key {}", redisKey, e);
+        }
+    }
+    
+    private static String fingerprint(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(String.valueOf(request).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private String currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication.getName() == null) {
+            throw new InvalidOperationException("Idempotency keys require an authenticated user");
+        }
+        return authentication.getName();
+    }
+    
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvalidOperationException("Interrupted while waiting for a duplicate request");
+        }
+    }
+    
+    /**
+     * Keeps an in-flight marker alive while its action runs; stopping it waits out a renewal in progress, so the
+     * result written afterwards never gets the marker's TTL
+     */
+    private final class MarkerRenewal implements Runnable {
+        
+        private final String redisKey;
+        private final String marker;
+        private final ScheduledFuture<?> task;
+        private boolean stopped;
+        
+        private MarkerRenewal(String redisKey, String marker) {
+            this.redisKey = redisKey;
+            this.marker = marker;
+            long periodMs = Math.max(1, TimeUnit.SECONDS.toMillis(inFlightTtlSeconds) / 3);
+            this.task = renewalScheduler.scheduleAtFixedRate(this, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        }
+        
+        @Override
+        public synchronized void run() {
+            if (stopped) {
+                return;
+            }
+            try {
+                if (marker.equals(redisTemplate.opsForValue().get(redisKey))) {
+                    redisTemplate.expire(redisKey, Duration.ofSeconds(inFlightTtlSeconds));
+                }
+            } catch (Exception e) {
+                // Retried on the next period; the marker lasts a full TTL since the last renewal
+                log.warn("Error renewing idempotency key {}", redisKey, e);
+            }
+        }
+        
+        private synchronized void stop() {
+            stopped = true;
+            task.cancel(false);
+        }
+    }
+}
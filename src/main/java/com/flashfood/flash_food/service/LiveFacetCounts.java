@@ -0,0 +1,322 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.entity.FoodItem;
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.StockMode;
+import com.flashfood.flash_food.repository.FoodItemRepository;
+import com.flashfood.flash_food.repository.FoodItemRepository.LiveFacetView;
+import com.flashfood.flash_food.util.AppConstants;
+import com.flashfood.flash_food.util.TransactionCallbacks;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Counts of live flash-sale items per category, store and geo cell, shared by all nodes in Redis
+ *
+ * "facet:live" maps every live item (available, units left, sale started and not ended) to the facets it is counted
+ * under, "category|store|cell". "facet:category", "facet:store" and "facet:cell" hold the counts. One Lua script moves
+ * an item in or out and adjusts the counts; it compares against what the item was last counted under, so applying the
+ * same state twice or in any order is harmless. Counts are per direct category; CategoryTree rolls them up.
+ *
+ * Items enter on creation and on any status change, restock or category change (via SoldOutFilter.markAvailable,
+ * which re-reads them from Postgres), and leave when SoldOutFilter marks them sold out or closed. Items created ahead
+ * of their sale are admitted by admitStartedSales once it starts. Sell-outs noticed only by the next buyer, or by the
+ * Redis ledger reconciliation, are picked up by the periodic drift check.
+ *
+ * Metrics: flashfood.facets.drift (level = items | counts) counts corrections made by the drift check.
+ */
+@Slf4j
+@Service
+public class LiveFacetCounts {
+    
+    private static final List<String> KEYS = List.of(AppConstants.REDIS_FACET_LIVE_KEY,
+            AppConstants.REDIS_FACET_CATEGORY_KEY, AppConstants.REDIS_FACET_STORE_KEY, AppConstants.REDIS_FACET_CELL_KEY);
+    private static final String NOT_LIVE = "";
+    
+    /**
+     * KEYS = live hash, category, store and cell counts. ARGV = (item id, facets) pairs, facets "" when not live
+     * Returns the number of items whose facets changed
+     */
+    private static final RedisScript<Long> UPDATE_SCRIPT = new DefaultRedisScript<>("""
+            local function shift(facets, delta)
+                local i = 2
+                for value in string.gmatch(facets .. '|', '([^|]*)|') do
+                    if value ~= '' and redis.call('HINCRBY', KEYS[i], value, delta) <= 0 then
+                        redis.call('HDEL', KEYS[i], value)
+                    end
+                    i = i + 1
+                end
+            end
+            local changed = 0
+            for j = 1, #ARGV, 2 do
+                local old = redis.call('HGET', KEYS[1], ARGV[j])
+                local new = ARGV[j + 1]
+                if not (old == new or (not old and new == '')) then
+                    if old then
+                        shift(old, -1)
+                    end
+                    if new == '' then
+                        redis.call('HDEL', KEYS[1], ARGV[j])
+                    else
+                        redis.call('HSET', KEYS[1], ARGV[j], new)
+                        shift(new, 1)
+                    end
+                    changed = changed + 1
+                end
+            end
+            return changed
+            """, Long.class);
+    
+    /**
+     * Same keys as UPDATE_SCRIPT. Rebuilds the three count hashes from the live hash
+     */
+    private static final RedisScript<Long> RECOUNT_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('DEL', KEYS[2], KEYS[3], KEYS[4])
+            local live = redis.call('HVALS', KEYS[1])
+            for _, facets in ipairs(live) do
+                local i = 2
+                for value in string.gmatch(facets .. '|', '([^|]*)|') do
+                    if value ~= '' then
+                        redis.call('HINCRBY', KEYS[i], value, 1)
+                    end
+                    i = i + 1
+                end
+            end
+            return #live
+            """, Long.class);
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final FoodItemRepository foodItemRepository;
+    private final double cellSizeDegrees;
+    private final Counter itemDriftCounter;
+    private final Counter countDriftCounter;
+    
+    // Sale starts up to this time have been admitted (the drift check covers any missed before startup)
+    private volatile LocalDateTime startsAdmittedUntil = LocalDateTime.now();
+    
+    public LiveFacetCounts(StringRedisTemplate stringRedisTemplate,
+                           FoodItemRepository foodItemRepository,
+                           @Value("${app.facets.cell-size-degrees:0.01}") double cellSizeDegrees,
+                           MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.foodItemRepository = foodItemRepository;
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.itemDriftCounter = Counter.builder("flashfood.facets.drift")
+                .description("Live items the facet drift check had to add, move or remove")
+                .tag("level", "items")
+                .register(meterRegistry);
+        this.countDriftCounter = Counter.builder("flashfood.facets.drift")
+                .description("Facet counts the drift check found out of line with the live items")
+                .tag("level", "counts")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Count a newly created item once the surrounding transaction commits (store and category must be loaded)
+     */
+    public void addAfterCommit(FoodItem foodItem) {
+        if (!isLive(foodItem)) {
+            return;
+        }
+        String id = foodItem.getId().toString();
+        String facets = facetsOf(foodItem.getCategory() != null ? foodItem.getCategory().getId() : null,
+                foodItem.getStore().getId(), foodItem.getStore().getLatitude(), foodItem.getStore().getLongitude());
+        TransactionCallbacks.runAfterCommit(() -> apply(List.of(id, facets)));
+    }
+    
+    /**
+     * Stop counting an item (sold out, expired, deleted or past its sale end)
+     */
+    public void remove(Long foodItemId) {
+        apply(List.of(foodItemId.toString(), NOT_LIVE));
+    }
+    
+    /**
+     * Re-read items from Postgres and count each under its current facets, or not at all
+     */
+    public void refresh(Collection<Long> foodItemIds) {
+        if (foodItemIds.isEmpty()) {
+            return;
+        }
+        try {
+            Map<Long, String> live = new HashMap<>();
+            for (LiveFacetView row : foodItemRepository.findLiveFacetsByIds(foodItemIds, FoodItemStatus.AVAILABLE,
+                    StockMode.LEASED, LocalDateTime.now())) {
+                live.put(row.getId(), facetsOf(row));
+            }
+            List<String> args = new ArrayList<>(foodItemIds.size() * 2);
+            for (Long foodItemId : foodItemIds) {
+                args.add(foodItemId.toString());
+                args.add(live.getOrDefault(foodItemId, NOT_LIVE));
+            }
+            apply(args);
+        } catch (Exception e) {
+            // The drift check corrects the counts
+            log.error("Error refreshing facet counts for food items {}", foodItemIds, e);
+        }
+    }
+    
+    /**
+     * Count available items whose sale started since the last call
+     * @return Number of items whose sale started
+     */
+    public int admitStartedSales() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> started = foodItemRepository.findIdsBySaleStartedBetween(FoodItemStatus.AVAILABLE,
+                startsAdmittedUntil, now);
+        refresh(started);
+        startsAdmittedUntil = now;
+        return started.size();
+    }
+    
+    /**
+     * Live items per direct category, or empty when Redis is unavailable
+     */
+    public Optional<Map<Long, Long>> countsByCategory() {
+        return read(AppConstants.REDIS_FACET_CATEGORY_KEY, Long::valueOf);
+    }
+    
+    /**
+     * Live items per store, or empty when Redis is unavailable
+     */
+    public Optional<Map<Long, Long>> countsByStore() {
+        return read(AppConstants.REDIS_FACET_STORE_KEY, Long::valueOf);
+    }
+    
+    /**
+     * Live items per geo cell ("latIndex_lonIndex", see cellOf), or empty when Redis is unavailable
+     */
+    public Optional<Map<String, Long>> countsByCell() {
+        return read(AppConstants.REDIS_FACET_CELL_KEY, Function.identity());
+    }
+    
+    /**
+     * Compare the live items and counts in Redis with Postgres and correct both
+     * An item that changes while the check runs may be reverted to the state read here; its next change, or the next
+     * check, puts it right.
+     * @return Number of items that had to be corrected
+     */
+    public int reconcile() {
+        Map<String, String> expected = new HashMap<>();
+        for (LiveFacetView row : foodItemRepository.findLiveFacets(FoodItemStatus.AVAILABLE, StockMode.LEASED,
+                LocalDateTime.now())) {
+            expected.put(row.getId().toString(), facetsOf(row));
+        }
+        
+        Map<Object, Object> actual = stringRedisTemplate.opsForHash().entries(AppConstants.REDIS_FACET_LIVE_KEY);
+        List<String> fixes = new ArrayList<>();
+        expected.forEach((id, facets) -> {
+            if (!facets.equals(actual.get(id))) {
+                fixes.add(id);
+                fixes.add(facets);
+            }
+        });
+        for (Object id : actual.keySet()) {
+            if (!expected.containsKey(id)) {
+                fixes.add((String) id);
+                fixes.add(NOT_LIVE);
+            }
+        }
+        
+        int drifted = fixes.size() / 2;
+        if (drifted > 0) {
+            apply(fixes);
+            itemDriftCounter.increment(drifted);
+            log.warn("Corrected facet counts for {} drifted food items", drifted);
+        }
+        
+        // Counts only change together with the live hash, so this is a safety net for partial writes
+        if (!countsMatch(expected.values())) {
+            Long live = stringRedisTemplate.execute(RECOUNT_SCRIPT, KEYS);
+            countDriftCounter.increment();
+            log.warn("Rebuilt facet counts from {} live food items", live);
+        }
+        return drifted;
+    }
+    
+    /**
+     * Same conditions as FoodItemRepository.findLiveFacets
+     */
+    private static boolean isLive(FoodItem foodItem) {
+        LocalDateTime now = LocalDateTime.now();
+        return foodItem.getStatus() == FoodItemStatus.AVAILABLE
+                && (foodItem.getStockMode() == StockMode.LEASED
+                        || foodItem.getAvailableQuantity() != null && foodItem.getAvailableQuantity() > 0)
+                && !Boolean.TRUE.equals(foodItem.getIsExpired())
+                && !foodItem.getSaleStartTime().isAfter(now)
+                && foodItem.getSaleEndTime().isAfter(now);
+    }
+    
+    private String facetsOf(LiveFacetView row) {
+        return facetsOf(row.getCategoryId(), row.getStoreId(), row.getLatitude(), row.getLongitude());
+    }
+    
+    private String facetsOf(Long categoryId, Long storeId, Double latitude, Double longitude) {
+        return (categoryId != null ? categoryId.toString() : "") + "|" + storeId + "|" + cellOf(latitude, longitude);
+    }
+    
+    /**
+     * Grid cell of app.facets.cell-size-degrees on each side; stores without a location have none
+     */
+    private String cellOf(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null) {
+            return "";
+        }
+        return (long) Math.floor(latitude / cellSizeDegrees) + "_" + (long) Math.floor(longitude / cellSizeDegrees);
+    }
+    
+    private boolean countsMatch(Collection<String> expectedFacets) {
+        List<Map<String, Long>> expected = List.of(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        for (String facets : expectedFacets) {
+            String[] values = facets.split("\\|", -1);
+            for (int i = 0; i < expected.size(); i++) {
+                if (!values[i].isEmpty()) {
+                    expected.get(i).merge(values[i], 1L, Long::sum);
+                }
+            }
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            Optional<Map<String, Long>> actual = read(KEYS.get(i + 1), Function.identity());
+            if (actual.isEmpty() || !actual.get().equals(expected.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void apply(List<String> args) {
+        try {
+            stringRedisTemplate.execute(UPDATE_SCRIPT, KEYS, args.toArray());
+        } catch (Exception e) {
+            // The drift check corrects the counts
+            log.error("Error updating facet counts", e);
+        }
+    }
+    
+    private <K> Optional<Map<K, Long>> read(String key, Function<String, K> keyParser) {
+        try {
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+            Map<K, Long> counts = new HashMap<>(entries.size() * 2);
+            entries.forEach((facet, count) -> counts.put(keyParser.apply((String) facet), Long.valueOf((String) count)));
+            return Optional.of(counts);
+        } catch (Exception e) {
+            log.error("Error reading facet counts from {}", key, e);
+            return Optional.empty();
+        }
+    }
+}
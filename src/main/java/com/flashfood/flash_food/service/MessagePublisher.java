@@ -2,66 +2,81 @@ package com.flashfood.flash_food.service;
 
 import com.flashfood.flash_food.config.RabbitMQConfig;
 import com.flashfood.flash_food.dto.message.NotificationMessage;
+import com.flashfood.flash_food.dto.message.OrderExpiryMessage;
+import com.flashfood.flash_food.entity.OutboxEvent;
+import com.flashfood.flash_food.repository.OutboxEventRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+
 /**
- * Service for publishing messages to RabbitMQ
+ * Service for publishing messages to RabbitMQ through the transactional outbox
+ *
+ * Messages are written to outbox_events in the caller's transaction, so they are sent if and only if the
+ * surrounding change commits, and request threads never wait on the broker. OutboxRelay sends them in batches.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class MessagePublisher {
     
-    private final RabbitTemplate rabbitTemplate;
+    private static final String TYPE_ID_HEADER = "__TypeId__";
+    
+    private final OutboxEventRepository outboxEventRepository;
+    private final MessageConverter jsonMessageConverter;
     
     /**
      * Publish notification message to notification queue
      */
     public void publishNotification(NotificationMessage message) {
-        try {
-            rabbitTemplate.convertAndSend(
-                RabbitMQConfig.NOTIFICATION_EXCHANGE,
-                "notification.send",
-                message
-            );
-            log.info("Published notification message: {}", message);
-        } catch (Exception e) {
-            log.error("Error publishing notification message", e);
-        }
+        enqueue(RabbitMQConfig.NOTIFICATION_EXCHANGE, "notification.send", message, null);
+        log.info("Queued notification message: {}", message);
     }
     
     /**
      * Publish flash sale notification to multiple users
      */
     public void publishFlashSaleNotification(NotificationMessage message) {
-        try {
-            rabbitTemplate.convertAndSend(
-                RabbitMQConfig.FLASH_SALE_EXCHANGE,
-                "flash-sale.notify",
-                message
-            );
-            log.info("Published flash sale notification: {}", message);
-        } catch (Exception e) {
-            log.error("Error publishing flash sale notification", e);
-        }
+        enqueue(RabbitMQConfig.FLASH_SALE_EXCHANGE, "flash-sale.notify", message, null);
+        log.info("Queued flash sale notification: {}", message);
+    }
+    
+    /**
+     * Publish an order reservation to the delay queue
+     * The message expires ttlMillis after this call and is dead-lettered to the expired queue
+     */
+    public void publishOrderReservation(OrderExpiryMessage message, long ttlMillis) {
+        enqueue(RabbitMQConfig.ORDER_EXCHANGE, RabbitMQConfig.ORDER_RESERVATION_ROUTING_KEY, message, ttlMillis);
+        log.info("Queued reservation for order {} expiring at {}", message.getOrderNumber(), message.getExpiresAt());
     }
     
     /**
      * Publish order event
      */
     public void publishOrderEvent(String routingKey, Object message) {
-        try {
-            rabbitTemplate.convertAndSend(
-                RabbitMQConfig.ORDER_EXCHANGE,
-                routingKey,
-                message
-            );
-            log.info("Published order event with routing key: {}", routingKey);
-        } catch (Exception e) {
-            log.error("Error publishing order event", e);
-        }
+        enqueue(RabbitMQConfig.ORDER_EXCHANGE, routingKey, message, null);
+        log.info("Queued order event with routing key: {}", routingKey);
+    }
+    
+    /**
+     * Serialize with the same converter the consumers use and store the row in the current transaction
+     * (or in its own transaction when called outside one)
+     */
+    private void enqueue(String exchange, String routingKey, Object payload, Long ttlMillis) {
+        Message message = jsonMessageConverter.toMessage(payload, new MessageProperties());
+        Object typeId = message.getMessageProperties().getHeaders().get(TYPE_ID_HEADER);
+        
+        outboxEventRepository.save(OutboxEvent.builder()
+                .exchange(exchange)
+                .routingKey(routingKey)
+                .payload(new String(message.getBody(), StandardCharsets.UTF_8))
+                .payloadType(typeId != null ? typeId.toString() : null)
+                .ttlMillis(ttlMillis)
+                .build());
     }
 }
@@ -0,0 +1,89 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.util.TransactionCallbacks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a node-local index in step across nodes through a Redis channel
+ *
+ * A change (e.g. an ID to reload from Postgres) is applied on this node after commit and published as
+ * "nodeId:change"; every other node applies it when the message arrives, and the sender skips its own. Failures are
+ * logged and left to the owner's periodic rebuild, which also heals any message a node missed.
+ */
+@Slf4j
+public final class NodeBroadcast implements MessageListener {
+    
+    private final String name;
+    private final String channel;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Consumer<String> apply;
+    
+    // Prefix of this node's messages, so it can skip its own
+    private final String nodeId = UUID.randomUUID().toString();
+    
+    /**
+     * @param name What is kept in step, for log messages
+     * @param apply Applies one change on this node, typically by reloading it from Postgres
+     */
+    public NodeBroadcast(String name, String channel, StringRedisTemplate stringRedisTemplate, Consumer<String> apply) {
+        this.name = name;
+        this.channel = channel;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.apply = apply;
+    }
+    
+    public void subscribe(RedisMessageListenerContainer listenerContainer) {
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+    }
+    
+    /**
+     * Apply a change on this node once the surrounding transaction commits, then tell the other nodes
+     */
+    public void applyAfterCommit(String change) {
+        TransactionCallbacks.runAfterCommit(() -> {
+            applyQuietly(change);
+            publish(change);
+        });
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if (separator < 0) {
+            log.warn("Ignoring malformed {} message: {}", name, body);
+            return;
+        }
+        if (body.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        applyQuietly(body.substring(separator + 1));
+    }
+    
+    private void applyQuietly(String change) {
+        try {
+            apply.accept(change);
+        } catch (Exception e) {
+            // The next rebuild picks the change up
+            log.error("Error applying {} change {}", name, change, e);
+        }
+    }
+    
+    private void publish(String change) {
+        try {
+            stringRedisTemplate.convertAndSend(channel, nodeId + ":" + change);
+        } catch (Exception e) {
+            // Other nodes catch up on their next rebuild
+            log.error("Error broadcasting {} change {}", name, change, e);
+        }
+    }
+}
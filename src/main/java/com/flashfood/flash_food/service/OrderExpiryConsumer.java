@@ -0,0 +1,40 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.config.RabbitMQConfig;
+import com.flashfood.flash_food.dto.message.OrderExpiryMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Service for consuming expired order reservations from RabbitMQ
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OrderExpiryConsumer {
+    
+    private final OrderService orderService;
+    
+    /**
+     * Listen to the expired queue in batches and cancel unpaid orders, returning their stock
+     * Failures are rethrown so the batch is retried instead of stranding stock
+     */
+    @RabbitListener(queues = RabbitMQConfig.ORDER_EXPIRED_QUEUE, containerFactory = "orderExpiryListenerFactory")
+    public void handleExpiredReservations(List<OrderExpiryMessage> messages) {
+        List<Long> orderIds = messages.stream()
+                .map(OrderExpiryMessage::getOrderId)
+                .toList();
+        
+        try {
+            int expired = orderService.expireReservations(orderIds);
+            log.info("Processed {} expired reservations, cancelled {} unpaid orders", orderIds.size(), expired);
+        } catch (Exception e) {
+            log.error("Error expiring reservations for orders {}", orderIds, e);
+            throw e;
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.flashfood.flash_food.service;
 
+import com.flashfood.flash_food.dto.request.BulkOrderStatusRequest;
 import com.flashfood.flash_food.dto.request.CreateOrderRequest;
+import com.flashfood.flash_food.dto.response.BulkOrderStatusResponse;
+import com.flashfood.flash_food.dto.response.CursorPageResponse;
 import com.flashfood.flash_food.dto.response.OrderResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.Collection;
+
 /**
  * Service interface for Order operations
  * Handles order placement, payment, and order lifecycle management
@@ -25,6 +30,14 @@ public interface OrderService {
      */
     OrderResponse cancelOrder(Long orderId);
     
+    /**
+     * Cancel unpaid PENDING orders whose reservation window ran out and return their stock
+     * Orders that were paid or moved on in the meantime are skipped
+     * @param orderIds Order IDs from the reservation delay queue
+     * @return Number of orders cancelled
+     */
+    int expireReservations(Collection<Long> orderIds);
+    
     /**
      * Confirm order (store owner confirms received order)
      * @param orderId Order ID
@@ -53,6 +66,15 @@ public interface OrderService {
      */
     OrderResponse completeOrder(Long orderId);
     
+    /**
+     * Move many orders of a store to the same status in one call (store dashboard)
+     * Each order only moves if it is still in a status that leads to the target
+     * @param storeId Store ID
+     * @param request Order IDs and target status
+     * @return Moved order IDs and the current status of those that were skipped
+     */
+    BulkOrderStatusResponse updateStoreOrderStatuses(Long storeId, BulkOrderStatusRequest request);
+    
     /**
      * Process payment for an order
      * @param orderId Order ID
@@ -81,6 +103,14 @@ public interface OrderService {
      */
     Page<OrderResponse> findMyOrders(Pageable pageable);
     
+    /**
+     * Find current user's orders with keyset pagination, newest first
+     * @param cursor Token from the previous slice, or null for the first one
+     * @param size Slice size
+     * @return Slice of user's orders and the cursor of the next one
+     */
+    CursorPageResponse<OrderResponse> scrollMyOrders(String cursor, int size);
+    
     /**
      * Find orders by status for current user
      * @param status Order status as string
@@ -112,4 +142,12 @@ public interface OrderService {
      * @return Page of all orders
      */
     Page<OrderResponse> findAllOrders(Pageable pageable);
+    
+    /**
+     * Find all orders with keyset pagination, newest first (admin only)
+     * @param cursor Token from the previous slice, or null for the first one
+     * @param size Slice size
+     * @return Slice of orders and the cursor of the next one
+     */
+    CursorPageResponse<OrderResponse> scrollAllOrders(String cursor, int size);
 }
@@ -0,0 +1,93 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.entity.OutboxEvent;
+import com.flashfood.flash_food.repository.OutboxEventRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Relays outbox_events to RabbitMQ in batches
+ *
+ * Each batch is claimed with FOR UPDATE SKIP LOCKED, sent on one channel and confirmed with a single
+ * waitForConfirmsOrDie, then stamped published in one UPDATE. If the broker does not confirm, the transaction
+ * rolls back and the batch is sent again on the next run (at-least-once; consumers must tolerate duplicates).
+ * publishedAt is the checkpoint: a restarted relay resumes from the oldest row without it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboxRelay {
+    
+    private static final String TYPE_ID_HEADER = "__TypeId__";
+    
+    private final OutboxEventRepository outboxEventRepository;
+    private final RabbitTemplate rabbitTemplate;
+    
+    @Value("${app.outbox.batch-size:200}")
+    private int batchSize;
+    
+    @Value("${app.outbox.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+    
+    /**
+     * Send one batch of unpublished events
+     * @return Number of events published; a full batch means more may be waiting
+     */
+    @Transactional
+    public int relayBatch() {
+        List<OutboxEvent> batch = outboxEventRepository.lockUnpublished(batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        rabbitTemplate.invoke(operations -> {
+            for (OutboxEvent event : batch) {
+                operations.send(event.getExchange(), event.getRoutingKey(), toMessage(event, now));
+            }
+            operations.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+        
+        outboxEventRepository.markPublished(batch.stream().map(OutboxEvent::getId).toList(), now);
+        log.debug("Relayed {} outbox events", batch.size());
+        return batch.size();
+    }
+    
+    /**
+     * Delete published events older than the retention window
+     */
+    @Transactional
+    public int purgePublished(Duration retention) {
+        return outboxEventRepository.deletePublishedBefore(LocalDateTime.now().minus(retention));
+    }
+    
+    private Message toMessage(OutboxEvent event, LocalDateTime now) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        properties.setMessageId("outbox-" + event.getId());
+        if (event.getPayloadType() != null) {
+            properties.setHeader(TYPE_ID_HEADER, event.getPayloadType());
+        }
+        if (event.getTtlMillis() != null) {
+            // The TTL started when the event was written, not when it is relayed
+            long remaining = event.getTtlMillis() - Duration.between(event.getCreatedAt(), now).toMillis();
+            properties.setExpiration(String.valueOf(Math.max(0, remaining)));
+        }
+        return new Message(event.getPayload().getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
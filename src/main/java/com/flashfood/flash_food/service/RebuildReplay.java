@@ -0,0 +1,56 @@
+package com.flashfood.flash_food.service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Full rebuilds of a node-local index that also takes point updates by ID
+ *
+ * A rebuild loads without blocking updates, so an update that lands on the old index while the new one is loading
+ * would be lost at the swap. Updates are therefore recorded while a rebuild loads and handed back for replay on the
+ * new index. Updates and the swap are serialized on this object.
+ */
+public final class RebuildReplay {
+    
+    // Non-null while a rebuild is loading, guarded by this
+    private Set<Long> changedDuringRebuild;
+    
+    /**
+     * Apply a point update to the live index, remembering its IDs if a rebuild is loading
+     */
+    public synchronized void update(Collection<Long> ids, Runnable apply) {
+        apply.run();
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.addAll(ids);
+        }
+    }
+    
+    /**
+     * Load a fresh index and swap it in
+     * @return IDs updated while it loaded; the caller refreshes them again on the new index
+     */
+    public <T> Set<Long> rebuild(Supplier<T> load, Consumer<T> swap) {
+        synchronized (this) {
+            changedDuringRebuild = new HashSet<>();
+        }
+        T fresh;
+        try {
+            fresh = load.get();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                changedDuringRebuild = null;
+            }
+            throw e;
+        }
+    
+        synchronized (this) {
+            swap.accept(fresh);
+            Set<Long> replay = changedDuringRebuild;
+            changedDuringRebuild = null;
+            return replay;
+        }
+    }
+}
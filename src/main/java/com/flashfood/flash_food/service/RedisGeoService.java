@@ -1,37 +1,128 @@
 package com.flashfood.flash_food.service;
 
-import lombok.RequiredArgsConstructor;
+import com.flashfood.flash_food.repository.StoreRepository;
+import com.flashfood.flash_food.util.DistanceCursor;
+import com.flashfood.flash_food.util.GeoGrid;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.geo.*;
 import org.springframework.data.redis.connection.RedisGeoCommands;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service for Redis Geo-spatial operations
- * Used for finding nearby stores based on user location
+ * Used for finding nearby stores when the node's StoreGeoIndex is not built yet, and nearby users
+ *
+ * Queries use GEOSEARCH: nearest-first results are capped with COUNT, and user fan-out uses COUNT ANY so Redis
+ * stops scanning as soon as it has enough. Members are plain IDs.
+ *
+ * reindexStores() rebuilds geo:stores from Postgres: active store locations are read in keyset batches, written
+ * to a staging key with pipelined GEOADDs and swapped in with RENAME, so readers see the old or the new index,
+ * never a partial one. The old index is UNLINKed first, so Redis frees it in the background rather than inside
+ * the swap. Store writes made while a reindex runs are mirrored into the staging key; a write racing
+ * the batch that reads the same store is repaired by the next reindex.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class RedisGeoService {
     
-    private final RedisTemplate<String, Object> redisTemplate;
-    
     private static final String STORE_GEO_KEY = "geo:stores";
     private static final String USER_GEO_KEY = "geo:users";
+    // Name of the staging key while a reindex runs; also keeps nodes from reindexing at the same time
+    private static final String STORE_REINDEX_KEY = "geo:stores:reindex";
+    private static final String STORE_STAGING_PREFIX = "geo:stores:staging:";
+    private static final String STORE_PAGE_PREFIX = "geo:stores:page:";
+    private static final int GEOADD_CHUNK = 500;
+    // Page snapshots are keyed by the search rounded to about 10 m, so clients at practically the same spot share one
+    private static final double SNAPSHOT_SCALE = 10_000.0;
+    
+    /**
+     * KEYS = live key, reindex key. ARGV = longitude, latitude, member
+     * The staging key is read from the reindex key, so these scripts need a single Redis instance
+     */
+    private static final RedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('GEOADD', KEYS[1], ARGV[1], ARGV[2], ARGV[3])
+            local staging = redis.call('GET', KEYS[2])
+            if staging then
+                redis.call('GEOADD', staging, ARGV[1], ARGV[2], ARGV[3])
+            end
+            return 1
+            """, Long.class);
+    
+    /**
+     * Same keys as ADD_SCRIPT. ARGV = member
+     */
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>("""
+            local removed = redis.call('ZREM', KEYS[1], ARGV[1])
+            local staging = redis.call('GET', KEYS[2])
+            if staging then
+                redis.call('ZREM', staging, ARGV[1])
+            end
+            return removed
+            """, Long.class);
+    
+    /**
+     * KEYS = live key, reindex key, staging key. Swaps the staging key in if this reindex still owns the reindex key
+     * Returns 1 if swapped, 0 if the reindex outlived its lease
+     */
+    private static final RedisScript<Long> SWAP_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[2]) ~= KEYS[3] then
+                return 0
+            end
+            redis.call('UNLINK', KEYS[1])
+            if redis.call('EXISTS', KEYS[3]) == 1 then
+                redis.call('RENAME', KEYS[3], KEYS[1])
+                redis.call('PERSIST', KEYS[1])
+            end
+            redis.call('DEL', KEYS[2])
+            return 1
+            """, Long.class);
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final StoreRepository storeRepository;
+    private final int maxResults;
+    private final int reindexBatchSize;
+    private final Duration reindexTimeout;
+    private final Duration pageSnapshotTtl;
+    
+    public RedisGeoService(StringRedisTemplate stringRedisTemplate,
+                           StoreRepository storeRepository,
+                           @Value("${app.geo.max-results:1000}") int maxResults,
+                           @Value("${app.geo.redis.reindex-batch-size:5000}") int reindexBatchSize,
+                           @Value("${app.geo.redis.reindex-timeout-seconds:300}") long reindexTimeoutSeconds,
+                           @Value("${app.geo.redis.page-snapshot-ttl-seconds:60}") long pageSnapshotTtlSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.storeRepository = storeRepository;
+        this.maxResults = maxResults;
+        this.reindexBatchSize = reindexBatchSize;
+        this.reindexTimeout = Duration.ofSeconds(reindexTimeoutSeconds);
+        this.pageSnapshotTtl = Duration.ofSeconds(pageSnapshotTtlSeconds);
+    }
     
     /**
      * Add store location to Redis Geo index
      */
     public void addStoreLocation(Long storeId, Double longitude, Double latitude) {
         try {
-            Point point = new Point(longitude, latitude);
-            redisTemplate.opsForGeo().add(STORE_GEO_KEY, point, storeId.toString());
+            stringRedisTemplate.execute(ADD_SCRIPT, List.of(STORE_GEO_KEY, STORE_REINDEX_KEY),
+                    longitude.toString(), latitude.toString(), storeId.toString());
             log.info("Added store {} to geo index at ({}, {})", storeId, longitude, latitude);
         } catch (Exception e) {
             log.error("Error adding store location to Redis", e);
@@ -44,7 +135,7 @@ public class RedisGeoService {
     public void addUserLocation(Long userId, Double longitude, Double latitude) {
         try {
             Point point = new Point(longitude, latitude);
-            redisTemplate.opsForGeo().add(USER_GEO_KEY, point, userId.toString());
+            stringRedisTemplate.opsForGeo().add(USER_GEO_KEY, point, userId.toString());
             log.info("Added user {} to geo index at ({}, {})", userId, longitude, latitude);
         } catch (Exception e) {
             log.error("Error adding user location to Redis", e);
@@ -56,72 +147,87 @@ public class RedisGeoService {
      * @param longitude User's longitude
      * @param latitude User's latitude
      * @param radiusInKm Radius in kilometers
-     * @return List of store IDs within the radius
+     * @return Up to app.geo.max-results stores within the radius, nearest first, with distances
+     */
+    public List<GeoGrid.Hit> findNearbyStores(Double longitude, Double latitude, Double radiusInKm) {
+        List<GeoGrid.Hit> stores = search(STORE_GEO_KEY, longitude, latitude, radiusInKm, maxResults, false);
+        log.info("Found {} stores within {} km", stores.size(), radiusInKm);
+        return stores;
+    }
+    
+    /**
+     * Find the stores nearest a point
+     * @param longitude User's longitude
+     * @param latitude User's latitude
+     * @param maxRadiusInKm Farthest store to consider, in kilometers
+     * @param limit Maximum number of stores
+     * @return Stores nearest first, with distances
+     */
+    public List<GeoGrid.Hit> findNearestStores(Double longitude, Double latitude, Double maxRadiusInKm, int limit) {
+        return search(STORE_GEO_KEY, longitude, latitude, maxRadiusInKm, limit, false);
+    }
+    
+    /**
+     * Find stores within a radius after a cursor position, nearest first
+     * The first slice stores the search in a short-lived sorted set scored by distance (GEOSEARCHSTORE STOREDIST);
+     * later slices read it by score, searching again if it has expired. The center and radius are rounded to about
+     * 10 m first, so the snapshot key cannot take arbitrarily many values and its content matches its key.
+     * @param count Maximum number of stores
      */
-    public List<Long> findNearbyStores(Double longitude, Double latitude, Double radiusInKm) {
+    public List<GeoGrid.Hit> findNearbyStoresAfter(Double longitude, Double latitude, Double radiusInKm,
+                                                   DistanceCursor after, int count) {
+        double snapshotLongitude = Math.round(longitude * SNAPSHOT_SCALE) / SNAPSHOT_SCALE;
+        double snapshotLatitude = Math.round(latitude * SNAPSHOT_SCALE) / SNAPSHOT_SCALE;
+        double snapshotRadiusKm = Math.max(0.01, Math.round(radiusInKm * 100) / 100.0);
+        String snapshotKey = STORE_PAGE_PREFIX + snapshotLongitude + ":" + snapshotLatitude + ":" + snapshotRadiusKm;
         try {
-            Point center = new Point(longitude, latitude);
-            Distance radius = new Distance(radiusInKm, Metrics.KILOMETERS);
-            
-            Circle area = new Circle(center, radius);
-            
-            RedisGeoCommands.GeoRadiusCommandArgs args = RedisGeoCommands.GeoRadiusCommandArgs
-                    .newGeoRadiusArgs()
-                    .includeDistance()
-                    .sortAscending();
-            
-            GeoResults<RedisGeoCommands.GeoLocation<Object>> results = 
-                    redisTemplate.opsForGeo().radius(STORE_GEO_KEY, area, args);
-            
-            List<Long> storeIds = new ArrayList<>();
-            if (results != null) {
-                results.getContent().forEach(result -> {
-                    String storeId = result.getContent().getName().toString();
-                    storeIds.add(Long.parseLong(storeId));
-                });
+            if (after == DistanceCursor.START || !Boolean.TRUE.equals(stringRedisTemplate.hasKey(snapshotKey))) {
+                RedisGeoCommands.GeoSearchStoreCommandArgs args = RedisGeoCommands.GeoSearchStoreCommandArgs
+                        .newGeoSearchStoreArgs()
+                        .storeDistance()
+                        .sortAscending()
+                        .limit(maxResults);
+                stringRedisTemplate.opsForGeo().searchAndStore(STORE_GEO_KEY, snapshotKey,
+                        GeoReference.fromCoordinate(snapshotLongitude, snapshotLatitude),
+                        new Distance(snapshotRadiusKm, Metrics.KILOMETERS), args);
+                stringRedisTemplate.expire(snapshotKey, pageSnapshotTtl);
             }
             
-            log.info("Found {} stores within {} km", storeIds.size(), radiusInKm);
-            return storeIds;
+            // Members with the cursor's distance come back in cursor order; skip those at or before it
+            List<GeoGrid.Hit> stores = new ArrayList<>(count);
+            long offset = 0;
+            while (stores.size() < count) {
+                Set<ZSetOperations.TypedTuple<String>> rows = stringRedisTemplate.opsForZSet()
+                        .rangeByScoreWithScores(snapshotKey, after.getDistanceKm(), Double.POSITIVE_INFINITY,
+                                offset, count);
+                if (rows == null || rows.isEmpty()) {
+                    break;
+                }
+                for (ZSetOperations.TypedTuple<String> row : rows) {
+                    GeoGrid.Hit hit = new GeoGrid.Hit(memberId(row.getValue()), row.getScore());
+                    if (stores.size() < count && after.isBefore(hit)) {
+                        stores.add(hit);
+                    }
+                }
+                offset += rows.size();
+            }
+            return stores;
         } catch (Exception e) {
-            log.error("Error finding nearby stores", e);
+            log.error("Error paging nearby stores", e);
             return new ArrayList<>();
         }
     }
     
     /**
      * Find users within a certain radius from a store
-     * Used for sending flash sale notifications
+     * Used for sending flash sale notifications; any limit users in range will do, so Redis stops at the first ones
      */
-    public List<Long> findNearbyUsers(Double longitude, Double latitude, Double radiusInKm) {
-        try {
-            Point center = new Point(longitude, latitude);
-            Distance radius = new Distance(radiusInKm, Metrics.KILOMETERS);
-            
-            Circle area = new Circle(center, radius);
-            
-            RedisGeoCommands.GeoRadiusCommandArgs args = RedisGeoCommands.GeoRadiusCommandArgs
-                    .newGeoRadiusArgs()
-                    .includeDistance()
-                    .sortAscending();
-            
-            GeoResults<RedisGeoCommands.GeoLocation<Object>> results = 
-                    redisTemplate.opsForGeo().radius(USER_GEO_KEY, area, args);
-            
-            List<Long> userIds = new ArrayList<>();
-            if (results != null) {
-                results.getContent().forEach(result -> {
-                    String userId = result.getContent().getName().toString();
-                    userIds.add(Long.parseLong(userId));
-                });
-            }
-            
-            log.info("Found {} users within {} km", userIds.size(), radiusInKm);
-            return userIds;
-        } catch (Exception e) {
-            log.error("Error finding nearby users", e);
-            return new ArrayList<>();
-        }
+    public List<Long> findNearbyUsers(Double longitude, Double latitude, Double radiusInKm, int limit) {
+        List<Long> userIds = search(USER_GEO_KEY, longitude, latitude, radiusInKm, limit, true).stream()
+                .map(GeoGrid.Hit::id)
+                .toList();
+        log.info("Found {} users within {} km", userIds.size(), radiusInKm);
+        return userIds;
     }
     
     /**
@@ -129,19 +235,64 @@ public class RedisGeoService {
      */
     public void removeStoreLocation(Long storeId) {
         try {
-            redisTemplate.opsForGeo().remove(STORE_GEO_KEY, storeId.toString());
+            stringRedisTemplate.execute(REMOVE_SCRIPT, List.of(STORE_GEO_KEY, STORE_REINDEX_KEY), storeId.toString());
             log.info("Removed store {} from geo index", storeId);
         } catch (Exception e) {
             log.error("Error removing store location from Redis", e);
         }
     }
     
+    /**
+     * Rebuild the store geo index from the active stores in Postgres
+     * Skipped if another node is already reindexing
+     */
+    public void reindexStores() {
+        String stagingKey = STORE_STAGING_PREFIX + UUID.randomUUID();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                .setIfAbsent(STORE_REINDEX_KEY, stagingKey, reindexTimeout))) {
+            log.debug("Store geo reindex already running on another node");
+            return;
+        }
+        
+        long startedAt = System.nanoTime();
+        int indexed = 0;
+        try {
+            long afterId = 0;
+            List<StoreRepository.LocationView> batch;
+            do {
+                batch = storeRepository.findActiveStoresWithCoordinates(afterId, Limit.of(reindexBatchSize));
+                if (!batch.isEmpty()) {
+                    addPipelined(stagingKey, batch);
+                    indexed += batch.size();
+                    afterId = batch.get(batch.size() - 1).getId();
+                }
+            } while (batch.size() == reindexBatchSize);
+            
+            Long swapped = stringRedisTemplate.execute(SWAP_SCRIPT,
+                    List.of(STORE_GEO_KEY, STORE_REINDEX_KEY, stagingKey));
+            if (!Long.valueOf(1).equals(swapped)) {
+                stringRedisTemplate.delete(stagingKey);
+                log.warn("Store geo reindex took longer than {}s and was discarded", reindexTimeout.toSeconds());
+                return;
+            }
+        } catch (RuntimeException e) {
+            // Stop mirroring first so no write recreates the staging key
+            if (stagingKey.equals(stringRedisTemplate.opsForValue().get(STORE_REINDEX_KEY))) {
+                stringRedisTemplate.delete(STORE_REINDEX_KEY);
+            }
+            stringRedisTemplate.delete(stagingKey);
+            throw e;
+        }
+        log.info("Reindexed {} stores into Redis geo in {} ms", indexed,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    }
+    
     /**
      * Get distance between two points
      */
     public Double getDistance(Double lon1, Double lat1, Double lon2, Double lat2) {
         try {
-            Distance distance = redisTemplate.opsForGeo().distance(
+            Distance distance = stringRedisTemplate.opsForGeo().distance(
                     STORE_GEO_KEY,
                     lon1 + "," + lat1,
                     lon2 + "," + lat2,
@@ -153,4 +304,58 @@ public class RedisGeoService {
             return null;
         }
     }
+    
+    private List<GeoGrid.Hit> search(String key, Double longitude, Double latitude, Double radiusInKm,
+                                     int limit, boolean any) {
+        try {
+            RedisGeoCommands.GeoSearchCommandArgs args = RedisGeoCommands.GeoSearchCommandArgs
+                    .newGeoSearchArgs()
+                    .includeDistance()
+                    .sortAscending()
+                    .limit(limit, any);
+            
+            GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(key,
+                    GeoReference.fromCoordinate(longitude, latitude), new Distance(radiusInKm, Metrics.KILOMETERS), args);
+            
+            List<GeoGrid.Hit> hits = new ArrayList<>();
+            if (results != null) {
+                results.getContent().forEach(result -> hits.add(new GeoGrid.Hit(
+                        memberId(result.getContent().getName()), result.getDistance().getValue())));
+            }
+            return hits;
+        } catch (Exception e) {
+            log.error("Error searching geo index {}", key, e);
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Members written before the switch to plain IDs are JSON strings; they are gone once a reindex has run
+     */
+    private static long memberId(String member) {
+        return Long.parseLong(member.replace("\"", ""));
+    }
+    
+    /**
+     * GEOADD a batch in chunks, all in one round trip, and keep the staging key's lease current
+     */
+    private void addPipelined(String stagingKey, List<StoreRepository.LocationView> batch) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection redis = (StringRedisConnection) connection;
+            Map<String, Point> chunk = new HashMap<>();
+            for (StoreRepository.LocationView location : batch) {
+                chunk.put(location.getId().toString(), new Point(location.getLongitude(), location.getLatitude()));
+                if (chunk.size() == GEOADD_CHUNK) {
+                    redis.geoAdd(stagingKey, chunk);
+                    chunk = new HashMap<>();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                redis.geoAdd(stagingKey, chunk);
+            }
+            // Orphaned if this node dies mid-reindex; the swap removes the TTL
+            redis.expire(stagingKey, reindexTimeout.toSeconds());
+            return null;
+        });
+    }
 }
@@ -0,0 +1,320 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.entity.FoodItem;
+import com.flashfood.flash_food.exception.InsufficientStockException;
+import com.flashfood.flash_food.exception.InvalidOperationException;
+import com.flashfood.flash_food.util.AppConstants;
+import com.flashfood.flash_food.util.TransactionCallbacks;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Redis stock ledger for food items in StockMode.REDIS
+ *
+ * While an item is in Redis mode its remaining quantity lives in "stock:food_item:{id}" and is
+ * claimed with one Lua script per order (all lines or none). Every touched id is added to
+ * "stock:dirty" and StockReconciliationScheduler copies the ledger value back to Postgres.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RedisStockService {
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SoldOutFilter soldOutFilter;
+    
+    private static final long CLOSED_TTL_SECONDS = 60;
+    
+    private static final long CLAIM_OK = 0;
+    private static final long CLAIM_SHORT = 1;
+    private static final long CLAIM_MISSING = 2;
+    
+    /**
+     * KEYS[1..n] = stock keys, KEYS[n+1] = dirty set
+     * ARGV[1..n] = quantities, ARGV[n+1..2n] = food item ids
+     * Returns {0} on success, {1, line, available} when a line is short, {2, line} when a key is not loaded
+     */
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+            local n = #KEYS - 1
+            for i = 1, n do
+                local available = redis.call('GET', KEYS[i])
+                if not available then
+                    return {2, i}
+                end
+                if tonumber(available) < tonumber(ARGV[i]) then
+                    return {1, i, tonumber(available)}
+                end
+            end
+            for i = 1, n do
+                redis.call('DECRBY', KEYS[i], ARGV[i])
+                redis.call('SADD', KEYS[n + 1], ARGV[n + i])
+            end
+            return {0}
+            """, List.class);
+    
+    /**
+     * Same layout as CLAIM_SCRIPT. Lines whose key is gone are skipped and returned
+     */
+    private static final RedisScript<List> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            local n = #KEYS - 1
+            local skipped = {}
+            for i = 1, n do
+                if redis.call('EXISTS', KEYS[i]) == 1 then
+                    redis.call('INCRBY', KEYS[i], ARGV[i])
+                    redis.call('SADD', KEYS[n + 1], ARGV[n + i])
+                else
+                    table.insert(skipped, ARGV[n + i])
+                end
+            end
+            return skipped
+            """, List.class);
+    
+    /**
+     * KEYS[1] = stock key, KEYS[2] = closed marker. ARGV[1] = quantity from Postgres
+     * Only loads when the key is absent and the item is not being switched out of Redis mode
+     */
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[2]) == 1 then
+                return -1
+            end
+            if redis.call('SET', KEYS[1], ARGV[1], 'NX') then
+                return 1
+            end
+            return 0
+            """, Long.class);
+    
+    /**
+     * KEYS[1] = stock key, KEYS[2] = closed marker. ARGV[1] = marker TTL in seconds
+     * Marks the ledger closed and removes it, returning the last remaining quantity (or -1)
+     */
+    private static final RedisScript<Long> CLOSE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('SET', KEYS[2], '1', 'EX', ARGV[1])
+            local available = redis.call('GET', KEYS[1])
+            redis.call('DEL', KEYS[1])
+            if not available then
+                return -1
+            end
+            return tonumber(available)
+            """, Long.class);
+    
+    /**
+     * Claim stock for all lines of an order in one round trip
+     * Lines are claimed all-or-nothing; if the surrounding transaction rolls back the units are returned
+     * @param foodItems Food items by ID (used for messages and lazy loading of missing ledgers)
+     * @param quantities Requested quantity by food item ID (no duplicate IDs)
+     */
+    public void reserve(Map<Long, FoodItem> foodItems, Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        
+        List<Long> ids = new ArrayList<>(quantities.keySet());
+        List<String> keys = buildKeys(ids);
+        Object[] args = buildArgs(ids, quantities);
+        
+        // A ledger can be missing after a Redis restart; load it once from Postgres and retry
+        for (int attempt = 0; attempt < 2; attempt++) {
+            List<?> result = stringRedisTemplate.execute(CLAIM_SCRIPT, keys, args);
+            long status = toLong(result.get(0));
+            
+            if (status == CLAIM_OK) {
+                TransactionCallbacks.runOnRollback(() -> release(quantities));
+                log.debug("Claimed Redis stock for food items {}", ids);
+                return;
+            }
+            
+            FoodItem foodItem = foodItems.get(ids.get((int) toLong(result.get(1)) - 1));
+            
+            if (status == CLAIM_SHORT) {
+                int available = (int) toLong(result.get(2));
+                if (available == 0) {
+                    soldOutFilter.markSoldOut(foodItem.getId());
+                }
+                throw new InsufficientStockException(foodItem.getName(), quantities.get(foodItem.getId()), available);
+            }
+            
+            if (status == CLAIM_MISSING && !load(foodItem.getId(), foodItem.getAvailableQuantity())) {
+                throw new InvalidOperationException("Stock for '" + foodItem.getName() + "' is being updated, please retry");
+            }
+        }
+        
+        throw new InvalidOperationException("Failed to reserve stock, please retry");
+    }
+    
+    /**
+     * Return units to the ledger immediately (compensation for a failed order)
+     */
+    public void release(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        
+        List<Long> ids = new ArrayList<>(quantities.keySet());
+        try {
+            List<?> skipped = stringRedisTemplate.execute(RELEASE_SCRIPT, buildKeys(ids), buildArgs(ids, quantities));
+            if (skipped != null && !skipped.isEmpty()) {
+                log.warn("Redis stock ledger missing while releasing food items {}", skipped);
+            }
+            soldOutFilter.markAvailable(ids);
+        } catch (Exception e) {
+            log.error("Error releasing Redis stock for food items {}", ids, e);
+        }
+    }
+    
+    /**
+     * Return units to the ledger once the surrounding transaction commits (order cancellation)
+     */
+    public void releaseAfterCommit(Map<Long, Integer> quantities) {
+        Map<Long, Integer> copy = new LinkedHashMap<>(quantities);
+        TransactionCallbacks.runAfterCommit(() -> release(copy));
+    }
+    
+    /**
+     * Apply a quantity change made by the store owner once the transaction commits
+     */
+    public void adjustAfterCommit(Long foodItemId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        TransactionCallbacks.runAfterCommit(() -> {
+            if (delta > 0) {
+                release(Map.of(foodItemId, delta));
+            } else {
+                Long remaining = stringRedisTemplate.opsForValue().decrement(stockKey(foodItemId), -delta);
+                // Never leave the ledger negative: units already sold stay sold
+                if (remaining != null && remaining < 0) {
+                    stringRedisTemplate.opsForValue().increment(stockKey(foodItemId), -remaining);
+                }
+                markDirty(List.of(foodItemId));
+            }
+        });
+    }
+    
+    /**
+     * Load the ledger for an item switched into Redis mode, overwriting any stale value
+     */
+    public void openAfterCommit(Long foodItemId, int quantity) {
+        TransactionCallbacks.runAfterCommit(() -> {
+            stringRedisTemplate.delete(closedKey(foodItemId));
+            stringRedisTemplate.opsForValue().set(stockKey(foodItemId), String.valueOf(quantity));
+            log.info("Opened Redis stock ledger for food item {} with {} units", foodItemId, quantity);
+        });
+    }
+    
+    /**
+     * Close the ledger of an item leaving Redis mode once the surrounding transaction commits
+     * Until then the ledger keeps selling, so a rolled-back switch leaves Redis mode intact
+     * @param onClosed Receives the quantity left in Redis at close, or null if there was no ledger
+     */
+    public void closeAfterCommit(Long foodItemId, Consumer<Integer> onClosed) {
+        TransactionCallbacks.runAfterCommit(() -> {
+            try {
+                onClosed.accept(close(foodItemId));
+            } catch (Exception e) {
+                // The ledger is left behind; it is overwritten if the item returns to Redis mode
+                log.error("Error closing Redis stock ledger for food item {}", foodItemId, e);
+            }
+        });
+    }
+    
+    /**
+     * Close the ledger of an item leaving Redis mode
+     * @return Remaining quantity held in Redis, or null if there was no ledger
+     */
+    public Integer close(Long foodItemId) {
+        Long remaining = stringRedisTemplate.execute(CLOSE_SCRIPT,
+                List.of(stockKey(foodItemId), closedKey(foodItemId)), String.valueOf(CLOSED_TTL_SECONDS));
+        log.info("Closed Redis stock ledger for food item {} (remaining: {})", foodItemId, remaining);
+        return remaining == null || remaining < 0 ? null : remaining.intValue();
+    }
+    
+    /**
+     * Pop up to max food item IDs whose ledger changed since the last reconciliation
+     */
+    public List<Long> popDirty(int max) {
+        List<String> members = stringRedisTemplate.opsForSet().pop(AppConstants.REDIS_STOCK_DIRTY_KEY, max);
+        if (members == null) {
+            return List.of();
+        }
+        return members.stream().map(Long::valueOf).toList();
+    }
+    
+    /**
+     * Put IDs back into the dirty set (e.g. when reconciliation failed)
+     */
+    public void markDirty(Collection<Long> foodItemIds) {
+        if (foodItemIds.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.opsForSet().add(AppConstants.REDIS_STOCK_DIRTY_KEY,
+                foodItemIds.stream().map(String::valueOf).toArray(String[]::new));
+    }
+    
+    /**
+     * Read current ledger values; IDs without a ledger are left out
+     */
+    public Map<Long, Integer> readStock(List<Long> foodItemIds) {
+        Map<Long, Integer> stock = new LinkedHashMap<>();
+        if (foodItemIds.isEmpty()) {
+            return stock;
+        }
+        
+        List<String> values = stringRedisTemplate.opsForValue()
+                .multiGet(foodItemIds.stream().map(RedisStockService::stockKey).toList());
+        for (int i = 0; i < foodItemIds.size(); i++) {
+            String value = values != null ? values.get(i) : null;
+            if (value != null) {
+                stock.put(foodItemIds.get(i), Integer.valueOf(value));
+            }
+        }
+        return stock;
+    }
+    
+    private boolean load(Long foodItemId, int quantity) {
+        Long loaded = stringRedisTemplate.execute(LOAD_SCRIPT,
+                List.of(stockKey(foodItemId), closedKey(foodItemId)), String.valueOf(quantity));
+        if (loaded != null && loaded == 1) {
+            log.info("Loaded Redis stock ledger for food item {} from database: {}", foodItemId, quantity);
+        }
+        return loaded != null && loaded >= 0;
+    }
+    
+    private List<String> buildKeys(List<Long> ids) {
+        List<String> keys = new ArrayList<>(ids.size() + 1);
+        ids.forEach(id -> keys.add(stockKey(id)));
+        keys.add(AppConstants.REDIS_STOCK_DIRTY_KEY);
+        return keys;
+    }
+    
+    private Object[] buildArgs(List<Long> ids, Map<Long, Integer> quantities) {
+        Object[] args = new Object[ids.size() * 2];
+        for (int i = 0; i < ids.size(); i++) {
+            args[i] = String.valueOf(quantities.get(ids.get(i)));
+            args[ids.size() + i] = String.valueOf(ids.get(i));
+        }
+        return args;
+    }
+    
+    private static String stockKey(Long foodItemId) {
+        return AppConstants.REDIS_STOCK_PREFIX + foodItemId;
+    }
+    
+    private static String closedKey(Long foodItemId) {
+        return AppConstants.REDIS_STOCK_PREFIX + foodItemId + AppConstants.REDIS_STOCK_CLOSED_SUFFIX;
+    }
+    
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : Long.parseLong(value.toString());
+    }
+}
@@ -0,0 +1,443 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.entity.StoreStatus;
+import com.flashfood.flash_food.repository.FoodItemRepository;
+import com.flashfood.flash_food.repository.StoreRepository;
+import com.flashfood.flash_food.util.AppConstants;
+import com.flashfood.flash_food.util.SearchText;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Node-local inverted index for keyword search over food items and active stores
+ * Food items are indexed until they close (expired, cancelled, deleted) or their sale ends; the expiry scheduler and
+ * the periodic rebuild take them out.
+ *
+ * Text is folded with SearchText, so Vietnamese names match with or without diacritics. Each query word matches
+ * index terms exactly, by prefix (for words still being typed) or, from four letters on, by trigram similarity
+ * (typos). Every word must match. Documents are ranked by the sum over query words of
+ * similarity x field weight x idf, ties newest id first. A query touches only the postings of the terms it expands
+ * to, never the whole catalog. Prefixes expand to every term they start, so totals are exact; typo expansions are
+ * capped to the most similar terms. Only the top offset + size matches of a page are ordered.
+ *
+ * Changes made on this node are applied after commit and broadcast on "search:changed" (see NodeBroadcast); other
+ * nodes reload the document from Postgres. Both indexes are also rebuilt periodically, which heals missed broadcasts
+ * and picks up category renames.
+ *
+ * Metrics: flashfood.search.documents (corpus) is the index size, flashfood.search.latency (corpus) times queries.
+ */
+@Slf4j
+@Service
+public class SearchIndex {
+    
+    private static final String FOOD_ITEM = "F:";
+    private static final String STORE = "S:";
+    
+    // Name, category, store, description
+    private static final double[] FOOD_ITEM_WEIGHTS = {3.0, 2.0, 1.5, 1.0};
+    // Name, address, description
+    private static final double[] STORE_WEIGHTS = {3.0, 1.0, 1.0};
+    
+    private final FoodItemRepository foodItemRepository;
+    private final StoreRepository storeRepository;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final NodeBroadcast broadcast;
+    
+    private final Corpus foodItems;
+    private final Corpus stores;
+    
+    public SearchIndex(FoodItemRepository foodItemRepository,
+                       StoreRepository storeRepository,
+                       StringRedisTemplate stringRedisTemplate,
+                       RedisMessageListenerContainer listenerContainer,
+                       MeterRegistry meterRegistry) {
+        this.foodItemRepository = foodItemRepository;
+        this.storeRepository = storeRepository;
+        this.listenerContainer = listenerContainer;
+        this.broadcast = new NodeBroadcast("search index", AppConstants.REDIS_SEARCH_CHANNEL, stringRedisTemplate,
+                this::refresh);
+        this.foodItems = new Corpus("food_items", FOOD_ITEM_WEIGHTS,
+                () -> foodItemDocuments(foodItemRepository.findSearchDocuments(SoldOutFilter.CLOSED_STATUSES,
+                        LocalDateTime.now())),
+                ids -> foodItemDocuments(foodItemRepository.findSearchDocumentsByIds(ids, SoldOutFilter.CLOSED_STATUSES,
+                        LocalDateTime.now())),
+                meterRegistry);
+        this.stores = new Corpus("stores", STORE_WEIGHTS,
+                () -> storeDocuments(storeRepository.findSearchDocuments(StoreStatus.ACTIVE)),
+                ids -> storeDocuments(storeRepository.findSearchDocumentsByIds(ids, StoreStatus.ACTIVE)),
+                meterRegistry);
+    }
+    
+    @PostConstruct
+    public void subscribe() {
+        broadcast.subscribe(listenerContainer);
+    }
+    
+    /**
+     * IDs of matching food items that are on sale or yet to go on sale (sold-out ones included), best match first
+     */
+    public Page<Long> searchFoodItems(String query, Pageable pageable) {
+        return foodItems.search(query, pageable);
+    }
+    
+    /**
+     * IDs of matching active stores, best match first
+     */
+    public Page<Long> searchStores(String query, Pageable pageable) {
+        return stores.search(query, pageable);
+    }
+    
+    /**
+     * Reload both indexes from Postgres
+     */
+    public void rebuild() {
+        foodItems.rebuild();
+        stores.rebuild();
+    }
+    
+    /**
+     * Reindex a food item on this node once the surrounding transaction commits, then tell the other nodes
+     */
+    public void refreshFoodItemAfterCommit(Long foodItemId) {
+        broadcast.applyAfterCommit(FOOD_ITEM + foodItemId);
+    }
+    
+    /**
+     * Reindex a store and the items that carry its name once the surrounding transaction commits
+     */
+    public void refreshStoreAfterCommit(Long storeId) {
+        broadcast.applyAfterCommit(STORE + storeId);
+    }
+    
+    /**
+     * Order rows loaded by ID the way the search ranked the IDs; IDs without a row are dropped
+     */
+    public static <T> List<T> inRankOrder(List<Long> ids, List<T> rows, Function<T, Long> idOf) {
+        Map<Long, T> byId = new HashMap<>(rows.size() * 2);
+        rows.forEach(row -> byId.put(idOf.apply(row), row));
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+    
+    /**
+     * Reindex one document, given as its kind followed by its id ("F:42")
+     */
+    private void refresh(String document) {
+        String kind = document.substring(0, 2);
+        Long id = Long.valueOf(document.substring(2));
+        switch (kind) {
+            case FOOD_ITEM -> foodItems.refresh(List.of(id));
+            case STORE -> {
+                stores.refresh(List.of(id));
+                List<Document> items = foodItemDocuments(
+                        foodItemRepository.findSearchDocumentsByStore(id, SoldOutFilter.CLOSED_STATUSES,
+                                LocalDateTime.now()));
+                foodItems.apply(items.stream().map(Document::id).toList(), items);
+            }
+            default -> log.warn("Ignoring unknown search document kind: {}", kind);
+        }
+    }
+    
+    private static List<Document> foodItemDocuments(List<FoodItemRepository.SearchDocumentView> rows) {
+        return rows.stream()
+                .map(row -> new Document(row.getId(), Arrays.asList(
+                        row.getName(), row.getCategoryName(), row.getStoreName(), row.getDescription())))
+                .toList();
+    }
+    
+    private static List<Document> storeDocuments(List<StoreRepository.SearchDocumentView> rows) {
+        return rows.stream()
+                .map(row -> new Document(row.getId(), Arrays.asList(
+                        row.getName(), row.getAddress(), row.getDescription())))
+                .toList();
+    }
+    
+    /**
+     * Text fields of one document, in the order of its corpus' weights (null fields are empty)
+     */
+    private record Document(Long id, List<String> fields) {
+    }
+    
+    /**
+     * One searchable collection: the live index plus how to reload it
+     */
+    private static final class Corpus {
+        
+        private final double[] weights;
+        private final Supplier<List<Document>> loadAll;
+        private final Function<Collection<Long>, List<Document>> loadByIds;
+        private final Timer searchTimer;
+        
+        private final RebuildReplay rebuildReplay = new RebuildReplay();
+        
+        private volatile TextIndex index;
+        
+        private Corpus(String name, double[] weights, Supplier<List<Document>> loadAll,
+                       Function<Collection<Long>, List<Document>> loadByIds, MeterRegistry meterRegistry) {
+            this.weights = weights;
+            this.loadAll = loadAll;
+            this.loadByIds = loadByIds;
+            this.index = new TextIndex(weights);
+            this.searchTimer = Timer.builder("flashfood.search.latency")
+                    .description("Time to rank one keyword search")
+                    .tag("corpus", name)
+                    .register(meterRegistry);
+            meterRegistry.gauge("flashfood.search.documents", Tags.of("corpus", name), this,
+                    corpus -> corpus.index.size());
+        }
+        
+        private Page<Long> search(String query, Pageable pageable) {
+            return searchTimer.record(() -> index.search(query, pageable));
+        }
+        
+        private void rebuild() {
+            Set<Long> replay = rebuildReplay.rebuild(() -> {
+                TextIndex fresh = new TextIndex(weights);
+                loadAll.get().forEach(fresh::put);
+                return fresh;
+            }, fresh -> index = fresh);
+            log.debug("Rebuilt search index with {} documents", index.size());
+            if (!replay.isEmpty()) {
+                refresh(replay);
+            }
+        }
+        
+        private void refresh(Collection<Long> ids) {
+            apply(ids, loadByIds.apply(ids));
+        }
+        
+        /**
+         * Index the documents and drop every other ID given
+         */
+        private void apply(Collection<Long> ids, List<Document> documents) {
+            rebuildReplay.update(ids, () -> {
+                Set<Long> missing = new HashSet<>(ids);
+                for (Document document : documents) {
+                    index.put(document);
+                    missing.remove(document.id());
+                }
+                missing.forEach(index::remove);
+            });
+        }
+    }
+    
+    /**
+     * Term postings plus a trigram index over the terms, guarded by a read-write lock
+     */
+    private static final class TextIndex {
+        
+        private static final double PREFIX_SIMILARITY = 0.8;
+        private static final double FUZZY_SIMILARITY = 0.6; // Scales the trigram Dice coefficient
+        private static final double MIN_DICE = 0.6;
+        private static final int MIN_FUZZY_LENGTH = 4;
+        private static final int MAX_FUZZY_EXPANSIONS = 50;
+        
+        private final double[] weights;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        // Term -> (document id -> weight of the heaviest field containing the term)
+        private final NavigableMap<String, Map<Long, Double>> postings = new TreeMap<>();
+        private final Map<String, Set<String>> termsByTrigram = new HashMap<>();
+        private final Map<Long, Set<String>> termsByDocument = new HashMap<>();
+        
+        private TextIndex(double[] weights) {
+            this.weights = weights;
+        }
+        
+        private int size() {
+            lock.readLock().lock();
+            try {
+                return termsByDocument.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        
+        private void put(Document document) {
+            Map<String, Double> terms = new HashMap<>();
+            for (int field = 0; field < weights.length; field++) {
+                double weight = weights[field];
+                SearchText.terms(document.fields().get(field)).forEach(term -> terms.merge(term, weight, Math::max));
+            }
+            
+            lock.writeLock().lock();
+            try {
+                removeLocked(document.id());
+                terms.forEach((term, weight) -> postings.computeIfAbsent(term, this::addTerm).put(document.id(), weight));
+                termsByDocument.put(document.id(), terms.keySet());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        
+        private void remove(Long id) {
+            lock.writeLock().lock();
+            try {
+                removeLocked(id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        
+        private Page<Long> search(String query, Pageable pageable) {
+            List<String> words = SearchText.terms(query);
+            if (words.isEmpty()) {
+                return Page.empty(pageable);
+            }
+            
+            Map<Long, Double> scores = null;
+            lock.readLock().lock();
+            try {
+                int documents = termsByDocument.size();
+                for (String word : words) {
+                    Map<Long, Double> wordScores = new HashMap<>();
+                    expand(word).forEach((term, similarity) -> {
+                        Map<Long, Double> matches = postings.get(term);
+                        double idf = Math.log(1.0 + (double) documents / matches.size());
+                        matches.forEach((id, weight) -> wordScores.merge(id, similarity * weight * idf, Math::max));
+                    });
+                    
+                    // Every word must match
+                    if (scores == null) {
+                        scores = wordScores;
+                    } else {
+                        scores.keySet().retainAll(wordScores.keySet());
+                        scores.replaceAll((id, score) -> score + wordScores.get(id));
+                    }
+                    if (scores.isEmpty()) {
+                        return Page.empty(pageable);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return page(scores, pageable);
+        }
+        
+        /**
+         * Index terms a query word stands for, with their similarity to it
+         */
+        private Map<String, Double> expand(String word) {
+            Map<String, Double> terms = new LinkedHashMap<>();
+            if (postings.containsKey(word)) {
+                terms.put(word, 1.0);
+            }
+            
+            for (String term : postings.subMap(word, false, word + Character.MAX_VALUE, false).keySet()) {
+                terms.put(term, PREFIX_SIMILARITY);
+            }
+            
+            if (word.length() >= MIN_FUZZY_LENGTH) {
+                Set<String> trigrams = SearchText.trigrams(word);
+                Map<String, Integer> shared = new HashMap<>();
+                for (String trigram : trigrams) {
+                    Set<String> sharing = termsByTrigram.get(trigram);
+                    if (sharing != null) {
+                        sharing.forEach(term -> shared.merge(term, 1, Integer::sum));
+                    }
+                }
+                // A term of n letters has n trigrams once its boundaries are marked
+                shared.entrySet().stream()
+                        .filter(entry -> !terms.containsKey(entry.getKey()))
+                        .map(entry -> Map.entry(entry.getKey(),
+                                2.0 * entry.getValue() / (trigrams.size() + entry.getKey().length())))
+                        .filter(entry -> entry.getValue() >= MIN_DICE)
+                        .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                        .limit(MAX_FUZZY_EXPANSIONS)
+                        .forEach(entry -> terms.put(entry.getKey(), FUZZY_SIMILARITY * entry.getValue()));
+            }
+            return terms;
+        }
+        
+        private Map<Long, Double> addTerm(String term) {
+            for (String trigram : SearchText.trigrams(term)) {
+                termsByTrigram.computeIfAbsent(trigram, key -> new HashSet<>()).add(term);
+            }
+            return new HashMap<>();
+        }
+        
+        private void removeLocked(Long id) {
+            Set<String> terms = termsByDocument.remove(id);
+            if (terms == null) {
+                return;
+            }
+            for (String term : terms) {
+                Map<Long, Double> matches = postings.get(term);
+                matches.remove(id);
+                if (!matches.isEmpty()) {
+                    continue;
+                }
+                postings.remove(term);
+                for (String trigram : SearchText.trigrams(term)) {
+                    Set<String> sharing = termsByTrigram.get(trigram);
+                    sharing.remove(term);
+                    if (sharing.isEmpty()) {
+                        termsByTrigram.remove(trigram);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Rank only the best offset + size matches: a bounded heap whose head is the worst match kept so far
+         */
+        private static Page<Long> page(Map<Long, Double> scores, Pageable pageable) {
+            Comparator<Map.Entry<Long, Double>> ranking = (a, b) -> {
+                int byScore = Double.compare(b.getValue(), a.getValue());
+                return byScore != 0 ? byScore : Long.compare(b.getKey(), a.getKey());
+            };
+            long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+            if (offset >= scores.size()) {
+                return new PageImpl<>(List.of(), pageable, scores.size());
+            }
+            int size = pageable.isPaged() ? pageable.getPageSize() : scores.size();
+            int keep = (int) Math.min(offset + size, scores.size());
+            
+            PriorityQueue<Map.Entry<Long, Double>> best = new PriorityQueue<>(keep, ranking.reversed());
+            for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                if (best.size() < keep) {
+                    best.add(entry);
+                } else if (ranking.compare(entry, best.peek()) < 0) {
+                    best.poll();
+                    best.add(entry);
+                }
+            }
+            
+            Long[] ranked = new Long[best.size()];
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                ranked[i] = best.poll().getKey();
+            }
+            List<Long> ids = Arrays.asList(ranked).subList((int) offset, ranked.length);
+            return new PageImpl<>(ids, pageable, scores.size());
+        }
+    }
+}
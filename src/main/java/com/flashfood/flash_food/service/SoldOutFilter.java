@@ -0,0 +1,218 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.entity.FoodItem;
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.exception.InsufficientStockException;
+import com.flashfood.flash_food.repository.FoodItemRepository;
+import com.flashfood.flash_food.util.AppConstants;
+import com.flashfood.flash_food.util.TransactionCallbacks;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Node-local sets of food items that cannot be ordered
+ *
+ * Order requests for those items are rejected before any Redis, lock or database work. Whoever sees an item
+ * run out (a stock claim that finds zero units) or close (expiry, deletion, a status change) broadcasts it on
+ * the "stock:sold_out" channel and every node updates its sets within milliseconds. Returned units clear the
+ * sold-out mark the same way; closed items stay closed until their status changes. Pub/sub is fire-and-forget,
+ * so both sets are also rebuilt from Postgres periodically. The node that sees the change also updates the shared
+ * LiveFacetCounts.
+ *
+ * Metrics: flashfood.order.sold_out.rejected counts requests turned away here, i.e. order transactions saved.
+ */
+@Slf4j
+@Service
+public class SoldOutFilter implements MessageListener {
+    
+    private static final String SOLD_OUT = "S:";
+    private static final String AVAILABLE = "A:";
+    private static final String CLOSED = "C:";
+    private static final String OPENED = "O:";
+    // Statuses an item never leaves; also kept out of the search index
+    static final Set<FoodItemStatus> CLOSED_STATUSES =
+            EnumSet.of(FoodItemStatus.EXPIRED, FoodItemStatus.CANCELLED, FoodItemStatus.DELETED);
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final FoodItemRepository foodItemRepository;
+    private final LiveFacetCounts liveFacetCounts;
+    private final Counter rejectedCounter;
+    
+    // Out of units right now; cleared when units come back
+    private final Set<Long> soldOut = ConcurrentHashMap.newKeySet();
+    // Expired or deleted; cleared only by a status change
+    private final Set<Long> closed = ConcurrentHashMap.newKeySet();
+    
+    public SoldOutFilter(StringRedisTemplate stringRedisTemplate,
+                         RedisMessageListenerContainer listenerContainer,
+                         FoodItemRepository foodItemRepository,
+                         LiveFacetCounts liveFacetCounts,
+                         MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.foodItemRepository = foodItemRepository;
+        this.liveFacetCounts = liveFacetCounts;
+        this.rejectedCounter = Counter.builder("flashfood.order.sold_out.rejected")
+                .description("Order requests rejected by the sold-out filter before opening a transaction")
+                .register(meterRegistry);
+        meterRegistry.gaugeCollectionSize("flashfood.stock.sold_out.items", Tags.of("state", "sold_out"), soldOut);
+        meterRegistry.gaugeCollectionSize("flashfood.stock.sold_out.items", Tags.of("state", "closed"), closed);
+    }
+    
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(AppConstants.REDIS_SOLD_OUT_CHANNEL));
+    }
+    
+    /**
+     * Reject an order when any of its items is known to be sold out or closed
+     * @throws InsufficientStockException for the first such item
+     */
+    public void rejectIfSoldOut(Collection<Long> foodItemIds) {
+        for (Long foodItemId : foodItemIds) {
+            if (soldOut.contains(foodItemId) || closed.contains(foodItemId)) {
+                rejectedCounter.increment();
+                throw new InsufficientStockException("Food item " + foodItemId + " is sold out");
+            }
+        }
+    }
+    
+    /**
+     * Whether an item is known to be sold out or closed on this node (no side effects)
+     */
+    public boolean isUnavailable(Long foodItemId) {
+        return soldOut.contains(foodItemId) || closed.contains(foodItemId);
+    }
+    
+    /**
+     * Broadcast that an item ran out of units
+     */
+    public void markSoldOut(Long foodItemId) {
+        if (soldOut.add(foodItemId)) {
+            publish(SOLD_OUT, foodItemId);
+        }
+        // Even when already marked here: the mark may come from a broadcast or resync, the counts from neither
+        liveFacetCounts.remove(foodItemId);
+    }
+    
+    /**
+     * Broadcast that units came back; always published since another node may hold a mark this one missed
+     */
+    public void markAvailable(Collection<Long> foodItemIds) {
+        for (Long foodItemId : foodItemIds) {
+            soldOut.remove(foodItemId);
+            publish(AVAILABLE, foodItemId);
+        }
+        liveFacetCounts.refresh(foodItemIds);
+    }
+    
+    /**
+     * Broadcast returned units once the surrounding transaction commits (cancelled or expired orders)
+     */
+    public void markAvailableAfterCommit(Collection<Long> foodItemIds) {
+        if (foodItemIds.isEmpty()) {
+            return;
+        }
+        Set<Long> copy = new HashSet<>(foodItemIds);
+        TransactionCallbacks.runAfterCommit(() -> markAvailable(copy));
+    }
+    
+    /**
+     * Broadcast that an item can never be ordered again (expired, deleted or past its sale end)
+     */
+    public void markClosed(Long foodItemId) {
+        if (closed.add(foodItemId)) {
+            publish(CLOSED, foodItemId);
+        }
+        liveFacetCounts.remove(foodItemId);
+    }
+    
+    /**
+     * Follow the status of an item as read from Postgres
+     */
+    public void sync(Long foodItemId, FoodItemStatus status) {
+        if (CLOSED_STATUSES.contains(status)) {
+            markClosed(foodItemId);
+            return;
+        }
+        if (closed.remove(foodItemId)) {
+            publish(OPENED, foodItemId);
+        }
+        if (status == FoodItemStatus.OUT_OF_STOCK) {
+            markSoldOut(foodItemId);
+        } else {
+            markAvailable(List.of(foodItemId));
+        }
+    }
+    
+    /**
+     * Follow a status change made by the store owner or a scheduler once it commits
+     */
+    public void syncAfterCommit(FoodItem foodItem) {
+        Long foodItemId = foodItem.getId();
+        FoodItemStatus status = foodItem.getStatus();
+        TransactionCallbacks.runAfterCommit(() -> sync(foodItemId, status));
+    }
+    
+    /**
+     * Rebuild both sets from Postgres, healing any broadcast this node missed
+     * Items in Redis stock mode can run out before their row says so; the next claim that finds no units re-marks them
+     */
+    public void resync() {
+        Set<Long> freshSoldOut = new HashSet<>(foodItemRepository.findIdsByStatus(FoodItemStatus.OUT_OF_STOCK));
+        Set<Long> freshClosed = new HashSet<>(foodItemRepository.findClosedIds(CLOSED_STATUSES, LocalDateTime.now()));
+        replace(soldOut, freshSoldOut);
+        replace(closed, freshClosed);
+        log.debug("Resynced sold-out filter: {} sold out, {} closed", freshSoldOut.size(), freshClosed.size());
+    }
+    
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            Long foodItemId = Long.valueOf(body.substring(2));
+            switch (body.substring(0, 2)) {
+                case SOLD_OUT -> soldOut.add(foodItemId);
+                case AVAILABLE -> soldOut.remove(foodItemId);
+                case CLOSED -> closed.add(foodItemId);
+                case OPENED -> closed.remove(foodItemId);
+                default -> log.warn("Ignoring unknown sold-out message: {}", body);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed sold-out message: {}", body);
+        }
+    }
+    
+    private static void replace(Set<Long> target, Set<Long> fresh) {
+        target.addAll(fresh);
+        target.retainAll(fresh);
+    }
+    
+    private void publish(String prefix, Long foodItemId) {
+        try {
+            stringRedisTemplate.convertAndSend(AppConstants.REDIS_SOLD_OUT_CHANNEL, prefix + foodItemId);
+        } catch (Exception e) {
+            // Other nodes catch up on the next resync
+            log.error("Error broadcasting sold-out change for food item {}", foodItemId, e);
+        }
+    }
+}
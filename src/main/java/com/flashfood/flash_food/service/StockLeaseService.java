@@ -0,0 +1,422 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.entity.FoodItem;
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.StockMode;
+import com.flashfood.flash_food.exception.InsufficientStockException;
+import com.flashfood.flash_food.repository.FoodItemRepository;
+import com.flashfood.flash_food.util.AppConstants;
+import com.flashfood.flash_food.util.TransactionCallbacks;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Node-local stock leases for food items in StockMode.LEASED
+ *
+ * Each app node takes a block of units out of food_items.available_quantity with one atomic UPDATE
+ * (leaseQuantity) and sells it from an in-memory counter with compare-and-set, so Postgres is touched
+ * once per lease instead of once per order. Unsold units go back to the row when the lease expires,
+ * when the sale ends, when the item leaves leased mode and when the node shuts down.
+ * Lease size shrinks to available / divisor near the end of stock so idle nodes do not strand the last units.
+ *
+ * Every lease is also recorded in Redis, so units survive a node that dies without returning them: the hash
+ * "stock:lease:node:{nodeId}" holds the unsold units per item and "stock:lease:deadlines" the deadline of each
+ * lease. Sales are written through to the hash (Redis only, never Postgres), and any node's sweep returns leases
+ * whose deadline passed. The deadline trails the lease TTL by a grace period, so a live node always returns its
+ * own leases first; a node that stalls past it finds its lease gone on the next sale and stops selling from it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockLeaseService {
+    
+    private final FoodItemRepository foodItemRepository;
+    private final SoldOutFilter soldOutFilter;
+    private final StringRedisTemplate stringRedisTemplate;
+    
+    @Value("${app.stock.lease.block-size:20}")
+    private int blockSize;
+    
+    @Value("${app.stock.lease.divisor:4}")
+    private int divisor;
+    
+    @Value("${app.stock.lease.ttl-ms:30000}")
+    private long leaseTtlMs;
+    
+    @Value("${app.stock.lease.recovery-grace-ms:15000}")
+    private long recoveryGraceMs;
+    
+    // Expired leases of other nodes returned per sweep
+    private static final int SWEEP_BATCH_SIZE = 100;
+    
+    /**
+     * KEYS[1] = node lease hash, KEYS[2] = deadlines. ARGV[1] = food item id, ARGV[2] = units,
+     * ARGV[3] = deadline member, ARGV[4] = deadline (epoch ms)
+     * Adds units to the lease and moves its deadline
+     */
+    private static final RedisScript<Long> RECORD_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+            redis.call('ZADD', KEYS[2], ARGV[4], ARGV[3])
+            return 1
+            """, Long.class);
+    
+    /**
+     * KEYS[1] = node lease hash. ARGV[1] = food item id, ARGV[2] = quantity
+     * Returns 1 when the sale was recorded, 0 when the lease is gone (returned by another node)
+     */
+    private static final RedisScript<Long> SELL_SCRIPT = new DefaultRedisScript<>("""
+            local remaining = redis.call('HGET', KEYS[1], ARGV[1])
+            if not remaining or tonumber(remaining) < tonumber(ARGV[2]) then
+                return 0
+            end
+            redis.call('HINCRBY', KEYS[1], ARGV[1], -tonumber(ARGV[2]))
+            return 1
+            """, Long.class);
+    
+    /**
+     * Same layout as SELL_SCRIPT. Returns 1 when the units were added back, 0 when the lease is gone
+     */
+    private static final RedisScript<Long> CREDIT_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then
+                return 0
+            end
+            redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+            return 1
+            """, Long.class);
+    
+    /**
+     * KEYS[1] = node lease hash, KEYS[2] = deadlines. ARGV[1] = food item id, ARGV[2] = deadline member,
+     * ARGV[3] = cutoff (epoch ms)
+     * Removes the lease if its deadline is not after the cutoff and returns its unsold units; -1 if it was renewed
+     * or is already gone
+     */
+    private static final RedisScript<Long> RETURN_SCRIPT = new DefaultRedisScript<>("""
+            local deadline = redis.call('ZSCORE', KEYS[2], ARGV[2])
+            if deadline and tonumber(deadline) > tonumber(ARGV[3]) then
+                return -1
+            end
+            local remaining = redis.call('HGET', KEYS[1], ARGV[1])
+            redis.call('HDEL', KEYS[1], ARGV[1])
+            redis.call('ZREM', KEYS[2], ARGV[2])
+            if not remaining then
+                return -1
+            end
+            return tonumber(remaining)
+            """, Long.class);
+    
+    // Owner of this node's leases in the Redis ledger; a restarted node starts afresh and its old leases are swept
+    private final String nodeId = UUID.randomUUID().toString();
+    
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+    
+    /**
+     * Take stock for the leased lines of an order from this node's leases, leasing more when needed
+     * If a later line fails, earlier lines are credited back; if the surrounding transaction rolls back, all are
+     * @param foodItems Food items by ID (used for messages and sale end time)
+     * @param quantities Requested quantity by food item ID (no duplicate IDs)
+     */
+    public void reserve(Map<Long, FoodItem> foodItems, Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        
+        Map<Long, Integer> taken = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+                take(foodItems.get(line.getKey()), line.getValue());
+                taken.put(line.getKey(), line.getValue());
+            }
+        } catch (RuntimeException e) {
+            taken.forEach(this::credit);
+            throw e;
+        }
+        
+        TransactionCallbacks.runOnRollback(() -> taken.forEach(this::credit));
+    }
+    
+    /**
+     * Put units of a cancelled order back into this node's lease once the transaction commits
+     * They are sold again from memory or returned to the row when the lease expires; without a lease they go
+     * straight back to the row
+     */
+    public void releaseAfterCommit(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> copy = new LinkedHashMap<>(quantities);
+        TransactionCallbacks.runAfterCommit(() -> copy.forEach(this::credit));
+    }
+    
+    /**
+     * Return this node's lease for an item leaving leased mode once the transaction commits
+     */
+    public void returnLeaseAfterCommit(Long foodItemId) {
+        TransactionCallbacks.runAfterCommit(() -> {
+            Lease lease = leases.get(foodItemId);
+            if (lease != null) {
+                retire(foodItemId, lease);
+            }
+        });
+    }
+    
+    /**
+     * Return this node's leases that expired or whose sale has ended, then any node's leases past their deadline
+     * @return Number of leases returned
+     */
+    public int returnExpiredLeases() {
+        long now = System.currentTimeMillis();
+        LocalDateTime nowTime = LocalDateTime.now();
+        int returned = 0;
+        
+        for (Map.Entry<Long, Lease> entry : leases.entrySet()) {
+            Lease lease = entry.getValue();
+            boolean expired = now - lease.leasedAt >= leaseTtlMs;
+            boolean saleEnded = lease.saleEndTime != null && nowTime.isAfter(lease.saleEndTime);
+            if (expired || saleEnded) {
+                retire(entry.getKey(), lease);
+                returned++;
+            }
+        }
+        
+        // Leases of nodes that died (or stalled) without returning them
+        Set<String> overdue = stringRedisTemplate.opsForZSet().rangeByScore(
+                AppConstants.REDIS_STOCK_LEASE_DEADLINES_KEY, 0, now, 0, SWEEP_BATCH_SIZE);
+        if (overdue != null) {
+            for (String member : overdue) {
+                int separator = member.lastIndexOf(':');
+                String owner = member.substring(0, separator);
+                Long foodItemId = Long.valueOf(member.substring(separator + 1));
+                if (returnLease(owner, foodItemId, now)) {
+                    log.warn("Returned overdue stock lease of food item {} from node {}", foodItemId, owner);
+                    returned++;
+                }
+            }
+        }
+        return returned;
+    }
+    
+    /**
+     * Hand every unsold unit back before the node goes away
+     */
+    @PreDestroy
+    public void returnAllLeases() {
+        leases.forEach(this::retire);
+        log.info("Returned all stock leases on shutdown");
+    }
+    
+    private void take(FoodItem foodItem, int quantity) {
+        while (true) {
+            Lease lease = leases.computeIfAbsent(foodItem.getId(), id -> new Lease());
+            if (lease.tryTake(quantity)) {
+                if (recordSale(foodItem.getId(), lease, quantity)) {
+                    return;
+                }
+                continue;
+            }
+            
+            synchronized (lease) {
+                if (lease.retired) {
+                    continue;
+                }
+                if (lease.tryTake(quantity)) {
+                    if (recordSale(foodItem.getId(), lease, quantity)) {
+                        return;
+                    }
+                    continue;
+                }
+                
+                // Top up the lease with at least what is missing for this order
+                int needed = Math.max(1, quantity - lease.remaining.get());
+                int granted = foodItemRepository.leaseQuantity(foodItem.getId(), needed, Math.max(blockSize, needed),
+                        divisor, StockMode.LEASED.getCode()).orElse(0);
+                if (granted == 0) {
+                    throw new InsufficientStockException(foodItem.getName(), quantity, lease.remaining.get());
+                }
+                
+                long leasedAt = System.currentTimeMillis();
+                try {
+                    recordLease(nodeId, foodItem.getId(), granted, leasedAt + leaseTtlMs + recoveryGraceMs);
+                } catch (RuntimeException e) {
+                    // Units nobody could recover after a crash are not leased at all
+                    restore(foodItem.getId(), granted);
+                    throw e;
+                }
+                
+                lease.remaining.addAndGet(granted);
+                lease.leasedAt = leasedAt;
+                lease.saleEndTime = foodItem.getSaleEndTime();
+                log.debug("Leased {} units of food item {} to this node", granted, foodItem.getId());
+            }
+        }
+    }
+    
+    /**
+     * Write a sale from memory through to the ledger
+     * @return false if another node already returned the lease; it is dropped here without returning it again
+     */
+    private boolean recordSale(Long foodItemId, Lease lease, int quantity) {
+        Long recorded;
+        try {
+            recorded = stringRedisTemplate.execute(SELL_SCRIPT, List.of(leaseKey(nodeId)),
+                    foodItemId.toString(), String.valueOf(quantity));
+        } catch (RuntimeException e) {
+            // The ledger may or may not have counted the sale; returns follow the ledger, so at worst units go unsold
+            lease.remaining.addAndGet(quantity);
+            throw e;
+        }
+        if (recorded != null && recorded == 1) {
+            return true;
+        }
+        
+        synchronized (lease) {
+            lease.retired = true;
+            lease.remaining.set(0);
+            leases.remove(foodItemId, lease);
+        }
+        log.warn("Stock lease of food item {} was returned by another node, leasing again", foodItemId);
+        return false;
+    }
+    
+    private void credit(Long foodItemId, int quantity) {
+        Lease lease = leases.get(foodItemId);
+        if (lease != null) {
+            synchronized (lease) {
+                if (!lease.retired) {
+                    creditLedger(foodItemId, lease, quantity);
+                    return;
+                }
+            }
+        }
+        // No lease on this node any more: the units go straight back to the row
+        restore(foodItemId, quantity);
+    }
+    
+    private void creditLedger(Long foodItemId, Lease lease, int quantity) {
+        try {
+            Long credited = stringRedisTemplate.execute(CREDIT_SCRIPT, List.of(leaseKey(nodeId)),
+                    foodItemId.toString(), String.valueOf(quantity));
+            if (credited == null || credited == 0) {
+                // Returned by another node in the meantime
+                restore(foodItemId, quantity);
+                return;
+            }
+        } catch (Exception e) {
+            // Sold from memory only: lost if the node dies first, rather than risk returning them twice
+            log.error("Error recording {} credited units of food item {} in the lease ledger", quantity, foodItemId, e);
+        }
+        lease.remaining.addAndGet(quantity);
+    }
+    
+    /**
+     * Take the lease out of service and give its unsold units, as counted by the ledger, back to the row
+     */
+    private void retire(Long foodItemId, Lease lease) {
+        synchronized (lease) {
+            if (lease.retired) {
+                return;
+            }
+            lease.retired = true;
+            lease.remaining.set(0);
+            leases.remove(foodItemId, lease);
+        }
+        
+        try {
+            returnLease(nodeId, foodItemId, Long.MAX_VALUE);
+        } catch (Exception e) {
+            // Still in the ledger; a sweep returns it once its deadline passes
+            log.error("Error returning stock lease of food item {}", foodItemId, e);
+        }
+    }
+    
+    /**
+     * Remove a lease from the ledger and give its unsold units back to the row
+     * @param expiredBefore Only if its deadline is not after this (epoch ms)
+     * @return Whether this call removed the lease
+     */
+    private boolean returnLease(String owner, Long foodItemId, long expiredBefore) {
+        Long unsold = stringRedisTemplate.execute(RETURN_SCRIPT,
+                List.of(leaseKey(owner), AppConstants.REDIS_STOCK_LEASE_DEADLINES_KEY),
+                foodItemId.toString(), deadlineMember(owner, foodItemId), String.valueOf(expiredBefore));
+        if (unsold == null || unsold < 0) {
+            return false;
+        }
+        if (unsold == 0) {
+            return true;
+        }
+        
+        try {
+            foodItemRepository.restoreQuantity(foodItemId, unsold.intValue(),
+                    FoodItemStatus.AVAILABLE, FoodItemStatus.OUT_OF_STOCK);
+            soldOutFilter.markAvailable(List.of(foodItemId));
+            log.debug("Returned {} leased units of food item {}", unsold, foodItemId);
+        } catch (Exception e) {
+            // Put the units back as already overdue; the next sweep on any node retries
+            recordLease(owner, foodItemId, unsold.intValue(), 0);
+            log.error("Error returning {} leased units of food item {}", unsold, foodItemId, e);
+        }
+        return true;
+    }
+    
+    private void recordLease(String owner, Long foodItemId, int units, long deadline) {
+        stringRedisTemplate.execute(RECORD_SCRIPT,
+                List.of(leaseKey(owner), AppConstants.REDIS_STOCK_LEASE_DEADLINES_KEY),
+                foodItemId.toString(), String.valueOf(units), deadlineMember(owner, foodItemId),
+                String.valueOf(deadline));
+    }
+    
+    /**
+     * Give units straight back to the row (no lease to hold them)
+     */
+    private void restore(Long foodItemId, int quantity) {
+        try {
+            foodItemRepository.restoreQuantity(foodItemId, quantity, FoodItemStatus.AVAILABLE, FoodItemStatus.OUT_OF_STOCK);
+            soldOutFilter.markAvailable(List.of(foodItemId));
+        } catch (Exception e) {
+            log.error("Error returning {} leased units of food item {}", quantity, foodItemId, e);
+        }
+    }
+    
+    private static String leaseKey(String owner) {
+        return AppConstants.REDIS_STOCK_LEASE_PREFIX + owner;
+    }
+    
+    private static String deadlineMember(String owner, Long foodItemId) {
+        return owner + ":" + foodItemId;
+    }
+    
+    private static final class Lease {
+        private final AtomicInteger remaining = new AtomicInteger();
+        private volatile long leasedAt = System.currentTimeMillis();
+        private volatile LocalDateTime saleEndTime;
+        private boolean retired;
+        
+        /**
+         * Lock-free sell from the block; fails without side effects when not enough units remain
+         */
+        private boolean tryTake(int quantity) {
+            int current;
+            do {
+                current = remaining.get();
+                if (current < quantity) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(current, current - quantity));
+            return true;
+        }
+    }
+}
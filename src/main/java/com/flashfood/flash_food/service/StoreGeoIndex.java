@@ -0,0 +1,161 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.repository.StoreRepository;
+import com.flashfood.flash_food.util.AppConstants;
+import com.flashfood.flash_food.util.DistanceCursor;
+import com.flashfood.flash_food.util.GeoGrid;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Node-local spatial index of active stores for nearby and nearest-store queries
+ *
+ * Stores sit in a GeoGrid of app.geo.cell-size-degrees cells, so a query answers with IDs and haversine distances
+ * without a Redis round trip. Until the first build finishes queries return empty and callers fall back to Redis GEO.
+ *
+ * Changes made on this node are applied after commit and broadcast on "geo:changed" (see NodeBroadcast); other nodes
+ * reload the store's location from Postgres. The index is also rebuilt periodically, which heals missed broadcasts.
+ *
+ * Metrics: flashfood.geo.stores is the index size, flashfood.geo.latency (query) times lookups.
+ */
+@Slf4j
+@Service
+public class StoreGeoIndex {
+    
+    private static final int LOAD_BATCH_SIZE = 10_000;
+    
+    private final StoreRepository storeRepository;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final NodeBroadcast broadcast;
+    private final RebuildReplay rebuildReplay = new RebuildReplay();
+    private final double cellSizeDegrees;
+    private final Timer radiusTimer;
+    private final Timer nearestTimer;
+    
+    // Null until the first build
+    private volatile GeoGrid grid;
+    
+    public StoreGeoIndex(StoreRepository storeRepository,
+                         StringRedisTemplate stringRedisTemplate,
+                         RedisMessageListenerContainer listenerContainer,
+                         MeterRegistry meterRegistry,
+                         @Value("${app.geo.cell-size-degrees:0.02}") double cellSizeDegrees) {
+        this.storeRepository = storeRepository;
+        this.listenerContainer = listenerContainer;
+        this.broadcast = new NodeBroadcast("store geo index", AppConstants.REDIS_GEO_CHANNEL, stringRedisTemplate,
+                storeId -> refresh(List.of(Long.valueOf(storeId))));
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.radiusTimer = Timer.builder("flashfood.geo.latency")
+                .description("Time to answer one store location query from memory")
+                .tag("query", "radius")
+                .register(meterRegistry);
+        this.nearestTimer = Timer.builder("flashfood.geo.latency")
+                .description("Time to answer one store location query from memory")
+                .tag("query", "nearest")
+                .register(meterRegistry);
+        meterRegistry.gauge("flashfood.geo.stores", this, index -> index.grid == null ? 0 : index.grid.size());
+    }
+    
+    @PostConstruct
+    public void subscribe() {
+        broadcast.subscribe(listenerContainer);
+    }
+    
+    /**
+     * Up to limit active stores within the radius, nearest first; empty until the index is built
+     */
+    public Optional<List<GeoGrid.Hit>> withinRadius(double latitude, double longitude, double radiusKm, int limit) {
+        GeoGrid current = grid;
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.of(radiusTimer.record(() -> current.withinRadius(latitude, longitude, radiusKm, limit)));
+    }
+    
+    /**
+     * Up to limit active stores within the radius after the cursor, nearest first; empty until the index is built
+     */
+    public Optional<List<GeoGrid.Hit>> withinRadiusAfter(double latitude, double longitude, double radiusKm,
+                                                         DistanceCursor after, int limit) {
+        GeoGrid current = grid;
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.of(radiusTimer.record(
+                () -> current.withinRadius(latitude, longitude, radiusKm, after::isBefore, limit)));
+    }
+    
+    /**
+     * Up to limit active stores nearest the point within maxRadiusKm, nearest first; empty until the index is built
+     */
+    public Optional<List<GeoGrid.Hit>> nearest(double latitude, double longitude, int limit, double maxRadiusKm) {
+        GeoGrid current = grid;
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.of(nearestTimer.record(() -> current.nearest(latitude, longitude, limit, maxRadiusKm)));
+    }
+    
+    /**
+     * Reload every active store location from Postgres
+     * Changes applied while it loads are replayed on the new grid
+     */
+    public void rebuild() {
+        Set<Long> replay = rebuildReplay.rebuild(this::load, fresh -> grid = fresh);
+        log.debug("Rebuilt store geo index with {} stores", grid.size());
+        if (!replay.isEmpty()) {
+            refresh(replay);
+        }
+    }
+    
+    /**
+     * Re-read a store's location on this node once the surrounding transaction commits, then tell the other nodes
+     * Stores that are no longer active, or were deleted, leave the index
+     */
+    public void refreshAfterCommit(Long storeId) {
+        broadcast.applyAfterCommit(storeId.toString());
+    }
+    
+    private GeoGrid load() {
+        GeoGrid fresh = new GeoGrid(cellSizeDegrees);
+        long afterId = 0;
+        List<StoreRepository.LocationView> batch;
+        do {
+            batch = storeRepository.findActiveStoresWithCoordinates(afterId, Limit.of(LOAD_BATCH_SIZE));
+            batch.forEach(location -> fresh.put(location.getId(), location.getLatitude(), location.getLongitude()));
+            if (!batch.isEmpty()) {
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+        return fresh;
+    }
+    
+    private void refresh(Collection<Long> storeIds) {
+        List<StoreRepository.LocationView> locations = storeRepository.findActiveLocationsByIds(storeIds);
+        rebuildReplay.update(storeIds, () -> {
+            GeoGrid current = grid;
+            if (current == null) {
+                return;
+            }
+            Set<Long> missing = new HashSet<>(storeIds);
+            for (StoreRepository.LocationView location : locations) {
+                current.put(location.getId(), location.getLatitude(), location.getLongitude());
+                missing.remove(location.getId());
+            }
+            missing.forEach(current::remove);
+        });
+    }
+}
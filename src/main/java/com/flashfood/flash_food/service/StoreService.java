@@ -1,6 +1,7 @@
 package com.flashfood.flash_food.service;
 
 import com.flashfood.flash_food.dto.request.CreateStoreRequest;
+import com.flashfood.flash_food.dto.response.CursorPageResponse;
 import com.flashfood.flash_food.dto.response.StoreResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -47,6 +48,14 @@ public interface StoreService {
      */
     Page<StoreResponse> findAll(Pageable pageable);
     
+    /**
+     * Find all stores with keyset pagination, newest first
+     * @param cursor Token from the previous slice, or null for the first one
+     * @param size Slice size
+     * @return Slice of stores and the cursor of the next one
+     */
+    CursorPageResponse<StoreResponse> scrollAll(String cursor, int size);
+    
     /**
      * Find stores by type
      * @param type Store type (as string from client)
@@ -63,15 +72,45 @@ public interface StoreService {
      */
     Page<StoreResponse> findByStatus(String status, Pageable pageable);
     
+    /**
+     * Search active stores by name, address or description, best match first
+     * Diacritics and case are ignored; partial and slightly misspelled words still match
+     * @param keyword Search keyword
+     * @param pageable Pagination parameters (sort is ignored)
+     * @return Page of matching stores
+     */
+    Page<StoreResponse> searchStores(String keyword, Pageable pageable);
+    
     /**
      * Find nearby stores within radius
      * @param latitude User latitude
      * @param longitude User longitude
-     * @param radiusInKm Radius in kilometers
-     * @return List of nearby stores
+     * @param radiusInKm Radius in kilometers, capped at app.geo.max-radius-km
+     * @return Up to app.geo.max-results nearby stores, nearest first, with distance in meters
      */
     List<StoreResponse> findNearbyStores(Double latitude, Double longitude, Double radiusInKm);
     
+    /**
+     * Scroll nearby stores, nearest first, with keyset (cursor) pagination
+     * @param latitude User latitude
+     * @param longitude User longitude
+     * @param radiusInKm Radius in kilometers, capped at app.geo.max-radius-km
+     * @param cursor nextCursor of the previous slice, or null for the first slice
+     * @param size Slice size
+     * @return Slice of nearby stores with distance in meters; the listing ends after app.geo.max-results stores
+     */
+    CursorPageResponse<StoreResponse> scrollNearbyStores(Double latitude, Double longitude, Double radiusInKm,
+                                                         String cursor, int size);
+    
+    /**
+     * Find the active stores nearest a location
+     * @param latitude User latitude
+     * @param longitude User longitude
+     * @param limit Maximum number of stores
+     * @return Up to limit stores within app.geo.nearest-max-radius-km, nearest first, with distance in meters
+     */
+    List<StoreResponse> findNearestStores(Double latitude, Double longitude, int limit);
+    
     /**
      * Find stores by owner (current logged-in user)
      * @return List of stores owned by current user
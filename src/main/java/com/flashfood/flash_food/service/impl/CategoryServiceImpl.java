@@ -2,11 +2,14 @@ package com.flashfood.flash_food.service.impl;
 
 import com.flashfood.flash_food.dto.request.CategoryRequest;
 import com.flashfood.flash_food.dto.response.CategoryResponse;
+import com.flashfood.flash_food.dto.response.FacetCountsResponse;
 import com.flashfood.flash_food.entity.Category;
 import com.flashfood.flash_food.exception.DuplicateResourceException;
 import com.flashfood.flash_food.exception.ResourceNotFoundException;
 import com.flashfood.flash_food.repository.CategoryRepository;
 import com.flashfood.flash_food.service.CategoryService;
+import com.flashfood.flash_food.service.CategoryTree;
+import com.flashfood.flash_food.service.LiveFacetCounts;
 import com.flashfood.flash_food.util.EntityMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -17,10 +20,15 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.text.Normalizer;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * Implementation of CategoryService
+ * Reads are served from the in-memory CategoryTree; writes go to Postgres and publish a new tree version on commit
+ * Checks that guard writes (uniqueness, children) still query Postgres, since the tree lags behind other nodes' writes
+ * Live item counts come from LiveFacetCounts and are rolled up through the tree
  */
 @Service
 @Slf4j
@@ -29,6 +37,8 @@ import java.util.stream.Collectors;
 public class CategoryServiceImpl implements CategoryService {
     
     private final CategoryRepository categoryRepository;
+    private final CategoryTree categoryTree;
+    private final LiveFacetCounts liveFacetCounts;
     private final EntityMapper entityMapper;
     
     @Override
@@ -44,10 +54,13 @@ public class CategoryServiceImpl implements CategoryService {
             slug = generateSlug(slug);
         }
         
-        // Check if slug already exists
+        // Check if slug or name already exists (against Postgres: the tree may not have seen a concurrent write yet)
         if (categoryRepository.existsBySlug(slug)) {
             throw new DuplicateResourceException("Category with slug '" + slug + "' already exists");
         }
+        if (categoryRepository.existsByName(request.getName())) {
+            throw new DuplicateResourceException("Category with name '" + request.getName() + "' already exists");
+        }
         
         Category category = Category.builder()
                 .name(request.getName())
@@ -66,6 +79,7 @@ public class CategoryServiceImpl implements CategoryService {
         }
         
         Category savedCategory = categoryRepository.save(category);
+        categoryTree.invalidateAfterCommit();
         log.info("Category created successfully with id: {}", savedCategory.getId());
         
         return entityMapper.toCategoryResponse(savedCategory);
@@ -87,10 +101,13 @@ public class CategoryServiceImpl implements CategoryService {
             newSlug = generateSlug(newSlug);
         }
         
-        // Check slug uniqueness if changed
+        // Check slug and name uniqueness if changed
         if (!category.getSlug().equals(newSlug) && categoryRepository.existsBySlug(newSlug)) {
             throw new DuplicateResourceException("Category with slug '" + newSlug + "' already exists");
         }
+        if (!category.getName().equals(request.getName()) && categoryRepository.existsByName(request.getName())) {
+            throw new DuplicateResourceException("Category with name '" + request.getName() + "' already exists");
+        }
         
         // Update fields
         category.setName(request.getName());
@@ -112,6 +129,7 @@ public class CategoryServiceImpl implements CategoryService {
         }
         
         Category updatedCategory = categoryRepository.save(category);
+        categoryTree.invalidateAfterCommit();
         log.info("Category updated successfully with id: {}", updatedCategory.getId());
         
         return entityMapper.toCategoryResponse(updatedCategory);
@@ -134,6 +152,7 @@ public class CategoryServiceImpl implements CategoryService {
         // This would require injecting FoodItemRepository
         
         categoryRepository.delete(category);
+        categoryTree.invalidateAfterCommit();
         log.info("Category deleted successfully with id: {}", id);
     }
     
@@ -141,48 +160,48 @@ public class CategoryServiceImpl implements CategoryService {
     public CategoryResponse findById(Long id) {
         log.debug("Finding category by id: {}", id);
         
-        Category category = categoryRepository.findById(id)
+        CategoryTree.Snapshot tree = categoryTree.current();
+        return tree.findById(id)
+                .map(withLiveItemCount(tree))
                 .orElseThrow(() -> new ResourceNotFoundException("Category not found with id: " + id));
-        
-        return entityMapper.toCategoryResponse(category);
     }
     
     @Override
     public CategoryResponse findBySlug(String slug) {
         log.debug("Finding category by slug: {}", slug);
         
-        Category category = categoryRepository.findBySlug(slug)
+        CategoryTree.Snapshot tree = categoryTree.current();
+        return tree.findBySlug(slug)
+                .map(withLiveItemCount(tree))
                 .orElseThrow(() -> new ResourceNotFoundException("Category not found with slug: " + slug));
-        
-        return entityMapper.toCategoryResponse(category);
     }
     
     @Override
     public Page<CategoryResponse> findAll(Pageable pageable) {
         log.debug("Finding all categories with pagination: {}", pageable);
         
-        Page<Category> categories = categoryRepository.findAll(pageable);
-        return categories.map(entityMapper::toCategoryResponse);
+        CategoryTree.Snapshot tree = categoryTree.current();
+        return tree.findAll(pageable).map(withLiveItemCount(tree));
     }
     
     @Override
     public List<CategoryResponse> findActiveCategories() {
         log.debug("Finding all active categories");
         
-        List<Category> categories = categoryRepository.findByIsActiveTrueOrderByDisplayOrderAsc();
-        return categories.stream()
-                .map(entityMapper::toCategoryResponse)
-                .collect(Collectors.toList());
+        CategoryTree.Snapshot tree = categoryTree.current();
+        return tree.active().stream()
+                .map(withLiveItemCount(tree))
+                .toList();
     }
     
     @Override
     public List<CategoryResponse> findRootCategories() {
         log.debug("Finding root categories");
         
-        List<Category> categories = categoryRepository.findByParentIsNullAndIsActiveTrueOrderByDisplayOrderAsc();
-        return categories.stream()
-                .map(entityMapper::toCategoryResponse)
-                .collect(Collectors.toList());
+        CategoryTree.Snapshot tree = categoryTree.current();
+        return tree.activeRoots().stream()
+                .map(withLiveItemCount(tree))
+                .toList();
     }
     
     @Override
@@ -190,14 +209,41 @@ public class CategoryServiceImpl implements CategoryService {
         log.debug("Finding child categories for parent id: {}", parentId);
         
         // Verify parent exists
-        if (!categoryRepository.existsById(parentId)) {
+        CategoryTree.Snapshot tree = categoryTree.current();
+        if (tree.findById(parentId).isEmpty()) {
             throw new ResourceNotFoundException("Parent category not found with id: " + parentId);
         }
         
-        List<Category> categories = categoryRepository.findByParentIdAndIsActiveTrueOrderByDisplayOrderAsc(parentId);
-        return categories.stream()
-                .map(entityMapper::toCategoryResponse)
-                .collect(Collectors.toList());
+        return tree.activeChildren(parentId).stream()
+                .map(withLiveItemCount(tree))
+                .toList();
+    }
+    
+    @Override
+    public FacetCountsResponse findFacetCounts() {
+        log.debug("Finding facet counts");
+        
+        CategoryTree.Snapshot tree = categoryTree.current();
+        return FacetCountsResponse.builder()
+                .categories(liveFacetCounts.countsByCategory().map(tree::rollUp).orElse(Map.of()))
+                .stores(liveFacetCounts.countsByStore().orElse(Map.of()))
+                .cells(liveFacetCounts.countsByCell().orElse(Map.of()))
+                .build();
+    }
+    
+    /**
+     * Copy tree responses with their rolled-up live item count (one Redis read per request)
+     * Responses are returned as they are when the counts cannot be read
+     */
+    private Function<CategoryResponse, CategoryResponse> withLiveItemCount(CategoryTree.Snapshot tree) {
+        Optional<Map<Long, Long>> counts = liveFacetCounts.countsByCategory().map(tree::rollUp);
+        if (counts.isEmpty()) {
+            return Function.identity();
+        }
+        Map<Long, Long> rolledUp = counts.get();
+        return category -> category.toBuilder()
+                .liveItemCount(rolledUp.getOrDefault(category.getId(), 0L))
+                .build();
     }
     
     /**
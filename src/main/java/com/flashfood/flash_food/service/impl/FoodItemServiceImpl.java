@@ -1,26 +1,42 @@
 package com.flashfood.flash_food.service.impl;
 
+import com.flashfood.flash_food.dto.request.FlashSaleFilter;
 import com.flashfood.flash_food.dto.request.FoodItemRequest;
+import com.flashfood.flash_food.dto.response.CursorPageResponse;
 import com.flashfood.flash_food.dto.response.FoodItemResponse;
 import com.flashfood.flash_food.entity.*;
 import com.flashfood.flash_food.exception.InvalidOperationException;
 import com.flashfood.flash_food.exception.ResourceNotFoundException;
+import com.flashfood.flash_food.util.AppConstants;
 import com.flashfood.flash_food.util.EntityMapper;
+import com.flashfood.flash_food.util.KeysetCursor;
 import com.flashfood.flash_food.repository.CategoryRepository;
 import com.flashfood.flash_food.repository.FoodItemRepository;
 import com.flashfood.flash_food.repository.StoreRepository;
 import com.flashfood.flash_food.service.AuthenticationService;
+import com.flashfood.flash_food.service.FlashSaleCatalog;
 import com.flashfood.flash_food.service.FoodItemService;
+import com.flashfood.flash_food.service.LiveFacetCounts;
+import com.flashfood.flash_food.service.RedisStockService;
+import com.flashfood.flash_food.service.SearchIndex;
+import com.flashfood.flash_food.service.SoldOutFilter;
+import com.flashfood.flash_food.service.StockLeaseService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
 
 /**
  * Implementation of FoodItemService
@@ -36,6 +52,12 @@ public class FoodItemServiceImpl implements FoodItemService {
     private final StoreRepository storeRepository;
     private final CategoryRepository categoryRepository;
     private final AuthenticationService authenticationService;
+    private final RedisStockService redisStockService;
+    private final StockLeaseService stockLeaseService;
+    private final SoldOutFilter soldOutFilter;
+    private final FlashSaleCatalog flashSaleCatalog;
+    private final LiveFacetCounts liveFacetCounts;
+    private final SearchIndex searchIndex;
     private final EntityMapper entityMapper;
 
     @Override
@@ -87,6 +109,9 @@ public class FoodItemServiceImpl implements FoodItemService {
         foodItem.setIsExpired(false);
 
         FoodItem savedItem = foodItemRepository.save(foodItem);
+        flashSaleCatalog.refreshAfterCommit(savedItem.getId());
+        liveFacetCounts.addAfterCommit(savedItem);
+        searchIndex.refreshFoodItemAfterCommit(savedItem.getId());
         log.info("Food item created successfully with ID: {}", savedItem.getId());
 
         return entityMapper.toFoodItemResponse(savedItem);
@@ -94,6 +119,7 @@ public class FoodItemServiceImpl implements FoodItemService {
 
     @Override
     @Transactional
+    @CacheEvict(cacheNames = AppConstants.CACHE_FOOD_ITEMS, key = "#id")
     public FoodItemResponse updateFoodItem(Long id, FoodItemRequest request) {
         log.info("Updating food item with ID: {}", id);
 
@@ -132,6 +158,11 @@ public class FoodItemServiceImpl implements FoodItemService {
         int quantityDiff = request.getQuantity() - foodItem.getTotalQuantity();
         foodItem.setTotalQuantity(request.getQuantity());
         foodItem.setAvailableQuantity(foodItem.getAvailableQuantity() + quantityDiff);
+
+        // Redis ledger holds the live quantity for Redis stock mode
+        if (foodItem.getStockMode() == StockMode.REDIS) {
+            redisStockService.adjustAfterCommit(foodItem.getId(), quantityDiff);
+        }
         
         // Ensure available quantity is not negative
         if (foodItem.getAvailableQuantity() < 0) {
@@ -145,6 +176,9 @@ public class FoodItemServiceImpl implements FoodItemService {
         updateStatusBasedOnConditions(foodItem);
 
         FoodItem updatedItem = foodItemRepository.save(foodItem);
+        soldOutFilter.syncAfterCommit(updatedItem);
+        flashSaleCatalog.refreshAfterCommit(updatedItem.getId());
+        searchIndex.refreshFoodItemAfterCommit(updatedItem.getId());
         log.info("Food item updated successfully with ID: {}", updatedItem.getId());
 
         return entityMapper.toFoodItemResponse(updatedItem);
@@ -152,6 +186,7 @@ public class FoodItemServiceImpl implements FoodItemService {
 
     @Override
     @Transactional
+    @CacheEvict(cacheNames = AppConstants.CACHE_FOOD_ITEMS, key = "#id")
     public void deleteFoodItem(Long id) {
         log.info("Deleting food item with ID: {}", id);
 
@@ -161,15 +196,19 @@ public class FoodItemServiceImpl implements FoodItemService {
         // Soft delete by setting status to DELETED
         foodItem.setStatus(FoodItemStatus.DELETED);
         foodItemRepository.save(foodItem);
+        soldOutFilter.syncAfterCommit(foodItem);
+        flashSaleCatalog.refreshAfterCommit(foodItem.getId());
+        searchIndex.refreshFoodItemAfterCommit(foodItem.getId());
 
         log.info("Food item deleted successfully with ID: {}", id);
     }
 
     @Override
+    @Cacheable(cacheNames = AppConstants.CACHE_FOOD_ITEMS, key = "#id", sync = true)
     public FoodItemResponse findById(Long id) {
         log.debug("Finding food item with ID: {}", id);
 
-        FoodItem foodItem = foodItemRepository.findById(id)
+        FoodItem foodItem = foodItemRepository.findWithStoreAndCategoryById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Food item not found with ID: " + id));
 
         return entityMapper.toFoodItemResponse(foodItem);
@@ -179,35 +218,41 @@ public class FoodItemServiceImpl implements FoodItemService {
     public Page<FoodItemResponse> findAll(Pageable pageable) {
         log.debug("Finding all food items with pagination");
 
-        Page<FoodItem> foodItems = foodItemRepository.findAll(pageable);
-        return foodItems.map(entityMapper::toFoodItemResponse);
+        return foodItemRepository.findAllResponses(pageable);
+    }
+
+    @Override
+    public CursorPageResponse<FoodItemResponse> scrollAll(String cursor, int size) {
+        log.debug("Scrolling all food items");
+
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        List<FoodItemResponse> foodItems = foodItemRepository.findAllBefore(position.getCreatedAt(), position.getId(),
+                KeysetCursor.limit(size));
+
+        return KeysetCursor.page(foodItems, size, FoodItemResponse::getCreatedAt, FoodItemResponse::getId,
+                Function.identity());
     }
 
     @Override
     public Page<FoodItemResponse> findByStore(Long storeId, Pageable pageable) {
         log.debug("Finding food items for store ID: {}", storeId);
 
-        Store store = storeRepository.findById(storeId)
-                .orElseThrow(() -> new ResourceNotFoundException("Store not found with ID: " + storeId));
+        if (!storeRepository.existsById(storeId)) {
+            throw new ResourceNotFoundException("Store not found with ID: " + storeId);
+        }
 
-        Page<FoodItem> foodItems = foodItemRepository.findAll(pageable)
-                .map(item -> item.getStore().equals(store) ? item : null)
-                .map(item -> item);
-        
-        // Better approach: use custom repository method
-        return foodItemRepository.findAll(pageable)
-                .map(entityMapper::toFoodItemResponse);
+        return foodItemRepository.findPageByStore(storeId, FoodItemStatus.DELETED, pageable);
     }
 
     @Override
     public Page<FoodItemResponse> findByCategory(Long categoryId, Pageable pageable) {
         log.debug("Finding food items for category ID: {}", categoryId);
 
-        Category category = categoryRepository.findById(categoryId)
-                .orElseThrow(() -> new ResourceNotFoundException("Category not found with ID: " + categoryId));
+        if (!categoryRepository.existsById(categoryId)) {
+            throw new ResourceNotFoundException("Category not found with ID: " + categoryId);
+        }
 
-        return foodItemRepository.findAll(pageable)
-                .map(entityMapper::toFoodItemResponse);
+        return foodItemRepository.findPageByCategory(categoryId, FoodItemStatus.DELETED, pageable);
     }
 
     @Override
@@ -221,72 +266,39 @@ public class FoodItemServiceImpl implements FoodItemService {
             throw new InvalidOperationException("Invalid food item status: " + status);
         }
 
-        Page<FoodItem> foodItems = foodItemRepository.findAll(pageable)
-                .map(item -> item.getStatus().equals(foodItemStatus) ? item : null)
-                .map(item -> item);
-
-        return foodItems.map(entityMapper::toFoodItemResponse);
+        return foodItemRepository.findPageByStatus(foodItemStatus, pageable);
     }
 
     @Override
-    public Page<FoodItemResponse> findAvailableFoodItems(Pageable pageable) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // In-memory only, no connection needed
+    public Page<FoodItemResponse> findAvailableFoodItems(FlashSaleFilter filter, Pageable pageable) {
         log.debug("Finding available food items");
 
-        LocalDateTime now = LocalDateTime.now();
-
-        return foodItemRepository.findAll(pageable)
-                .map(item -> {
-                    if (item.getStatus() == FoodItemStatus.AVAILABLE 
-                            && item.getAvailableQuantity() > 0
-                            && !item.getIsExpired()
-                            && item.getSaleStartTime().isBefore(now)
-                            && item.getSaleEndTime().isAfter(now)) {
-                        return item;
-                    }
-                    return null;
-                })
-                .map(entityMapper::toFoodItemResponse);
+        return flashSaleCatalog.findAvailable(filter, pageable);
     }
 
     @Override
-    public Page<FoodItemResponse> findFlashSaleFoodItems(Pageable pageable) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // In-memory only, no connection needed
+    public Page<FoodItemResponse> findFlashSaleFoodItems(FlashSaleFilter filter, Pageable pageable) {
         log.debug("Finding flash sale food items");
 
-        LocalDateTime now = LocalDateTime.now();
-
-        return foodItemRepository.findAll(pageable)
-                .map(item -> {
-                    if (item.getStatus() == FoodItemStatus.AVAILABLE 
-                            && item.getAvailableQuantity() > 0
-                            && !item.getIsExpired()
-                            && !item.getSaleStartTime().isAfter(now)
-                            && !item.getSaleEndTime().isBefore(now)) {
-                        return item;
-                    }
-                    return null;
-                })
-                .map(entityMapper::toFoodItemResponse);
+        return flashSaleCatalog.findFlashSale(filter, pageable);
     }
 
     @Override
     public Page<FoodItemResponse> searchFoodItems(String keyword, Pageable pageable) {
         log.debug("Searching food items with keyword: {}", keyword);
 
-        String lowerKeyword = keyword.toLowerCase();
-
-        return foodItemRepository.findAll(pageable)
-                .map(item -> {
-                    if (item.getName().toLowerCase().contains(lowerKeyword) 
-                            || (item.getDescription() != null && item.getDescription().toLowerCase().contains(lowerKeyword))) {
-                        return item;
-                    }
-                    return null;
-                })
-                .map(entityMapper::toFoodItemResponse);
+        // Ranked in memory, then one query for the page
+        Page<Long> ids = searchIndex.searchFoodItems(keyword, pageable);
+        List<FoodItemResponse> rows = ids.isEmpty() ? List.of() : foodItemRepository.findResponsesByIds(ids.getContent());
+        return new PageImpl<>(SearchIndex.inRankOrder(ids.getContent(), rows, FoodItemResponse::getId),
+                pageable, ids.getTotalElements());
     }
 
     @Override
     @Transactional
+    @CacheEvict(cacheNames = AppConstants.CACHE_FOOD_ITEMS, key = "#id")
     public FoodItemResponse updateStatus(Long id, String status) {
         log.info("Updating status for food item ID: {} to: {}", id, status);
 
@@ -303,13 +315,81 @@ public class FoodItemServiceImpl implements FoodItemService {
 
         foodItem.setStatus(newStatus);
         FoodItem updatedItem = foodItemRepository.save(foodItem);
+        soldOutFilter.syncAfterCommit(updatedItem);
+        flashSaleCatalog.refreshAfterCommit(updatedItem.getId());
+        searchIndex.refreshFoodItemAfterCommit(updatedItem.getId());
 
         log.info("Food item status updated successfully");
         return entityMapper.toFoodItemResponse(updatedItem);
     }
 
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = AppConstants.CACHE_FOOD_ITEMS, key = "#id")
+    public FoodItemResponse updateStockMode(Long id, String stockMode) {
+        log.info("Updating stock mode for food item ID: {} to: {}", id, stockMode);
+
+        // Lock the row so no database-mode order decrements it while switching
+        FoodItem foodItem = foodItemRepository.findByIdWithLock(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Food item not found with ID: " + id));
+
+        StockMode newMode;
+        try {
+            newMode = StockMode.fromDisplayName(stockMode);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidOperationException("Invalid stock mode: " + stockMode);
+        }
+
+        StockMode currentMode = foodItem.getStockMode() != null ? foodItem.getStockMode() : StockMode.DATABASE;
+        if (currentMode == newMode) {
+            return entityMapper.toFoodItemResponse(foodItem);
+        }
+
+        if (newMode == StockMode.REDIS) {
+            redisStockService.openAfterCommit(foodItem.getId(), foodItem.getAvailableQuantity());
+        } else if (currentMode == StockMode.REDIS) {
+            // Take the live quantity back from Redis before Postgres becomes the source of truth again
+            // The ledger is closed after commit; units it sells until then are taken from the row afterwards
+            Integer snapshot = redisStockService.readStock(List.of(foodItem.getId())).get(foodItem.getId());
+            if (snapshot != null) {
+                foodItem.setAvailableQuantity(snapshot);
+                updateStatusBasedOnConditions(foodItem);
+            }
+            redisStockService.closeAfterCommit(foodItem.getId(),
+                    remaining -> takeUnitsSoldWhileClosing(foodItem.getId(), snapshot, remaining));
+        }
+
+        // Hand back this node's unsold lease; other nodes return theirs when their leases expire
+        if (currentMode == StockMode.LEASED) {
+            stockLeaseService.returnLeaseAfterCommit(foodItem.getId());
+        }
+
+        foodItem.setStockMode(newMode);
+        FoodItem updatedItem = foodItemRepository.save(foodItem);
+        soldOutFilter.syncAfterCommit(updatedItem);
+        flashSaleCatalog.refreshAfterCommit(updatedItem.getId());
+
+        log.info("Food item {} stock mode switched from {} to {}", id, currentMode, newMode);
+        return entityMapper.toFoodItemResponse(updatedItem);
+    }
+
     // ===== Helper Methods =====
 
+    /**
+     * Take the units the Redis ledger sold between the stock mode switch reading it and closing it
+     */
+    private void takeUnitsSoldWhileClosing(Long foodItemId, Integer snapshot, Integer remaining) {
+        if (snapshot == null || remaining == null || remaining >= snapshot) {
+            return;
+        }
+        int sold = snapshot - remaining;
+        if (foodItemRepository.deductQuantity(foodItemId, sold, FoodItemStatus.AVAILABLE,
+                FoodItemStatus.OUT_OF_STOCK) == 0) {
+            log.warn("Food item {} sold {} units from Redis while leaving Redis mode, more than the database has left",
+                    foodItemId, sold);
+        }
+    }
+
     /**
      * Calculate discount percentage
      */
@@ -355,8 +435,8 @@ public class FoodItemServiceImpl implements FoodItemService {
             return;
         }
         
-        // Check stock
-        if (foodItem.getAvailableQuantity() <= 0) {
+        // Check stock (a leased row reads 0 while nodes still sell from their leases)
+        if (foodItem.getAvailableQuantity() <= 0 && foodItem.getStockMode() != StockMode.LEASED) {
             foodItem.setStatus(FoodItemStatus.OUT_OF_STOCK);
             return;
         }
@@ -1,26 +1,52 @@
 package com.flashfood.flash_food.service.impl;
 
+import com.flashfood.flash_food.dto.message.OrderExpiryMessage;
+import com.flashfood.flash_food.dto.request.BulkOrderStatusRequest;
 import com.flashfood.flash_food.dto.request.CreateOrderRequest;
+import com.flashfood.flash_food.dto.response.BulkOrderStatusResponse;
+import com.flashfood.flash_food.dto.response.CursorPageResponse;
 import com.flashfood.flash_food.dto.response.OrderResponse;
+import com.flashfood.flash_food.dto.response.StoreResponse;
 import com.flashfood.flash_food.entity.*;
 import com.flashfood.flash_food.exception.*;
 import com.flashfood.flash_food.util.EntityMapper;
+import com.flashfood.flash_food.util.KeysetCursor;
+import com.flashfood.flash_food.util.OrderNumberGenerator;
 import com.flashfood.flash_food.repository.*;
 import com.flashfood.flash_food.service.AuthenticationService;
+import com.flashfood.flash_food.service.BatchedStockService;
+import com.flashfood.flash_food.service.MessagePublisher;
 import com.flashfood.flash_food.service.OrderService;
+import com.flashfood.flash_food.service.RedisStockService;
+import com.flashfood.flash_food.service.SoldOutFilter;
+import com.flashfood.flash_food.service.StockLeaseService;
+import com.flashfood.flash_food.service.StoreService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -38,23 +64,75 @@ public class OrderServiceImpl implements OrderService {
     private final OrderItemRepository orderItemRepository;
     private final FoodItemRepository foodItemRepository;
     private final StoreRepository storeRepository;
+    private final StoreService storeService;
     private final PaymentRepository paymentRepository;
     private final AuthenticationService authenticationService;
+    private final RedisStockService redisStockService;
+    private final BatchedStockService batchedStockService;
+    private final StockLeaseService stockLeaseService;
+    private final SoldOutFilter soldOutFilter;
     private final EntityMapper entityMapper;
+    private final OrderNumberGenerator orderNumberGenerator;
+    private final MessagePublisher messagePublisher;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.order.reservation-minutes:15}")
+    private long reservationMinutes;
 
     @Override
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // Opens its own transaction once batched stock is claimed
     public OrderResponse createOrder(CreateOrderRequest request) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Set<StockMode> stockModes = EnumSet.noneOf(StockMode.class);
+        String outcome = "failure";
+        try {
+            OrderResponse response = placeOrder(request, stockModes);
+            outcome = "success";
+            return response;
+        } catch (InsufficientStockException e) {
+            outcome = "insufficient_stock";
+            throw e;
+        } finally {
+            sample.stop(orderLatencyTimer(stockModes, outcome));
+        }
+    }
+
+    private OrderResponse placeOrder(CreateOrderRequest request, Set<StockMode> usedStockModes) {
         log.info("Creating new order for store ID: {}", request.getStoreId());
 
+        // Resolve stock mode per item without loading or locking rows
+        Map<Long, StockMode> stockModes = resolveStockModes(request);
+        usedStockModes.addAll(stockModes.values());
+
+        // Normalize lines: merge duplicate food items and sort by id, grouped by stock mode
+        Map<StockMode, Map<Long, Integer>> quantitiesByMode = new EnumMap<>(StockMode.class);
+        for (CreateOrderRequest.OrderItemRequest itemRequest : request.getItems()) {
+            quantitiesByMode.computeIfAbsent(stockModes.get(itemRequest.getFoodItemId()), mode -> new TreeMap<>())
+                    .merge(itemRequest.getFoodItemId(), itemRequest.getQuantity(), Integer::sum);
+        }
+
+        // Batched stock mode: claimed before the order transaction, so no pooled connection is held while waiting
+        Map<Long, Integer> batchedQuantities = quantitiesByMode.getOrDefault(StockMode.BATCHED, Map.of());
+        reserveBatchedStock(request.getStoreId(), batchedQuantities);
+        try {
+            return transactionTemplate.execute(status -> saveOrder(request, stockModes.keySet(), quantitiesByMode));
+        } catch (RuntimeException e) {
+            batchedStockService.release(batchedQuantities);
+            throw e;
+        }
+    }
+
+    private OrderResponse saveOrder(CreateOrderRequest request, Set<Long> foodItemIds,
+                                    Map<StockMode, Map<Long, Integer>> quantitiesByMode) {
         User currentUser = authenticationService.getCurrentUser();
 
-        // Validate store
-        Store store = storeRepository.findById(request.getStoreId())
-                .orElseThrow(() -> new ResourceNotFoundException("Store not found with ID: " + request.getStoreId()));
+        // Validate store from the store cache; the order itself only needs a reference
+        StoreResponse storeResponse = storeService.findById(request.getStoreId());
+        Store store = storeRepository.getReferenceById(storeResponse.getId());
 
         // Validate store is active
-        if (store.getStatus() != StoreStatus.ACTIVE) {
+        if (!StoreStatus.ACTIVE.getDisplayName().equals(storeResponse.getStatus())) {
             throw new InvalidOperationException("Store is not currently accepting orders");
         }
 
@@ -68,63 +146,38 @@ public class OrderServiceImpl implements OrderService {
 
         // Create order
         Order order = new Order();
-        order.setOrderNumber(generateOrderNumber());
+        order.setOrderNumber(orderNumberGenerator.next(store.getId()));
         order.setUser(currentUser);
         order.setStore(store);
         order.setStatus(OrderStatus.PENDING);
         order.setPaymentMethod(paymentMethod);
         order.setPickupTime(request.getPickupTime());
         order.setSpecialInstructions(request.getSpecialInstructions());
+        order.setReservationExpiresAt(LocalDateTime.now().plusMinutes(reservationMinutes));
 
-        // Process order items with pessimistic locking
-        List<OrderItem> orderItems = new ArrayList<>();
-        BigDecimal totalAmount = BigDecimal.ZERO;
-
-        for (CreateOrderRequest.OrderItemRequest itemRequest : request.getItems()) {
-            // Lock food item to prevent overselling
-            FoodItem foodItem = foodItemRepository.findByIdWithLock(itemRequest.getFoodItemId())
-                    .orElseThrow(() -> new ResourceNotFoundException("Food item not found with ID: " + itemRequest.getFoodItemId()));
-
-            // Validate food item belongs to the same store
-            if (!foodItem.getStore().getId().equals(store.getId())) {
-                throw new InvalidOperationException("All items must be from the same store");
-            }
-
-            // Validate food item is available
-            if (foodItem.getStatus() != FoodItemStatus.AVAILABLE) {
-                throw new InvalidOperationException("Food item '" + foodItem.getName() + "' is not available");
-            }
-
-            // Check if flash sale is active
-            LocalDateTime now = LocalDateTime.now();
-            if (now.isBefore(foodItem.getSaleStartTime()) || now.isAfter(foodItem.getSaleEndTime())) {
-                throw new InvalidOperationException("Flash sale for '" + foodItem.getName() + "' is not active");
-            }
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, FoodItem> foodItems = new HashMap<>();
 
-            // Check stock availability
-            if (foodItem.getAvailableQuantity() < itemRequest.getQuantity()) {
-                throw new InsufficientStockException("Insufficient stock for " + foodItem.getName() + 
-                        ". Available: " + foodItem.getAvailableQuantity() + ", Requested: " + itemRequest.getQuantity());
-            }
+        // Load and validate every requested item once, without row locks
+        for (FoodItem foodItem : foodItemRepository.findAllById(foodItemIds)) {
+            validateFoodItem(foodItem, store.getId(), now);
+            foodItems.put(foodItem.getId(), foodItem);
+        }
 
-            // Decrement quantity using atomic update
-            int updated = foodItemRepository.decrementQuantity(foodItem.getId(), itemRequest.getQuantity());
-            if (updated == 0) {
-                throw new InsufficientStockException("Failed to reserve stock for " + foodItem.getName());
-            }
+        // Database stock mode: reserve all lines with one set-based statement
+        reserveDatabaseStock(foodItems, quantitiesByMode.getOrDefault(StockMode.DATABASE, Map.of()));
+        // Redis stock mode: claim all lines with one script
+        redisStockService.reserve(foodItems, quantitiesByMode.getOrDefault(StockMode.REDIS, Map.of()));
+        // Sold from this node's lease; Postgres is only touched when the lease runs out
+        stockLeaseService.reserve(foodItems, quantitiesByMode.getOrDefault(StockMode.LEASED, Map.of()));
 
-            // Refresh entity to get updated quantity
-            foodItemRepository.flush();
-            foodItem = foodItemRepository.findById(foodItem.getId())
-                    .orElseThrow(() -> new ResourceNotFoundException("Food item not found"));
+        // Create order items in request order
+        List<OrderItem> orderItems = new ArrayList<>();
+        BigDecimal totalAmount = BigDecimal.ZERO;
 
-            // Update food item status if out of stock
-            if (foodItem.getAvailableQuantity() == 0) {
-                foodItem.setStatus(FoodItemStatus.OUT_OF_STOCK);
-                foodItemRepository.save(foodItem);
-            }
+        for (CreateOrderRequest.OrderItemRequest itemRequest : request.getItems()) {
+            FoodItem foodItem = foodItems.get(itemRequest.getFoodItemId());
 
-            // Create order item
             OrderItem orderItem = new OrderItem();
             orderItem.setOrder(order);
             orderItem.setFoodItem(foodItem);
@@ -152,9 +205,12 @@ public class OrderServiceImpl implements OrderService {
         payment.setStatus(PaymentStatus.PENDING);
         paymentRepository.save(payment);
 
+        // Hold the stock until the reservation window runs out; the delay queue expires the order if unpaid
+        scheduleReservationExpiry(savedOrder);
+
         log.info("Order created successfully with order number: {}", savedOrder.getOrderNumber());
 
-        return entityMapper.toOrderResponse(savedOrder);
+        return entityMapper.toOrderResponse(savedOrder, storeResponse);
     }
 
     @Override
@@ -162,31 +218,18 @@ public class OrderServiceImpl implements OrderService {
     public OrderResponse cancelOrder(Long orderId) {
         log.info("Cancelling order with ID: {}", orderId);
 
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
-
-        // Can only cancel pending orders
-        if (order.getStatus() != OrderStatus.PENDING) {
-            throw new InvalidOperationException("Only pending orders can be cancelled");
+        // Can only cancel pending orders; the conditional update decides who wins a race with payment expiry
+        List<Long> cancelled = orderRepository.cancelPendingOrders(List.of(orderId),
+                OrderStatus.PENDING.getCode(), OrderStatus.CANCELLED.getCode(),
+                false, PaymentStatus.PAID.getCode(), "Cancelled by customer", LocalDateTime.now());
+        if (cancelled.isEmpty()) {
+            throw transitionConflict(orderId, OrderStatus.CANCELLED);
         }
 
-        // Restore stock for each item
-        for (OrderItem item : order.getOrderItems()) {
-            FoodItem foodItem = item.getFoodItem();
-            int newQuantity = foodItem.getAvailableQuantity() + item.getQuantity();
-            foodItem.setAvailableQuantity(newQuantity);
-            
-            // Update status back to available if was out of stock
-            if (foodItem.getStatus() == FoodItemStatus.OUT_OF_STOCK && newQuantity > 0) {
-                foodItem.setStatus(FoodItemStatus.AVAILABLE);
-            }
-            
-            foodItemRepository.save(foodItem);
-        }
+        Order order = loadOrder(orderId);
 
-        // Update order status
-        order.setStatus(OrderStatus.CANCELLED);
-        Order updatedOrder = orderRepository.save(order);
+        // Restore stock for each item
+        restoreStock(List.of(order));
 
         // Update payment status
         Payment payment = paymentRepository.findByOrder(order)
@@ -198,28 +241,48 @@ public class OrderServiceImpl implements OrderService {
 
         log.info("Order cancelled successfully: {}", order.getOrderNumber());
 
-        return entityMapper.toOrderResponse(updatedOrder);
+        return entityMapper.toOrderResponse(order);
     }
 
     @Override
     @Transactional
-    public OrderResponse confirmOrder(Long orderId) {
-        log.info("Confirming order with ID: {}", orderId);
+    public int expireReservations(Collection<Long> orderIds) {
+        // Only orders still PENDING and unpaid are cancelled; a payment that lands first wins
+        List<Long> cancelledIds = orderRepository.cancelPendingOrders(orderIds,
+                OrderStatus.PENDING.getCode(), OrderStatus.CANCELLED.getCode(),
+                true, PaymentStatus.PAID.getCode(), "Reservation expired before payment", LocalDateTime.now());
+
+        if (cancelledIds.isEmpty()) {
+            return 0;
+        }
 
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
+        List<Order> expiredOrders = orderRepository.findAllWithItemsByIdIn(cancelledIds);
 
-        // Can only confirm pending orders
-        if (order.getStatus() != OrderStatus.PENDING) {
-            throw new InvalidOperationException("Only pending orders can be confirmed");
+        // Return all units of the batch together
+        restoreStock(expiredOrders);
+
+        for (Order order : expiredOrders) {
+            paymentRepository.findByOrder(order).ifPresent(payment -> {
+                payment.setStatus(PaymentStatus.CANCELLED);
+                paymentRepository.save(payment);
+            });
         }
 
-        order.setStatus(OrderStatus.CONFIRMED);
-        Order updatedOrder = orderRepository.save(order);
+        log.info("Expired {} unpaid orders and returned their stock", expiredOrders.size());
+
+        return expiredOrders.size();
+    }
+
+    @Override
+    @Transactional
+    public OrderResponse confirmOrder(Long orderId) {
+        log.info("Confirming order with ID: {}", orderId);
 
-        log.info("Order confirmed successfully: {}", order.getOrderNumber());
+        OrderResponse response = transition(orderId, OrderStatus.CONFIRMED);
 
-        return entityMapper.toOrderResponse(updatedOrder);
+        log.info("Order confirmed successfully: {}", response.getOrderNumber());
+
+        return response;
     }
 
     @Override
@@ -227,20 +290,11 @@ public class OrderServiceImpl implements OrderService {
     public OrderResponse startPreparingOrder(Long orderId) {
         log.info("Starting to prepare order with ID: {}", orderId);
 
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
-
-        // Can only prepare confirmed orders
-        if (order.getStatus() != OrderStatus.CONFIRMED) {
-            throw new InvalidOperationException("Only confirmed orders can be prepared");
-        }
-
-        order.setStatus(OrderStatus.PREPARING);
-        Order updatedOrder = orderRepository.save(order);
+        OrderResponse response = transition(orderId, OrderStatus.PREPARING);
 
-        log.info("Order preparation started: {}", order.getOrderNumber());
+        log.info("Order preparation started: {}", response.getOrderNumber());
 
-        return entityMapper.toOrderResponse(updatedOrder);
+        return response;
     }
 
     @Override
@@ -248,20 +302,11 @@ public class OrderServiceImpl implements OrderService {
     public OrderResponse markOrderReady(Long orderId) {
         log.info("Marking order as ready with ID: {}", orderId);
 
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
-
-        // Can only mark preparing orders as ready
-        if (order.getStatus() != OrderStatus.PREPARING) {
-            throw new InvalidOperationException("Only preparing orders can be marked as ready");
-        }
+        OrderResponse response = transition(orderId, OrderStatus.READY);
 
-        order.setStatus(OrderStatus.READY);
-        Order updatedOrder = orderRepository.save(order);
+        log.info("Order marked as ready: {}", response.getOrderNumber());
 
-        log.info("Order marked as ready: {}", order.getOrderNumber());
-
-        return entityMapper.toOrderResponse(updatedOrder);
+        return response;
     }
 
     @Override
@@ -269,20 +314,57 @@ public class OrderServiceImpl implements OrderService {
     public OrderResponse completeOrder(Long orderId) {
         log.info("Completing order with ID: {}", orderId);
 
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
+        OrderResponse response = transition(orderId, OrderStatus.COMPLETED);
 
-        // Can only complete ready orders
-        if (order.getStatus() != OrderStatus.READY) {
-            throw new InvalidOperationException("Only ready orders can be completed");
+        log.info("Order completed successfully: {}", response.getOrderNumber());
+
+        return response;
+    }
+
+    @Override
+    @Transactional
+    public BulkOrderStatusResponse updateStoreOrderStatuses(Long storeId, BulkOrderStatusRequest request) {
+        log.info("Moving {} orders of store ID: {} to status: {}", request.getOrderIds().size(), storeId, request.getStatus());
+
+        // Parse status
+        OrderStatus target;
+        try {
+            target = OrderStatus.fromDisplayName(request.getStatus());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidOperationException("Invalid order status: " + request.getStatus());
         }
 
-        order.setStatus(OrderStatus.COMPLETED);
-        Order updatedOrder = orderRepository.save(order);
+        // Cancellation returns stock and expiry is system-driven, so neither is available in bulk
+        Set<OrderStatus> expected = OrderStatus.previousStatuses(target);
+        if (expected.isEmpty() || target == OrderStatus.CANCELLED || target == OrderStatus.EXPIRED) {
+            throw new InvalidOperationException("Orders cannot be moved to '" + target.getDisplayName() + "' in bulk");
+        }
 
-        log.info("Order completed successfully: {}", order.getOrderNumber());
+        List<Long> orderIds = request.getOrderIds().stream().distinct().toList();
+        List<Long> updatedIds = orderRepository.transitionStoreOrders(orderIds, storeId,
+                expected.stream().map(OrderStatus::getCode).toList(), target.getCode(), LocalDateTime.now());
+
+        // Report every order that did not move with its current status
+        Map<Long, String> skipped = new LinkedHashMap<>();
+        if (updatedIds.size() < orderIds.size()) {
+            Set<Long> updated = Set.copyOf(updatedIds);
+            Map<Long, OrderStatus> current = orderRepository.findStatusesByStore(orderIds, storeId).stream()
+                    .collect(Collectors.toMap(OrderRepository.OrderStatusView::getId, OrderRepository.OrderStatusView::getStatus));
+            for (Long orderId : orderIds) {
+                if (!updated.contains(orderId)) {
+                    OrderStatus status = current.get(orderId);
+                    skipped.put(orderId, status != null ? status.getDisplayName() : "not_found");
+                }
+            }
+        }
+
+        log.info("Moved {} orders of store ID: {} to {} ({} skipped)", updatedIds.size(), storeId, target, skipped.size());
 
-        return entityMapper.toOrderResponse(updatedOrder);
+        return BulkOrderStatusResponse.builder()
+                .status(target.getDisplayName())
+                .updatedOrderIds(updatedIds)
+                .skippedOrders(skipped)
+                .build();
     }
 
     @Override
@@ -290,8 +372,17 @@ public class OrderServiceImpl implements OrderService {
     public OrderResponse processPayment(Long orderId) {
         log.info("Processing payment for order ID: {}", orderId);
 
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
+        // Stock of cancelled or expired orders is already back on sale
+        int updated = orderRepository.markPaid(orderId, PaymentStatus.PAID,
+                EnumSet.of(OrderStatus.CANCELLED, OrderStatus.EXPIRED), LocalDateTime.now());
+        if (updated == 0) {
+            OrderStatus current = orderRepository.findStatusById(orderId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
+            throw new OrderStateConflictException("Order " + orderId + " is '" + current.getDisplayName()
+                    + "' and is no longer awaiting payment");
+        }
+
+        Order order = loadOrder(orderId);
 
         Payment payment = paymentRepository.findByOrder(order)
                 .orElseThrow(() -> new ResourceNotFoundException("Payment not found for order"));
@@ -312,15 +403,13 @@ public class OrderServiceImpl implements OrderService {
     public OrderResponse findById(Long orderId) {
         log.debug("Finding order with ID: {}", orderId);
 
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
-
-        return entityMapper.toOrderResponse(order);
+        return entityMapper.toOrderResponse(loadOrder(orderId));
     }
 
     @Override
     public OrderResponse findByOrderNumber(String orderNumber) {
-        log.debug("Finding order with order number: {}", orderNumber);
+        // New-format numbers carry their store shard, the routing key once orders are partitioned
+        log.debug("Finding order with order number: {} (shard {})", orderNumber, OrderNumberGenerator.shardOf(orderNumber));
 
         Order order = orderRepository.findByOrderNumber(orderNumber)
                 .orElseThrow(() -> new ResourceNotFoundException("Order not found with order number: " + orderNumber));
@@ -338,6 +427,18 @@ public class OrderServiceImpl implements OrderService {
         return orders.map(entityMapper::toOrderResponse);
     }
 
+    @Override
+    public CursorPageResponse<OrderResponse> scrollMyOrders(String cursor, int size) {
+        log.debug("Scrolling orders for current user");
+
+        User currentUser = authenticationService.getCurrentUser();
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        List<Order> orders = orderRepository.findByUserIdBefore(currentUser.getId(),
+                position.getCreatedAt(), position.getId(), KeysetCursor.limit(size));
+
+        return KeysetCursor.page(orders, size, Order::getCreatedAt, Order::getId, entityMapper::toOrderResponse);
+    }
+
     @Override
     public Page<OrderResponse> findMyOrdersByStatus(String status, Pageable pageable) {
         log.debug("Finding orders for current user with status: {}", status);
@@ -352,28 +453,19 @@ public class OrderServiceImpl implements OrderService {
             throw new InvalidOperationException("Invalid order status: " + status);
         }
 
-        List<Order> orders = orderRepository.findByUserIdAndStatus(currentUser.getId(), orderStatus);
-        
-        // Manual pagination
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), orders.size());
-        List<Order> pageContent = orders.subList(start, end);
-        
-        Page<Order> page = new PageImpl<>(pageContent, pageable, orders.size());
-        return page.map(entityMapper::toOrderResponse);
+        Page<Order> orders = orderRepository.findByUserIdAndStatus(currentUser.getId(), orderStatus, pageable);
+        return orders.map(entityMapper::toOrderResponse);
     }
 
     @Override
     public Page<OrderResponse> findStoreOrders(Long storeId, Pageable pageable) {
         log.debug("Finding orders for store ID: {}", storeId);
 
-        Store store = storeRepository.findById(storeId)
-                .orElseThrow(() -> new ResourceNotFoundException("Store not found with ID: " + storeId));
-
-        // Filter by store
-        Page<Order> orders = orderRepository.findAll(pageable)
-                .map(order -> order.getStore().equals(store) ? order : null);
+        if (!storeRepository.existsById(storeId)) {
+            throw new ResourceNotFoundException("Store not found with ID: " + storeId);
+        }
 
+        Page<Order> orders = orderRepository.findByStoreId(storeId, pageable);
         return orders.map(entityMapper::toOrderResponse);
     }
 
@@ -381,8 +473,9 @@ public class OrderServiceImpl implements OrderService {
     public Page<OrderResponse> findStoreOrdersByStatus(Long storeId, String status, Pageable pageable) {
         log.debug("Finding orders for store ID: {} with status: {}", storeId, status);
 
-        Store store = storeRepository.findById(storeId)
-                .orElseThrow(() -> new ResourceNotFoundException("Store not found with ID: " + storeId));
+        if (!storeRepository.existsById(storeId)) {
+            throw new ResourceNotFoundException("Store not found with ID: " + storeId);
+        }
 
         // Parse status
         OrderStatus orderStatus;
@@ -392,15 +485,8 @@ public class OrderServiceImpl implements OrderService {
             throw new InvalidOperationException("Invalid order status: " + status);
         }
 
-        List<Order> orders = orderRepository.findByStoreIdAndStatus(storeId, orderStatus);
-        
-        // Manual pagination
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), orders.size());
-        List<Order> pageContent = orders.subList(start, end);
-        
-        Page<Order> page = new PageImpl<>(pageContent, pageable, orders.size());
-        return page.map(entityMapper::toOrderResponse);
+        Page<Order> orders = orderRepository.findByStoreIdAndStatus(storeId, orderStatus, pageable);
+        return orders.map(entityMapper::toOrderResponse);
     }
 
     @Override
@@ -411,15 +497,242 @@ public class OrderServiceImpl implements OrderService {
         return orders.map(entityMapper::toOrderResponse);
     }
 
+    @Override
+    public CursorPageResponse<OrderResponse> scrollAllOrders(String cursor, int size) {
+        log.debug("Scrolling all orders (admin)");
+
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        List<Order> orders = orderRepository.findAllBefore(position.getCreatedAt(), position.getId(),
+                KeysetCursor.limit(size));
+
+        return KeysetCursor.page(orders, size, Order::getCreatedAt, Order::getId, entityMapper::toOrderResponse);
+    }
+
     // ===== Helper Methods =====
 
     /**
-     * Generate unique order number
-     * Format: ORD-YYYYMMDD-XXXXXX
+     * Move one order along the OrderStatus state graph with a single conditional UPDATE
+     * A lost race (the order changed status first) is reported as OrderStateConflictException
+     */
+    private OrderResponse transition(Long orderId, OrderStatus target) {
+        int updated = orderRepository.transitionStatus(orderId, OrderStatus.previousStatuses(target),
+                target, LocalDateTime.now());
+        if (updated == 0) {
+            throw transitionConflict(orderId, target);
+        }
+        return entityMapper.toOrderResponse(loadOrder(orderId));
+    }
+
+    /**
+     * Explain why a conditional transition did not apply
+     */
+    private OrderStateConflictException transitionConflict(Long orderId, OrderStatus target) {
+        OrderStatus current = orderRepository.findStatusById(orderId)
+                .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
+        return new OrderStateConflictException(orderId, current, target);
+    }
+
+    /**
+     * Load an order with its store and items for the response in one query
+     */
+    private Order loadOrder(Long orderId) {
+        return orderRepository.findWithItemsById(orderId)
+                .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
+    }
+
+    /**
+     * Give the stock of cancelled or expired orders back to sale
+     * Lines of all orders are merged per item first, so a batch costs one statement per stock mode
+     */
+    private void restoreStock(Collection<Order> orders) {
+        Map<StockMode, Map<Long, Integer>> quantitiesByMode = new EnumMap<>(StockMode.class);
+        for (Order order : orders) {
+            for (OrderItem item : order.getOrderItems()) {
+                FoodItem foodItem = item.getFoodItem();
+                StockMode stockMode = foodItem.getStockMode() != null ? foodItem.getStockMode() : StockMode.DATABASE;
+                quantitiesByMode.computeIfAbsent(stockMode, mode -> new TreeMap<>())
+                        .merge(foodItem.getId(), item.getQuantity(), Integer::sum);
+            }
+        }
+
+        // Database stock mode: increment every line in the database with one statement
+        Set<Long> restockedIds = new HashSet<>(restoreDatabaseStock(quantitiesByMode));
+
+        // Redis ledger, bulk-updated and leased items are restored by their stock service after commit
+        restockedIds.addAll(quantitiesByMode.getOrDefault(StockMode.LEASED, Map.of()).keySet());
+        redisStockService.releaseAfterCommit(quantitiesByMode.getOrDefault(StockMode.REDIS, Map.of()));
+        batchedStockService.releaseAfterCommit(quantitiesByMode.getOrDefault(StockMode.BATCHED, Map.of()));
+        stockLeaseService.releaseAfterCommit(quantitiesByMode.getOrDefault(StockMode.LEASED, Map.of()));
+
+        // Redis and batched releases broadcast their own restocks; database and leased ones are broadcast here
+        soldOutFilter.markAvailableAfterCommit(restockedIds);
+    }
+
+    /**
+     * Return database-mode lines with one set-based conditional increment (locks taken in id order)
+     * Lines must already be merged by food item ID and sorted; lines whose item switched to another mode meanwhile
+     * are moved to that mode
+     * @return IDs of the items restored
+     */
+    private List<Long> restoreDatabaseStock(Map<StockMode, Map<Long, Integer>> quantitiesByMode) {
+        Map<Long, Integer> quantities = quantitiesByMode.getOrDefault(StockMode.DATABASE, Map.of());
+        if (quantities.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> restoredIds = foodItemRepository.restoreQuantities(
+                quantities.keySet().toArray(new Long[0]),
+                quantities.values().toArray(new Integer[0]),
+                StockMode.DATABASE.getCode(),
+                FoodItemStatus.AVAILABLE.getCode(),
+                FoodItemStatus.OUT_OF_STOCK.getCode());
+
+        // An item switched out of database mode meanwhile took its quantity from the row; its new mode gets the units
+        if (restoredIds.size() < quantities.size()) {
+            Set<Long> skipped = new HashSet<>(quantities.keySet());
+            restoredIds.forEach(skipped::remove);
+            for (FoodItemRepository.StockModeView view : foodItemRepository.findStockModes(skipped)) {
+                if (view.getStockMode() != null && view.getStockMode() != StockMode.DATABASE) {
+                    quantitiesByMode.computeIfAbsent(view.getStockMode(), mode -> new TreeMap<>())
+                            .put(view.getId(), quantities.get(view.getId()));
+                    skipped.remove(view.getId());
+                }
+            }
+            if (!skipped.isEmpty()) {
+                log.warn("Could not restore stock of food items {}: rows not found", skipped);
+            }
+        }
+        return restoredIds;
+    }
+
+    /**
+     * Reserve database-mode lines with one set-based conditional update (locks taken in id order)
+     * Lines must already be merged by food item ID and sorted
+     * Nothing is reserved unless every line fits; otherwise all short lines are reported together
+     */
+    private void reserveDatabaseStock(Map<Long, FoodItem> foodItems, Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+
+        List<FoodItemRepository.StockShortageView> shortages = foodItemRepository.reserveQuantities(
+                quantities.keySet().toArray(new Long[0]),
+                quantities.values().toArray(new Integer[0]),
+                StockMode.DATABASE.getCode(),
+                FoodItemStatus.OUT_OF_STOCK.getCode());
+
+        if (!shortages.isEmpty()) {
+            // A row not read in database mode says nothing about its stock: the item changed mode since it was resolved
+            for (FoodItemRepository.StockShortageView shortage : shortages) {
+                if (!Boolean.TRUE.equals(shortage.getInStockMode())) {
+                    throw new InvalidOperationException("Stock for '"
+                            + foodItems.get(shortage.getFoodItemId()).getName() + "' is being updated, please retry");
+                }
+            }
+            shortages.stream()
+                    .filter(shortage -> shortage.getAvailable() == 0)
+                    .forEach(shortage -> soldOutFilter.markSoldOut(shortage.getFoodItemId()));
+            String lines = shortages.stream()
+                    .map(shortage -> String.format("'%s' (requested: %d, available: %d)",
+                            foodItems.get(shortage.getFoodItemId()).getName(),
+                            shortage.getRequested(), shortage.getAvailable()))
+                    .collect(Collectors.joining(", "));
+            throw new InsufficientStockException("Insufficient stock for " + lines);
+        }
+    }
+
+    /**
+     * Publish the order to the reservation delay queue through the outbox, in the order's transaction
+     */
+    private void scheduleReservationExpiry(Order order) {
+        OrderExpiryMessage message = OrderExpiryMessage.builder()
+                .orderId(order.getId())
+                .orderNumber(order.getOrderNumber())
+                .expiresAt(order.getReservationExpiresAt())
+                .build();
+        messagePublisher.publishOrderReservation(message, Duration.ofMinutes(reservationMinutes).toMillis());
+    }
+
+    /**
+     * Claim the batched lines of an order, one conditional UPDATE per batch of concurrent buyers of the same item
+     * Buyers wait for the item's writer, which settles on a connection of its own; waiting inside the order
+     * transaction would hold a pooled connection, and a stampede would drain the pool the writer needs.
+     * The items are validated before anything is claimed, so a pre-sale or closed item is never claimed from.
+     */
+    private void reserveBatchedStock(Long storeId, Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, FoodItem> foodItems = new HashMap<>();
+        for (FoodItem foodItem : foodItemRepository.findAllById(quantities.keySet())) {
+            validateFoodItem(foodItem, storeId, now);
+            foodItems.put(foodItem.getId(), foodItem);
+        }
+        batchedStockService.reserve(foodItems, quantities);
+    }
+
+    /**
+     * Look up the stock mode of every requested item
+     */
+    private Map<Long, StockMode> resolveStockModes(CreateOrderRequest request) {
+        Set<Long> ids = request.getItems().stream()
+                .map(CreateOrderRequest.OrderItemRequest::getFoodItemId)
+                .collect(Collectors.toSet());
+
+        Map<Long, StockMode> stockModes = new HashMap<>();
+        for (FoodItemRepository.StockModeView view : foodItemRepository.findStockModes(ids)) {
+            stockModes.put(view.getId(), view.getStockMode() != null ? view.getStockMode() : StockMode.DATABASE);
+        }
+
+        for (Long id : ids) {
+            if (!stockModes.containsKey(id)) {
+                throw new ResourceNotFoundException("Food item not found with ID: " + id);
+            }
+        }
+        return stockModes;
+    }
+
+    /**
+     * Validate that a food item can be ordered from the given store right now
+     */
+    private void validateFoodItem(FoodItem foodItem, Long storeId, LocalDateTime now) {
+        // Validate food item belongs to the same store
+        if (!foodItem.getStore().getId().equals(storeId)) {
+            throw new InvalidOperationException("All items must be from the same store");
+        }
+
+        // Validate food item is available
+        if (foodItem.getStatus() != FoodItemStatus.AVAILABLE) {
+            // The filter missed this one; let every node reject it up front from now on
+            if (foodItem.getStatus() != FoodItemStatus.PENDING) {
+                soldOutFilter.sync(foodItem.getId(), foodItem.getStatus());
+            }
+            throw new InvalidOperationException("Food item '" + foodItem.getName() + "' is not available");
+        }
+
+        // Check if flash sale is active
+        if (now.isAfter(foodItem.getSaleEndTime())) {
+            soldOutFilter.markClosed(foodItem.getId());
+        }
+        if (now.isBefore(foodItem.getSaleStartTime()) || now.isAfter(foodItem.getSaleEndTime())) {
+            throw new InvalidOperationException("Flash sale for '" + foodItem.getName() + "' is not active");
+        }
+    }
+
+    /**
+     * Order latency timer tagged by the stock modes involved, used to compare p99 and throughput per mode
      */
-    private String generateOrderNumber() {
-        String dateStr = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        String randomStr = UUID.randomUUID().toString().substring(0, 6).toUpperCase();
-        return "ORD-" + dateStr + "-" + randomStr;
+    private Timer orderLatencyTimer(Set<StockMode> stockModes, String outcome) {
+        String modeTag = stockModes.isEmpty() ? "none"
+                : stockModes.size() > 1 ? "mixed"
+                : stockModes.iterator().next().getDisplayName();
+
+        return Timer.builder("flashfood.order.create")
+                .description("Order placement latency")
+                .tag("stock_mode", modeTag)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
     }
 }
@@ -1,6 +1,7 @@
 package com.flashfood.flash_food.service.impl;
 
 import com.flashfood.flash_food.dto.request.CreateStoreRequest;
+import com.flashfood.flash_food.dto.response.CursorPageResponse;
 import com.flashfood.flash_food.dto.response.StoreResponse;
 import com.flashfood.flash_food.entity.*;
 import com.flashfood.flash_food.exception.InvalidOperationException;
@@ -9,15 +10,28 @@ import com.flashfood.flash_food.repository.StoreRepository;
 import com.flashfood.flash_food.service.AuthenticationService;
 import com.flashfood.flash_food.service.StoreService;
 import com.flashfood.flash_food.service.RedisGeoService;
+import com.flashfood.flash_food.service.SearchIndex;
+import com.flashfood.flash_food.service.StoreGeoIndex;
+import com.flashfood.flash_food.util.AppConstants;
+import com.flashfood.flash_food.util.DistanceCursor;
 import com.flashfood.flash_food.util.EntityMapper;
+import com.flashfood.flash_food.util.GeoGrid;
+import com.flashfood.flash_food.util.KeysetCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -32,8 +46,19 @@ public class StoreServiceImpl implements StoreService {
     private final StoreRepository storeRepository;
     private final AuthenticationService authenticationService;
     private final RedisGeoService redisGeoService;
+    private final SearchIndex searchIndex;
+    private final StoreGeoIndex storeGeoIndex;
     private final EntityMapper entityMapper;
     
+    @Value("${app.geo.nearest-max-radius-km:20}")
+    private double nearestMaxRadiusKm;
+    
+    @Value("${app.geo.max-results:1000}")
+    private int maxResults;
+    
+    @Value("${app.geo.max-radius-km:50}")
+    private double maxRadiusKm;
+    
     @Override
     @Transactional
     public StoreResponse createStore(CreateStoreRequest request) {
@@ -67,17 +92,16 @@ public class StoreServiceImpl implements StoreService {
                 .totalRatings(0)
                 .build();
         
+        // Pending stores stay out of Redis Geo until approved (see updateStoreStatus)
         Store savedStore = storeRepository.save(store);
         
-        // Add store to Redis Geo for location-based queries
-        redisGeoService.addStoreLocation(savedStore.getId(), savedStore.getLongitude(), savedStore.getLatitude());
-        
         log.info("Store created successfully with id: {}", savedStore.getId());
         return entityMapper.toStoreResponse(savedStore);
     }
     
     @Override
     @Transactional
+    @CacheEvict(cacheNames = AppConstants.CACHE_STORES, key = "#id")
     public StoreResponse updateStore(Long id, CreateStoreRequest request) {
         log.info("Updating store with id: {}", id);
         
@@ -111,11 +135,15 @@ public class StoreServiceImpl implements StoreService {
             store.setLatitude(request.getLatitude());
             store.setLongitude(request.getLongitude());
             
-            // Update Redis Geo location
-            redisGeoService.addStoreLocation(store.getId(), request.getLongitude(), request.getLatitude());
+            // Update Redis Geo location (only active stores are indexed)
+            if (store.getStatus() == StoreStatus.ACTIVE) {
+                redisGeoService.addStoreLocation(store.getId(), request.getLongitude(), request.getLatitude());
+            }
+            storeGeoIndex.refreshAfterCommit(store.getId());
         }
         
         Store updatedStore = storeRepository.save(store);
+        searchIndex.refreshStoreAfterCommit(updatedStore.getId());
         log.info("Store updated successfully with id: {}", updatedStore.getId());
         
         return entityMapper.toStoreResponse(updatedStore);
@@ -123,6 +151,7 @@ public class StoreServiceImpl implements StoreService {
     
     @Override
     @Transactional
+    @CacheEvict(cacheNames = AppConstants.CACHE_STORES, key = "#id")
     public void deleteStore(Long id) {
         log.info("Deleting store with id: {}", id);
         
@@ -133,10 +162,13 @@ public class StoreServiceImpl implements StoreService {
         redisGeoService.removeStoreLocation(store.getId());
         
         storeRepository.delete(store);
+        searchIndex.refreshStoreAfterCommit(id);
+        storeGeoIndex.refreshAfterCommit(id);
         log.info("Store deleted successfully with id: {}", id);
     }
     
     @Override
+    @Cacheable(cacheNames = AppConstants.CACHE_STORES, key = "#id", sync = true)
     public StoreResponse findById(Long id) {
         log.debug("Finding store by id: {}", id);
         
@@ -150,8 +182,18 @@ public class StoreServiceImpl implements StoreService {
     public Page<StoreResponse> findAll(Pageable pageable) {
         log.debug("Finding all stores with pagination: {}", pageable);
         
-        Page<Store> stores = storeRepository.findAll(pageable);
-        return stores.map(entityMapper::toStoreResponse);
+        return storeRepository.findAllResponses(pageable);
+    }
+    
+    @Override
+    public CursorPageResponse<StoreResponse> scrollAll(String cursor, int size) {
+        log.debug("Scrolling all stores, size: {}", size);
+        
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        List<StoreResponse> stores = storeRepository.findAllBefore(position.getCreatedAt(), position.getId(),
+                KeysetCursor.limit(size));
+        
+        return KeysetCursor.page(stores, size, StoreResponse::getCreatedAt, StoreResponse::getId, Function.identity());
     }
     
     @Override
@@ -165,8 +207,7 @@ public class StoreServiceImpl implements StoreService {
             throw new InvalidOperationException("Invalid store type: " + type);
         }
         
-        Page<Store> stores = storeRepository.findByType(storeType, pageable);
-        return stores.map(entityMapper::toStoreResponse);
+        return storeRepository.findResponsesByType(storeType, pageable);
     }
     
     @Override
@@ -180,35 +221,69 @@ public class StoreServiceImpl implements StoreService {
             throw new InvalidOperationException("Invalid store status: " + status);
         }
         
-        Page<Store> stores = storeRepository.findByStatus(storeStatus, pageable);
-        return stores.map(entityMapper::toStoreResponse);
+        return storeRepository.findResponsesByStatus(storeStatus, pageable);
+    }
+    
+    @Override
+    public Page<StoreResponse> searchStores(String keyword, Pageable pageable) {
+        log.debug("Searching stores with keyword: {}", keyword);
+        
+        // Ranked in memory, then one query for the page
+        Page<Long> ids = searchIndex.searchStores(keyword, pageable);
+        List<StoreResponse> rows = ids.isEmpty() ? List.of() : storeRepository.findResponsesByIds(ids.getContent());
+        return new PageImpl<>(SearchIndex.inRankOrder(ids.getContent(), rows, StoreResponse::getId),
+                pageable, ids.getTotalElements());
     }
     
     @Override
     public List<StoreResponse> findNearbyStores(Double latitude, Double longitude, Double radiusInKm) {
-        log.debug("Finding stores near location: lat={}, lon={}, radius={}km", latitude, longitude, radiusInKm);
-        
-        // Get store IDs from Redis Geo
-        List<Long> storeIds = redisGeoService.findNearbyStores(longitude, latitude, radiusInKm);
+        double radiusKm = boundedRadius(radiusInKm);
+        log.debug("Finding stores near location: lat={}, lon={}, radius={}km", latitude, longitude, radiusKm);
         
-        if (storeIds.isEmpty()) {
-            return List.of();
-        }
-        
-        // Fetch stores from database and filter by ACTIVE status
-        List<Store> stores = storeRepository.findByIdInAndStatus(storeIds, StoreStatus.ACTIVE);
+        // In-memory geo index; Redis Geo until this node has built it
+        return toResponses(storeGeoIndex.withinRadius(latitude, longitude, radiusKm, maxResults)
+                .orElseGet(() -> redisGeoService.findNearbyStores(longitude, latitude, radiusKm)));
+    }
+    
+    @Override
+    public CursorPageResponse<StoreResponse> scrollNearbyStores(Double latitude, Double longitude, Double radiusInKm,
+                                                                String cursor, int size) {
+        double radiusKm = boundedRadius(radiusInKm);
+        log.debug("Scrolling stores near location: lat={}, lon={}, radius={}km, size={}",
+                latitude, longitude, radiusKm, size);
+        
+        DistanceCursor after = DistanceCursor.decode(cursor);
+        int pageSize = DistanceCursor.pageSize(size);
+        
+        // Like a nearby search, the listing ends after app.geo.max-results stores
+        int remaining = Math.max(0, maxResults - after.getCount());
+        // One more hit than the slice, only to tell whether another slice exists
+        int count = Math.min(pageSize + 1, remaining);
+        List<GeoGrid.Hit> hits = count == 0 ? List.of() : storeGeoIndex
+                .withinRadiusAfter(latitude, longitude, radiusKm, after, count)
+                .orElseGet(() -> redisGeoService.findNearbyStoresAfter(longitude, latitude, radiusKm, after, count));
+        
+        boolean hasNext = hits.size() > pageSize;
+        List<GeoGrid.Hit> content = hasNext ? hits.subList(0, pageSize) : hits;
+        
+        return CursorPageResponse.<StoreResponse>builder()
+                .content(toResponses(content))
+                .size(pageSize)
+                .hasNext(hasNext)
+                .nextCursor(hasNext
+                        ? DistanceCursor.encode(content.get(content.size() - 1), after.getCount() + content.size())
+                        : null)
+                .build();
+    }
+    
+    @Override
+    public List<StoreResponse> findNearestStores(Double latitude, Double longitude, int limit) {
+        int count = Math.max(1, Math.min(limit, Integer.parseInt(AppConstants.MAX_PAGE_SIZE)));
+        log.debug("Finding {} stores nearest location: lat={}, lon={}", count, latitude, longitude);
         
-        // Calculate distance and map to response
-        return stores.stream()
-                .map(store -> {
-                    StoreResponse response = entityMapper.toStoreResponse(store);
-                    // Calculate distance (simple approximation)
-                    double distance = calculateDistance(latitude, longitude, store.getLatitude(), store.getLongitude());
-                    response.setDistance(distance);
-                    return response;
-                })
-                .sorted((s1, s2) -> Double.compare(s1.getDistance(), s2.getDistance()))
-                .collect(Collectors.toList());
+        List<GeoGrid.Hit> hits = storeGeoIndex.nearest(latitude, longitude, count, nearestMaxRadiusKm)
+                .orElseGet(() -> redisGeoService.findNearestStores(longitude, latitude, nearestMaxRadiusKm, count));
+        return toResponses(hits);
     }
     
     @Override
@@ -225,6 +300,7 @@ public class StoreServiceImpl implements StoreService {
     
     @Override
     @Transactional
+    @CacheEvict(cacheNames = AppConstants.CACHE_STORES, key = "#id")
     public StoreResponse updateStoreStatus(Long id, String status) {
         log.info("Updating store status for id: {} to {}", id, status);
         
@@ -241,25 +317,50 @@ public class StoreServiceImpl implements StoreService {
         store.setStatus(storeStatus);
         Store updatedStore = storeRepository.save(store);
         
+        // Only active stores are indexed for location-based queries
+        if (storeStatus == StoreStatus.ACTIVE) {
+            redisGeoService.addStoreLocation(updatedStore.getId(), updatedStore.getLongitude(), updatedStore.getLatitude());
+        } else {
+            redisGeoService.removeStoreLocation(updatedStore.getId());
+        }
+        searchIndex.refreshStoreAfterCommit(updatedStore.getId());
+        storeGeoIndex.refreshAfterCommit(updatedStore.getId());
+        
         log.info("Store status updated successfully for id: {}", id);
         return entityMapper.toStoreResponse(updatedStore);
     }
     
     /**
-     * Calculate distance between two coordinates in meters using Haversine formula
+     * Requested search radius, capped at app.geo.max-radius-km so one request cannot scan the whole index
      */
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371000; // Radius of the Earth in meters
-        
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-        
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    private double boundedRadius(Double radiusInKm) {
+        if (radiusInKm == null || !(radiusInKm > 0)) {
+            throw new InvalidOperationException("Radius must be a positive number of kilometers: " + radiusInKm);
+        }
+        return Math.min(radiusInKm, maxRadiusKm);
+    }
+    
+    /**
+     * Load the active stores of geo hits in one query, keeping the hits' order and distances
+     */
+    private List<StoreResponse> toResponses(List<GeoGrid.Hit> hits) {
+        if (hits.isEmpty()) {
+            return List.of();
+        }
         
-        return R * c; // Distance in meters
+        Map<Long, StoreResponse> storesById = storeRepository
+                .findResponsesByIdsAndStatus(hits.stream().map(GeoGrid.Hit::id).toList(), StoreStatus.ACTIVE)
+                .stream()
+                .collect(Collectors.toMap(StoreResponse::getId, Function.identity()));
+        
+        List<StoreResponse> stores = new ArrayList<>(hits.size());
+        for (GeoGrid.Hit hit : hits) {
+            StoreResponse store = storesById.get(hit.id());
+            if (store != null) {
+                store.setDistance(hit.distanceKm() * 1000);
+                stores.add(store);
+            }
+        }
+        return stores;
     }
 }
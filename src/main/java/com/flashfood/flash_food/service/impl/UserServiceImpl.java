@@ -11,6 +11,7 @@ import com.flashfood.flash_food.exception.DuplicateResourceException;
 import com.flashfood.flash_food.exception.InvalidOperationException;
 import com.flashfood.flash_food.exception.ResourceNotFoundException;
 import com.flashfood.flash_food.util.EntityMapper;
+import com.flashfood.flash_food.util.SearchText;
 import com.flashfood.flash_food.repository.UserRepository;
 import com.flashfood.flash_food.service.AuthenticationService;
 import com.flashfood.flash_food.service.UserService;
@@ -24,7 +25,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Implementation of UserService
@@ -268,23 +268,8 @@ public class UserServiceImpl implements UserService {
     public Page<UserResponse> searchUsers(String keyword, Pageable pageable) {
         log.debug("Searching users with keyword: {}", keyword);
 
-        String lowerKeyword = keyword.toLowerCase();
-
-        List<User> allUsers = userRepository.findAll();
-        List<User> matchingUsers = allUsers.stream()
-                .filter(user -> 
-                    user.getFullName().toLowerCase().contains(lowerKeyword) ||
-                    user.getEmail().toLowerCase().contains(lowerKeyword) ||
-                    (user.getPhoneNumber() != null && user.getPhoneNumber().contains(keyword))
-                )
-                .collect(Collectors.toList());
-
-        // Manual pagination
-        int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), matchingUsers.size());
-        List<User> pageContent = matchingUsers.subList(start, end);
-
-        Page<User> page = new PageImpl<>(pageContent, pageable, matchingUsers.size());
-        return page.map(entityMapper::toUserResponse);
+        // Filtered and paged in the database
+        Page<User> users = userRepository.searchByKeyword(SearchText.containsPattern(keyword), pageable);
+        return users.map(entityMapper::toUserResponse);
     }
 }
@@ -32,6 +32,47 @@ public final class AppConstants {
     public static final String REDIS_FOOD_ITEM_CACHE_PREFIX = "food_item:";
     public static final String REDIS_STORE_CACHE_PREFIX = "store:";
     public static final String REDIS_USER_CACHE_PREFIX = "user:";
+    public static final String REDIS_CACHE_CHANNEL = "cache:invalidate";
+    public static final String REDIS_CATEGORY_TREE_VERSION_KEY = "category_tree:version";
+    public static final String REDIS_CATEGORY_TREE_CHANNEL = "category_tree:changed";
+    
+    // Cache Names (two-level cache, see CacheConfig)
+    public static final String CACHE_FOOD_ITEMS = "foodItems";
+    public static final String CACHE_STORES = "stores";
+    
+    // Redis Stock Ledger Keys
+    public static final String REDIS_STOCK_PREFIX = "stock:food_item:";
+    public static final String REDIS_STOCK_CLOSED_SUFFIX = ":closed";
+    public static final String REDIS_STOCK_DIRTY_KEY = "stock:dirty";
+    public static final String REDIS_SOLD_OUT_CHANNEL = "stock:sold_out";
+    
+    // Redis Stock Lease Ledger Keys (per-node hash of unsold leased units, deadlines of every lease)
+    public static final String REDIS_STOCK_LEASE_PREFIX = "stock:lease:node:";
+    public static final String REDIS_STOCK_LEASE_DEADLINES_KEY = "stock:lease:deadlines";
+    
+    // Redis Catalog Channel
+    public static final String REDIS_CATALOG_CHANNEL = "catalog:changed";
+    
+    // Redis Search Channel
+    public static final String REDIS_SEARCH_CHANNEL = "search:changed";
+    
+    // Redis Store Geo Index Channel
+    public static final String REDIS_GEO_CHANNEL = "geo:changed";
+    
+    // Redis Live Facet Count Keys
+    public static final String REDIS_FACET_LIVE_KEY = "facet:live";
+    public static final String REDIS_FACET_CATEGORY_KEY = "facet:category";
+    public static final String REDIS_FACET_STORE_KEY = "facet:store";
+    public static final String REDIS_FACET_CELL_KEY = "facet:cell";
+    
+    // Redis Idempotency Keys
+    public static final String REDIS_IDEMPOTENCY_PREFIX = "idempotency:";
+    
+    // Redis Admission (waiting room) Keys
+    public static final String REDIS_ADMISSION_PREFIX = "admission:";
+    
+    // Redis Order Node Id Lease Keys
+    public static final String REDIS_ORDER_NODE_PREFIX = "order_node:";
     
     // Redis Lock Keys
     public static final String LOCK_ORDER_PREFIX = "order:";
@@ -0,0 +1,93 @@
+package com.flashfood.flash_food.util;
+
+import com.flashfood.flash_food.exception.InvalidOperationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a nearby listing ordered by (distance ASC, id), used for cursor pagination
+ *
+ * Equal distances are ordered by the ID's decimal string, which is how Redis orders members with equal scores,
+ * so a position means the same thing for pages read from the in-memory geo index and from Redis. The cursor also
+ * counts the hits handed out so far, so a listing can stop at a fixed length without re-reading earlier slices.
+ * Clients see the position as an opaque token: base64url of "distanceKm|id|count".
+ */
+public final class DistanceCursor {
+    
+    private static final String SEPARATOR = "|";
+    private static final int MAX_SIZE = Integer.parseInt(AppConstants.MAX_PAGE_SIZE);
+    
+    /**
+     * Position before the first hit
+     */
+    public static final DistanceCursor START = new DistanceCursor(-1.0, "", 0);
+    
+    private final double distanceKm;
+    private final String id;
+    private final int count;
+    
+    private DistanceCursor(double distanceKm, String id, int count) {
+        this.distanceKm = distanceKm;
+        this.id = id;
+        this.count = count;
+    }
+    
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+    
+    /**
+     * Number of hits up to and including this position
+     */
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * Whether the hit comes after this position
+     */
+    public boolean isBefore(GeoGrid.Hit hit) {
+        return hit.distanceKm() > distanceKm
+                || (hit.distanceKm() == distanceKm && Long.toString(hit.id()).compareTo(id) > 0);
+    }
+    
+    /**
+     * Parse a token handed out as nextCursor; null or blank means the first slice
+     * @throws InvalidOperationException if the token was not issued by this API
+     */
+    public static DistanceCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return START;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.indexOf(SEPARATOR);
+            int countSeparator = value.indexOf(SEPARATOR, separator + 1);
+            int count = Integer.parseInt(value.substring(countSeparator + 1));
+            if (count < 0) {
+                throw new IllegalArgumentException("Negative count");
+            }
+            return new DistanceCursor(Double.parseDouble(value.substring(0, separator)),
+                    Long.valueOf(value.substring(separator + 1, countSeparator)).toString(), count);
+        } catch (RuntimeException e) {
+            throw new InvalidOperationException("Invalid cursor: " + token);
+        }
+    }
+    
+    /**
+     * Token for the position of a hit
+     * @param count Number of hits up to and including this one
+     */
+    public static String encode(GeoGrid.Hit hit, int count) {
+        String value = hit.distanceKm() + SEPARATOR + hit.id() + SEPARATOR + count;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Requested slice size, capped like offset pages
+     */
+    public static int pageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_SIZE));
+    }
+}
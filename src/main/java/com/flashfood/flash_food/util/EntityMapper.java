@@ -63,6 +63,7 @@ public class EntityMapper {
                 .flashSaleTime(store.getFlashSaleTime())
                 .rating(store.getRating())
                 .totalRatings(store.getTotalRatings())
+                .createdAt(store.getCreatedAt())
                 .build();
     }
     
@@ -92,6 +93,8 @@ public class EntityMapper {
                 .saleStartTime(foodItem.getSaleStartTime())
                 .saleEndTime(foodItem.getSaleEndTime())
                 .status(foodItem.getStatus() != null ? foodItem.getStatus().getDisplayName() : null)
+                .stockMode(foodItem.getStockMode() != null ? foodItem.getStockMode().getDisplayName() : null)
+                .createdAt(foodItem.getCreatedAt())
                 .build();
     }
     
@@ -101,13 +104,32 @@ public class EntityMapper {
     public OrderResponse toOrderResponse(Order order) {
         if (order == null) return null;
         
+        return orderResponseBuilder(order)
+                .storeId(order.getStore() != null ? order.getStore().getId() : null)
+                .storeName(order.getStore() != null ? order.getStore().getName() : null)
+                .storeAddress(order.getStore() != null ? order.getStore().getAddress() : null)
+                .build();
+    }
+    
+    /**
+     * Map Order entity to OrderResponse DTO, taking the store fields from an already loaded StoreResponse
+     * (the order's store may be an uninitialized reference)
+     */
+    public OrderResponse toOrderResponse(Order order, StoreResponse store) {
+        if (order == null) return null;
+        
+        return orderResponseBuilder(order)
+                .storeId(store.getId())
+                .storeName(store.getName())
+                .storeAddress(store.getAddress())
+                .build();
+    }
+    
+    private OrderResponse.OrderResponseBuilder orderResponseBuilder(Order order) {
         return OrderResponse.builder()
                 .id(order.getId())
                 .orderNumber(order.getOrderNumber())
                 .userId(order.getUser() != null ? order.getUser().getId() : null)
-                .storeId(order.getStore() != null ? order.getStore().getId() : null)
-                .storeName(order.getStore() != null ? order.getStore().getName() : null)
-                .storeAddress(order.getStore() != null ? order.getStore().getAddress() : null)
                 .items(order.getOrderItems() != null ? 
                         order.getOrderItems().stream()
                                 .map(EntityMapper::toOrderItemResponse)
@@ -119,8 +141,8 @@ public class EntityMapper {
                 .paymentStatus(order.getPaymentStatus() != null ? order.getPaymentStatus().getDisplayName() : null)
                 .pickupTime(order.getPickupTime())
                 .specialInstructions(order.getSpecialInstructions())
-                .createdAt(order.getCreatedAt())
-                .build();
+                .reservationExpiresAt(order.getReservationExpiresAt())
+                .createdAt(order.getCreatedAt());
     }
     
     /**
@@ -0,0 +1,286 @@
+package com.flashfood.flash_food.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-memory spatial index of points on a fixed latitude/longitude grid
+ *
+ * Each cell packs its points into parallel arrays, so a radius query reads only the cells overlapping the
+ * circle's bounding box and computes each candidate's haversine distance once. Only the nearest limit hits are
+ * kept, in a bounded heap, so a wide radius costs distance computations but no sort of every point inside it.
+ * Nearest-k widens the radius until it holds k points. Reads share a lock; writes are exclusive.
+ */
+public final class GeoGrid {
+    
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180.0;
+    
+    /**
+     * Nearest first; equal distances by the ID's decimal string, as Redis orders members with equal scores
+     */
+    public static final Comparator<Hit> NEAREST_FIRST = Comparator.comparingDouble(Hit::distanceKm)
+            .thenComparing(hit -> Long.toString(hit.id()));
+    
+    private final double cellSizeDegrees;
+    private final long lonCells;
+    private final long latCells;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Cell> cells = new HashMap<>();
+    // Point id -> key of the cell holding it
+    private final Map<Long, Long> cellByPoint = new HashMap<>();
+    
+    public GeoGrid(double cellSizeDegrees) {
+        if (!(cellSizeDegrees > 0 && cellSizeDegrees <= 90)) {
+            throw new IllegalArgumentException("Cell size must be in (0, 90] degrees: " + cellSizeDegrees);
+        }
+        this.cellSizeDegrees = cellSizeDegrees;
+        this.lonCells = (long) Math.ceil(360.0 / cellSizeDegrees);
+        this.latCells = (long) Math.ceil(180.0 / cellSizeDegrees);
+    }
+    
+    /**
+     * A point and its distance from the query center
+     */
+    public record Hit(long id, double distanceKm) {
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return cellByPoint.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Add the point, or move it if the id is already indexed
+     */
+    public void put(long id, double latitude, double longitude) {
+        long key = cellKey(latIndex(latitude), lonIndex(longitude));
+        lock.writeLock().lock();
+        try {
+            Long previous = cellByPoint.put(id, key);
+            if (previous != null) {
+                removeFromCell(previous, id);
+            }
+            cells.computeIfAbsent(key, k -> new Cell()).add(id, latitude, longitude);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Long key = cellByPoint.remove(id);
+            if (key != null) {
+                removeFromCell(key, id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Up to limit points within the radius, nearest first
+     */
+    public List<Hit> withinRadius(double latitude, double longitude, double radiusKm, int limit) {
+        return withinRadius(latitude, longitude, radiusKm, hit -> true, limit);
+    }
+    
+    /**
+     * Up to limit points within the radius that pass the filter (e.g. those after a cursor), nearest first
+     */
+    public List<Hit> withinRadius(double latitude, double longitude, double radiusKm, Predicate<Hit> filter,
+                                  int limit) {
+        Nearest hits = new Nearest(radiusKm, filter, limit);
+        double latSpan = radiusKm / KM_PER_DEGREE;
+        double maxLat = Math.min(90.0, Math.abs(latitude) + latSpan);
+        // Longitude degrees shrink towards the poles; past them (or for huge circles) every longitude qualifies
+        double lonSpan = maxLat >= 89.0 ? 180.0 : latSpan / Math.cos(Math.toRadians(maxLat));
+        
+        long fromLat = latIndex(latitude - latSpan);
+        long toLat = latIndex(latitude + latSpan);
+        boolean allLongitudes = 2 * lonSpan + cellSizeDegrees >= 360.0;
+        long firstLon = allLongitudes ? 0 : lonIndex(longitude - lonSpan);
+        // Counted modulo the grid width, so a box across the antimeridian wraps around
+        long lonCount = allLongitudes ? lonCells : Math.floorMod(lonIndex(longitude + lonSpan) - firstLon, lonCells) + 1;
+        
+        Haversine haversine = new Haversine(latitude, longitude);
+        lock.readLock().lock();
+        try {
+            if ((toLat - fromLat + 1) * lonCount > cells.size()) {
+                // Circle covers more cells than are occupied
+                for (Cell cell : cells.values()) {
+                    cell.collect(haversine, hits);
+                }
+            } else {
+                for (long lat = fromLat; lat <= toLat; lat++) {
+                    for (long i = 0; i < lonCount; i++) {
+                        Cell cell = cells.get(cellKey(lat, (firstLon + i) % lonCells));
+                        if (cell != null) {
+                            cell.collect(haversine, hits);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return hits.sorted();
+    }
+    
+    /**
+     * Up to limit points nearest the center, nearest first, none farther than maxRadiusKm
+     */
+    public List<Hit> nearest(double latitude, double longitude, int limit, double maxRadiusKm) {
+        double radiusKm = Math.min(maxRadiusKm, cellSizeDegrees * KM_PER_DEGREE);
+        while (true) {
+            List<Hit> hits = withinRadius(latitude, longitude, radiusKm, limit);
+            // Exact for this radius, so once it holds limit points the nearest ones are all inside it
+            if (hits.size() >= limit || radiusKm >= maxRadiusKm) {
+                return hits;
+            }
+            radiusKm = Math.min(maxRadiusKm, radiusKm * 2);
+        }
+    }
+    
+    private void removeFromCell(long key, long id) {
+        Cell cell = cells.get(key);
+        if (cell != null && cell.remove(id) && cell.size == 0) {
+            cells.remove(key);
+        }
+    }
+    
+    private long latIndex(double latitude) {
+        return Math.min(latCells - 1, Math.max(0, (long) Math.floor((latitude + 90.0) / cellSizeDegrees)));
+    }
+    
+    private long lonIndex(double longitude) {
+        long index = (long) Math.floor((longitude + 180.0) / cellSizeDegrees) % lonCells;
+        return index < 0 ? index + lonCells : index;
+    }
+    
+    private static long cellKey(long latIndex, long lonIndex) {
+        return (latIndex << 32) | lonIndex;
+    }
+    
+    /**
+     * Haversine distance from a fixed center (same formula as HelperUtils.calculateDistance)
+     */
+    private static final class Haversine {
+        
+        private final double latRadians;
+        private final double lonRadians;
+        private final double cosLat;
+        
+        private Haversine(double latitude, double longitude) {
+            this.latRadians = Math.toRadians(latitude);
+            this.lonRadians = Math.toRadians(longitude);
+            this.cosLat = Math.cos(latRadians);
+        }
+        
+        private double distanceKm(double latitude, double longitude) {
+            double pointLat = Math.toRadians(latitude);
+            double sinLat = Math.sin((pointLat - latRadians) / 2);
+            double sinLon = Math.sin((Math.toRadians(longitude) - lonRadians) / 2);
+            double a = sinLat * sinLat + cosLat * Math.cos(pointLat) * sinLon * sinLon;
+            return 2 * EARTH_RADIUS_KM * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        }
+    }
+    
+    /**
+     * The nearest limit hits seen so far, farthest on top of the heap
+     * Once full, candidates beyond the farthest kept hit are rejected without allocating
+     */
+    private static final class Nearest {
+        
+        private final Predicate<Hit> filter;
+        private final int limit;
+        private final PriorityQueue<Hit> farthestFirst = new PriorityQueue<>(NEAREST_FIRST.reversed());
+        private double radiusKm;
+        
+        private Nearest(double radiusKm, Predicate<Hit> filter, int limit) {
+            this.radiusKm = radiusKm;
+            this.filter = filter;
+            this.limit = limit;
+        }
+        
+        private void offer(long id, double distanceKm) {
+            if (distanceKm > radiusKm || limit <= 0) {
+                return;
+            }
+            Hit hit = new Hit(id, distanceKm);
+            if (!filter.test(hit)) {
+                return;
+            }
+            if (farthestFirst.size() < limit) {
+                farthestFirst.add(hit);
+            } else if (NEAREST_FIRST.compare(hit, farthestFirst.peek()) < 0) {
+                farthestFirst.poll();
+                farthestFirst.add(hit);
+            }
+            if (farthestFirst.size() == limit) {
+                radiusKm = farthestFirst.peek().distanceKm();
+            }
+        }
+        
+        private List<Hit> sorted() {
+            List<Hit> hits = new ArrayList<>(farthestFirst);
+            hits.sort(NEAREST_FIRST);
+            return hits;
+        }
+    }
+    
+    /**
+     * Points of one cell in parallel arrays; removal swaps the last point into the gap
+     */
+    private static final class Cell {
+        
+        private long[] ids = new long[4];
+        private double[] latitudes = new double[4];
+        private double[] longitudes = new double[4];
+        private int size;
+        
+        private void add(long id, double latitude, double longitude) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                latitudes = Arrays.copyOf(latitudes, size * 2);
+                longitudes = Arrays.copyOf(longitudes, size * 2);
+            }
+            ids[size] = id;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            size++;
+        }
+        
+        private boolean remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    size--;
+                    ids[i] = ids[size];
+                    latitudes[i] = latitudes[size];
+                    longitudes[i] = longitudes[size];
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        private void collect(Haversine haversine, Nearest hits) {
+            for (int i = 0; i < size; i++) {
+                hits.offer(ids[i], haversine.distanceKm(latitudes[i], longitudes[i]));
+            }
+        }
+    }
+}
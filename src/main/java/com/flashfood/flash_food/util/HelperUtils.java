@@ -2,7 +2,6 @@ package com.flashfood.flash_food.util;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 /**
  * Utility helper methods
@@ -13,13 +12,6 @@ public final class HelperUtils {
         // Prevent instantiation
     }
     
-    /**
-     * Generate unique order number
-     */
-    public static String generateOrderNumber() {
-        return "ORD-" + System.currentTimeMillis() + "-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-    }
-    
     /**
      * Calculate discount percentage
      */
@@ -0,0 +1,104 @@
+package com.flashfood.flash_food.util;
+
+import com.flashfood.flash_food.dto.response.CursorPageResponse;
+import com.flashfood.flash_food.exception.InvalidOperationException;
+import org.springframework.data.domain.Limit;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Position in a listing ordered by (createdAt DESC, id DESC), used for keyset (seek) pagination
+ *
+ * Repositories read the rows strictly after the position, so every slice is one index range scan of
+ * page size + 1 rows whatever its depth, and no COUNT runs. The +1 row only tells whether another slice exists.
+ * Clients see the position as an opaque token: base64url of "createdAt|id".
+ */
+public final class KeysetCursor {
+    
+    private static final String SEPARATOR = "|";
+    private static final int MAX_SIZE = Integer.parseInt(AppConstants.MAX_PAGE_SIZE);
+    
+    /**
+     * Position before the first row: later than any stored timestamp (and still inside Postgres' range)
+     */
+    public static final KeysetCursor START = new KeysetCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+    
+    private final LocalDateTime createdAt;
+    private final Long id;
+    
+    private KeysetCursor(LocalDateTime createdAt, Long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    /**
+     * Parse a token handed out as nextCursor; null or blank means the first slice
+     * @throws InvalidOperationException if the token was not issued by this API
+     */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return START;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.indexOf(SEPARATOR);
+            return new KeysetCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.valueOf(value.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new InvalidOperationException("Invalid cursor: " + token);
+        }
+    }
+    
+    public static String encode(LocalDateTime createdAt, Long id) {
+        String value = createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Rows to read for a slice of the requested size: one more than the size, capped like offset pages
+     */
+    public static Limit limit(int size) {
+        return Limit.of(clamp(size) + 1);
+    }
+    
+    /**
+     * Build the response from rows read with limit(size), mapping only the rows that are returned
+     */
+    public static <E, R> CursorPageResponse<R> page(List<E> rows, int size,
+                                                    Function<E, LocalDateTime> createdAt,
+                                                    Function<E, Long> id,
+                                                    Function<E, R> mapper) {
+        int pageSize = clamp(size);
+        boolean hasNext = rows.size() > pageSize;
+        List<E> content = hasNext ? rows.subList(0, pageSize) : rows;
+        
+        String nextCursor = null;
+        if (hasNext) {
+            E last = content.get(content.size() - 1);
+            nextCursor = encode(createdAt.apply(last), id.apply(last));
+        }
+        
+        return CursorPageResponse.<R>builder()
+                .content(content.stream().map(mapper).toList())
+                .size(pageSize)
+                .hasNext(hasNext)
+                .nextCursor(nextCursor)
+                .build();
+    }
+    
+    private static int clamp(int size) {
+        return Math.max(1, Math.min(size, MAX_SIZE));
+    }
+}
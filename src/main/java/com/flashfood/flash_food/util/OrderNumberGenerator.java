@@ -0,0 +1,247 @@
+package com.flashfood.flash_food.util;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free generator of unique, time-sortable order numbers (Snowflake layout)
+ *
+ * 63-bit id = 41 bits milliseconds since 2025-01-01 UTC | 8 bits store shard | 6 bits node | 8 bits sequence,
+ * printed as "ORD-" + 13 Crockford base32 characters. Fixed width keeps string order equal to numeric order,
+ * so order numbers sort by creation time. Uniqueness needs a distinct node id (0-63) per app node;
+ * up to 256 numbers per millisecond per node, borrowing the next millisecond when the sequence runs out.
+ * The store shard (storeId mod 256) and creation time can be read back from the number alone.
+ *
+ * The node id is app.order.node-id when set. Otherwise it is leased from Redis at startup ("order_node:{id}",
+ * SET NX with a TTL) and renewed by OrderNodeLeaseScheduler; the application refuses to start when no id is free
+ * or Redis cannot be reached, rather than guess one that another node may hold.
+ */
+@Slf4j
+@Component
+public class OrderNumberGenerator {
+    
+    public static final String PREFIX = "ORD-";
+    
+    private static final long EPOCH_MS = 1735689600000L; // 2025-01-01T00:00:00Z
+    
+    private static final int SEQUENCE_BITS = 8;
+    private static final int NODE_BITS = 6;
+    private static final int SHARD_BITS = 8;
+    
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final int NODE_COUNT = 1 << NODE_BITS;
+    public static final int SHARD_COUNT = 1 << SHARD_BITS;
+    
+    private static final int NODE_SHIFT = SEQUENCE_BITS;
+    private static final int SHARD_SHIFT = SEQUENCE_BITS + NODE_BITS;
+    private static final int TIME_SHIFT = SEQUENCE_BITS + NODE_BITS + SHARD_BITS;
+    
+    private static final int ENCODED_LENGTH = 13; // ceil(63 / 5)
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    
+    /**
+     * KEYS[1] = node id lease, ARGV[1] = this node's token, ARGV[2] = TTL in milliseconds
+     * Extends the lease while this node holds it, takes it back if it lapsed unclaimed; 0 if another node took it
+     */
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>("""
+            local holder = redis.call('GET', KEYS[1])
+            if holder == ARGV[1] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            if not holder then
+                redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+                return 1
+            end
+            return 0
+            """, Long.class);
+    
+    /**
+     * KEYS[1] = node id lease, ARGV[1] = this node's token
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+    
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Duration leaseTtl;
+    private final String leaseToken = UUID.randomUUID().toString();
+    private final boolean leased;
+    
+    private volatile long nodeId;
+    
+    // Last issued (timestamp << SEQUENCE_BITS | sequence); advanced with compare-and-set only
+    private final AtomicLong lastState = new AtomicLong();
+    
+    public OrderNumberGenerator(@Value("${app.order.node-id:-1}") long configuredNodeId,
+                                @Value("${app.order.node-lease-seconds:60}") long leaseSeconds,
+                                StringRedisTemplate stringRedisTemplate) {
+        if (configuredNodeId > MAX_NODE) {
+            throw new IllegalStateException("app.order.node-id must be between 0 and " + MAX_NODE);
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.leaseTtl = Duration.ofSeconds(leaseSeconds);
+        this.leased = configuredNodeId < 0;
+        this.nodeId = leased ? leaseNodeId() : configuredNodeId;
+        if (leased) {
+            log.info("app.order.node-id is not set, leased order node id {} from Redis", nodeId);
+        }
+    }
+    
+    /**
+     * Next order number for an order of the given store
+     */
+    public String next(Long storeId) {
+        long state = nextState();
+        long timestamp = state >>> SEQUENCE_BITS;
+        long sequence = state & MAX_SEQUENCE;
+        long shard = Math.floorMod(storeId != null ? storeId : 0L, SHARD_COUNT);
+        
+        long id = timestamp << TIME_SHIFT | shard << SHARD_SHIFT | nodeId << NODE_SHIFT | sequence;
+        return encode(id);
+    }
+    
+    /**
+     * Extend this node's leased node id; if another node took it (this one stalled past the TTL), lease a new one
+     */
+    public void renewNodeLease() {
+        if (!leased) {
+            return;
+        }
+        Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, List.of(leaseKey(nodeId)),
+                leaseToken, String.valueOf(leaseTtl.toMillis()));
+        if (renewed == null || renewed == 0) {
+            long lost = nodeId;
+            nodeId = leaseNodeId();
+            log.error("Order node id {} was leased by another node, switched to {}", lost, nodeId);
+        }
+    }
+    
+    /**
+     * Hand the leased node id back so a restarted node can take it at once
+     */
+    @PreDestroy
+    public void releaseNodeLease() {
+        if (!leased) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey(nodeId)), leaseToken);
+        } catch (Exception e) {
+            // Expires after the lease TTL
+            log.warn("Error releasing order node id {}", nodeId, e);
+        }
+    }
+    
+    /**
+     * Store shard encoded in an order number, or -1 for numbers in an older format
+     */
+    public static int shardOf(String orderNumber) {
+        long id = decode(orderNumber);
+        return id < 0 ? -1 : (int) (id >>> SHARD_SHIFT & (SHARD_COUNT - 1));
+    }
+    
+    /**
+     * Creation time (epoch millis) encoded in an order number, or -1 for numbers in an older format
+     */
+    public static long timestampOf(String orderNumber) {
+        long id = decode(orderNumber);
+        return id < 0 ? -1 : (id >>> TIME_SHIFT) + EPOCH_MS;
+    }
+    
+    private long nextState() {
+        while (true) {
+            long last = lastState.get();
+            long now = System.currentTimeMillis() - EPOCH_MS;
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else if ((last & MAX_SEQUENCE) < MAX_SEQUENCE) {
+                // Same millisecond, or the clock stepped back: stay on the last timestamp
+                next = last + 1;
+            } else {
+                // Sequence exhausted: borrow the next millisecond instead of spinning
+                next = (lastTimestamp + 1) << SEQUENCE_BITS;
+            }
+            
+            if (lastState.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+    
+    private static String encode(long id) {
+        char[] chars = new char[PREFIX.length() + ENCODED_LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        for (int i = chars.length - 1; i >= PREFIX.length(); i--) {
+            chars[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+    
+    private static long decode(String orderNumber) {
+        if (orderNumber == null || orderNumber.length() != PREFIX.length() + ENCODED_LENGTH
+                || !orderNumber.startsWith(PREFIX)) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = PREFIX.length(); i < orderNumber.length(); i++) {
+            int digit = digitOf(orderNumber.charAt(i));
+            // The leading character only carries the top 3 bits of a 63-bit id
+            if (digit < 0 || (i == PREFIX.length() && digit > 7)) {
+                return -1;
+            }
+            id = id << 5 | digit;
+        }
+        return id;
+    }
+    
+    private static int digitOf(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * First free node id, probing from a random one so starting nodes rarely contend for the same key
+     */
+    private long leaseNodeId() {
+        int start = ThreadLocalRandom.current().nextInt(NODE_COUNT);
+        try {
+            for (int i = 0; i < NODE_COUNT; i++) {
+                long candidate = (start + i) & MAX_NODE;
+                if (Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                        .setIfAbsent(leaseKey(candidate), leaseToken, leaseTtl))) {
+                    return candidate;
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot lease an order node id from Redis; set app.order.node-id", e);
+        }
+        throw new IllegalStateException("All " + NODE_COUNT + " order node ids are leased; set app.order.node-id");
+    }
+    
+    private static String leaseKey(long nodeId) {
+        return AppConstants.REDIS_ORDER_NODE_PREFIX + nodeId;
+    }
+}
@@ -0,0 +1,74 @@
+package com.flashfood.flash_food.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Text normalization shared by the search index and database keyword queries
+ *
+ * Vietnamese text is folded to plain ASCII so "Bánh ngọt", "banh ngot" and "BANH NGOT" produce the same terms:
+ * diacritics are stripped after NFD decomposition and đ/Đ, which does not decompose, becomes d.
+ */
+public final class SearchText {
+    
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+    private static final char BOUNDARY = '$';
+    
+    private SearchText() {
+        // Prevent instantiation
+    }
+    
+    /**
+     * Lowercase ASCII form of the text
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text.replace('đ', 'd').replace('Đ', 'D'), Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Distinct folded words of the text, in order of appearance
+     */
+    public static List<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String term : SEPARATORS.split(fold(text))) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+    
+    /**
+     * Trigrams of a term with its boundaries marked, e.g. "com" -> $co, com, om$
+     */
+    public static Set<String> trigrams(String term) {
+        String padded = BOUNDARY + term + BOUNDARY;
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+    
+    /**
+     * LIKE pattern matching the keyword anywhere, lowercased, with LIKE wildcards escaped
+     * (Postgres default escape character is '\')
+     */
+    public static String containsPattern(String keyword) {
+        String escaped = keyword.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
@@ -0,0 +1,48 @@
+package com.flashfood.flash_food.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Hooks for side effects outside the database (Redis, node-local indexes, broadcasts) that must follow the outcome
+ * of the surrounding transaction
+ */
+public final class TransactionCallbacks {
+    
+    private TransactionCallbacks() {
+        // Prevent instantiation
+    }
+    
+    /**
+     * Run the action once the surrounding transaction commits, or right away when there is none
+     */
+    public static void runAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+    
+    /**
+     * Run the action if the surrounding transaction rolls back; without a transaction there is nothing to undo
+     */
+    public static void runOnRollback(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package com.flashfood.flash_food;
+
+import com.flashfood.flash_food.entity.Category;
+import com.flashfood.flash_food.entity.FoodItem;
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.Store;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unsaved Store, Category and FoodItem rows for tests against the configured database.
+ * Names, slugs and emails carry a suffix unique to the JVM run, so fixtures never clash with rows that are
+ * already there or that another test class left behind.
+ */
+public final class TestFixtures {
+
+	private static final AtomicLong SUFFIX = new AtomicLong(System.currentTimeMillis() * 1000);
+
+	private TestFixtures() {
+	}
+
+	/**
+	 * Suffix no other call returns, for columns with unique constraints
+	 */
+	public static long uniqueSuffix() {
+		return SUFFIX.incrementAndGet();
+	}
+
+	/**
+	 * Active store in Ho Chi Minh City with a unique owner email
+	 */
+	public static Store store(String name) {
+		Store store = new Store();
+		store.setName(name);
+		store.setAddress("1 Test Street");
+		store.setPhoneNumber("0123456789");
+		store.setLatitude(10.77);
+		store.setLongitude(106.70);
+		store.setOwnerEmail(slug(name) + "-" + uniqueSuffix() + "@flashfood.test");
+		return store;
+	}
+
+	/**
+	 * Category with a unique name and slug
+	 */
+	public static Category category(String name) {
+		long suffix = uniqueSuffix();
+		Category category = new Category();
+		category.setName(name + " " + suffix);
+		category.setSlug(slug(name) + "-" + suffix);
+		return category;
+	}
+
+	/**
+	 * Item on sale since an hour ago for two more hours, with every unit still available
+	 * The stock mode is left unset, as on rows created before stock modes existed
+	 */
+	public static FoodItem foodItem(Store store, Category category, String name, int quantity) {
+		FoodItem foodItem = new FoodItem();
+		foodItem.setStore(store);
+		foodItem.setCategory(category);
+		foodItem.setName(name);
+		foodItem.setOriginalPrice(BigDecimal.valueOf(40_000));
+		foodItem.setFlashPrice(BigDecimal.valueOf(12_000));
+		foodItem.setTotalQuantity(quantity);
+		foodItem.setAvailableQuantity(quantity);
+		foodItem.setSaleStartTime(LocalDateTime.now().minusHours(1));
+		foodItem.setSaleEndTime(LocalDateTime.now().plusHours(2));
+		foodItem.setStatus(FoodItemStatus.AVAILABLE);
+		return foodItem;
+	}
+
+	private static String slug(String name) {
+		return name.toLowerCase().replace(' ', '-');
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.flashfood.flash_food.repository;
+
+import com.flashfood.flash_food.TestFixtures;
+import com.flashfood.flash_food.entity.Category;
+import com.flashfood.flash_food.entity.FoodItem;
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.StockMode;
+import com.flashfood.flash_food.entity.Store;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Set-based stock statements against rows of every stock mode, including rows created before stock modes
+ * existed: ddl-auto added stock_mode as NULL to those, and they must behave as database mode.
+ * Runs against the configured Postgres database (the statements are native); all data is rolled back.
+ */
+@Tag("integration")
+@DataJpaTest(properties = "spring.test.database.replace=none")
+class FoodItemStockQueriesTest {
+
+	private static final int STOCK = 10;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private FoodItemRepository foodItemRepository;
+
+	private Store store;
+	private Category category;
+
+	@BeforeEach
+	void setUp() {
+		store = TestFixtures.store("Stock Query Bakery");
+		entityManager.persist(store);
+		category = TestFixtures.category("Stock Queries");
+		entityManager.persist(category);
+	}
+
+	@Test
+	void reservesLegacyRowWithoutStockMode() {
+		FoodItem legacy = persistFoodItem(null);
+
+		List<FoodItemRepository.StockShortageView> shortages = reserve(legacy, 3);
+
+		assertThat(shortages).isEmpty();
+		assertThat(foodItemRepository.findAvailableQuantityById(legacy.getId())).contains(STOCK - 3);
+	}
+
+	@Test
+	void reportsRowInAnotherModeAsNotRead() {
+		FoodItem leased = persistFoodItem(StockMode.LEASED);
+
+		List<FoodItemRepository.StockShortageView> shortages = reserve(leased, 3);
+
+		assertThat(shortages).singleElement().satisfies(shortage -> {
+			assertThat(shortage.getAvailable()).isZero();
+			assertThat(shortage.getInStockMode()).isFalse();
+		});
+		assertThat(foodItemRepository.findAvailableQuantityById(leased.getId())).contains(STOCK);
+	}
+
+	@Test
+	void reportsSoldOutRowAsRead() {
+		FoodItem foodItem = persistFoodItem(StockMode.DATABASE);
+		assertThat(reserve(foodItem, STOCK)).isEmpty();
+
+		List<FoodItemRepository.StockShortageView> shortages = reserve(foodItem, 1);
+
+		assertThat(shortages).singleElement().satisfies(shortage -> {
+			assertThat(shortage.getAvailable()).isZero();
+			assertThat(shortage.getInStockMode()).isTrue();
+		});
+	}
+
+	@Test
+	void restoresLegacyRowWithoutStockMode() {
+		FoodItem legacy = persistFoodItem(null);
+		assertThat(reserve(legacy, 4)).isEmpty();
+
+		List<Long> restored = foodItemRepository.restoreQuantities(new Long[] {legacy.getId()}, new Integer[] {4},
+				StockMode.DATABASE.getCode(), FoodItemStatus.AVAILABLE.getCode(), FoodItemStatus.OUT_OF_STOCK.getCode());
+
+		assertThat(restored).containsExactly(legacy.getId());
+		assertThat(foodItemRepository.findAvailableQuantityById(legacy.getId())).contains(STOCK);
+	}
+
+	private List<FoodItemRepository.StockShortageView> reserve(FoodItem foodItem, int quantity) {
+		return foodItemRepository.reserveQuantities(new Long[] {foodItem.getId()}, new Integer[] {quantity},
+				StockMode.DATABASE.getCode(), FoodItemStatus.OUT_OF_STOCK.getCode());
+	}
+
+	private FoodItem persistFoodItem(StockMode stockMode) {
+		FoodItem foodItem = TestFixtures.foodItem(store, category, "Stock item", STOCK);
+		foodItem.setStockMode(stockMode);
+		entityManager.persist(foodItem);
+		entityManager.flush();
+		entityManager.clear();
+		return foodItem;
+	}
+
+}
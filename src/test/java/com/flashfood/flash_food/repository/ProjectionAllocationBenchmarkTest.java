@@ -0,0 +1,106 @@
+package com.flashfood.flash_food.repository;
+
+import com.flashfood.flash_food.TestFixtures;
+import com.flashfood.flash_food.dto.response.FoodItemResponse;
+import com.flashfood.flash_food.entity.Category;
+import com.flashfood.flash_food.entity.FoodItem;
+import com.flashfood.flash_food.entity.Store;
+import com.flashfood.flash_food.util.EntityMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Before/after allocation benchmark for the browse endpoints.
+ * "Entity" is the old path: a page of managed FoodItem entities (store and category joined) copied into
+ * FoodItemResponse by EntityMapper. "Projection" selects straight into FoodItemResponse.
+ * Both run in one persistence context that is cleared after every page, as a request would see it,
+ * and the bytes allocated by this thread are read from the JVM's per-thread counter.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.test.database.replace=none")
+class ProjectionAllocationBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(ProjectionAllocationBenchmarkTest.class);
+
+	private static final int ITEMS = 100;
+	private static final int PAGE_SIZE = 50;
+	private static final int WARMUP = 200;
+	private static final int ITERATIONS = 1000;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private FoodItemRepository foodItemRepository;
+
+	private final com.sun.management.ThreadMXBean threadBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	@BeforeEach
+	void setUp() {
+		Store store = TestFixtures.store("Allocation Bakery");
+		entityManager.persist(store);
+
+		Category category = TestFixtures.category("Allocation");
+		entityManager.persist(category);
+
+		for (int i = 0; i < ITEMS; i++) {
+			FoodItem foodItem = TestFixtures.foodItem(store, category, "Croissant " + i, 20);
+			foodItem.setDescription("Butter croissant baked this morning");
+			entityManager.persist(foodItem);
+		}
+
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Test
+	void projectionAllocatesLessThanEntityMapping() {
+		Pageable pageable = PageRequest.of(0, PAGE_SIZE, Sort.by(Sort.Direction.DESC, "createdAt"));
+
+		Supplier<List<FoodItemResponse>> entityPath = () -> foodItemRepository.findAll(pageable)
+				.map(EntityMapper::toFoodItemResponse).getContent();
+		Supplier<List<FoodItemResponse>> projectionPath = () -> foodItemRepository.findAllResponses(pageable)
+				.getContent();
+
+		assertThat(projectionPath.get()).usingRecursiveFieldByFieldElementComparator()
+				.containsExactlyElementsOf(entityPath.get());
+
+		measure(entityPath, WARMUP);
+		measure(projectionPath, WARMUP);
+		long entityBytes = measure(entityPath, ITERATIONS);
+		long projectionBytes = measure(projectionPath, ITERATIONS);
+
+		log.info("Page of {} food items: entity + mapper {} KB/page, projection {} KB/page ({}% less)",
+				PAGE_SIZE, entityBytes / ITERATIONS / 1024, projectionBytes / ITERATIONS / 1024,
+				100 * (entityBytes - projectionBytes) / entityBytes);
+
+		assertThat(projectionBytes).isLessThan(entityBytes);
+	}
+
+	private long measure(Supplier<List<FoodItemResponse>> loader, int iterations) {
+		long threadId = Thread.currentThread().threadId();
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < iterations; i++) {
+			assertThat(loader.get()).hasSize(PAGE_SIZE);
+			entityManager.clear();
+		}
+		return threadBean.getThreadAllocatedBytes(threadId) - before;
+	}
+
+}
@@ -0,0 +1,174 @@
+package com.flashfood.flash_food.repository;
+
+import com.flashfood.flash_food.TestFixtures;
+import com.flashfood.flash_food.entity.Category;
+import com.flashfood.flash_food.entity.FoodItem;
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.Order;
+import com.flashfood.flash_food.entity.OrderItem;
+import com.flashfood.flash_food.entity.Store;
+import com.flashfood.flash_food.entity.User;
+import com.flashfood.flash_food.entity.UserRole;
+import com.flashfood.flash_food.util.EntityMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Guard against N+1 loading when list responses are built.
+ * Every page is mapped with EntityMapper exactly like the services do, and the JDBC statements
+ * Hibernate prepared are counted: a page of 20 must cost the same number of statements as a page of 5.
+ * Runs against the configured Postgres database, in CI through the ci profile (mvn -Pci test); all data is
+ * rolled back.
+ */
+@Tag("integration")
+@DataJpaTest(properties = {
+		"spring.test.database.replace=none",
+		"spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class ResponseQueryCountTest {
+
+	private static final int ORDERS = 30;
+	private static final int LINES_PER_ORDER = 5;
+	private static final int SMALL_PAGE = 5;
+	private static final int LARGE_PAGE = 20;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private FoodItemRepository foodItemRepository;
+
+	private Statistics statistics;
+	private User user;
+	private Store store;
+	private Category category;
+
+	@BeforeEach
+	void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		long suffix = TestFixtures.uniqueSuffix();
+		user = new User();
+		user.setEmail("n-plus-one-" + suffix + "@flashfood.test");
+		user.setPassword("secret");
+		user.setFullName("Query Count");
+		user.setPhoneNumber("+84" + suffix);
+		user.setRoles(Set.of(UserRole.CUSTOMER));
+		entityManager.persist(user);
+
+		store = TestFixtures.store("Query Count Bakery");
+		store.setOwnerEmail(user.getEmail());
+		entityManager.persist(store);
+
+		category = TestFixtures.category("Query Count");
+		entityManager.persist(category);
+
+		List<FoodItem> foodItems = new ArrayList<>();
+		for (int i = 0; i < ORDERS; i++) {
+			FoodItem foodItem = TestFixtures.foodItem(store, category, "Item " + i, 100);
+			entityManager.persist(foodItem);
+			foodItems.add(foodItem);
+		}
+
+		for (int i = 0; i < ORDERS; i++) {
+			Order order = new Order();
+			order.setOrderNumber("ORD-QC-" + suffix + "-" + i);
+			order.setUser(user);
+			order.setStore(store);
+			order.setTotalAmount(BigDecimal.valueOf(15_000L * LINES_PER_ORDER));
+			for (int line = 0; line < LINES_PER_ORDER; line++) {
+				OrderItem orderItem = new OrderItem();
+				orderItem.setOrder(order);
+				orderItem.setFoodItem(foodItems.get((i + line) % foodItems.size()));
+				orderItem.setQuantity(1);
+				orderItem.setUnitPrice(BigDecimal.valueOf(15_000));
+				orderItem.setTotalPrice(BigDecimal.valueOf(15_000));
+				order.getOrderItems().add(orderItem);
+			}
+			entityManager.persist(order);
+		}
+
+		entityManager.flush();
+	}
+
+	@Test
+	void storeOrderPageStatementsDoNotGrowWithPageSize() {
+		assertConstantStatements("store orders",
+				() -> orderRepository.findByStoreId(store.getId(), page(SMALL_PAGE))
+						.map(EntityMapper::toOrderResponse).getContent(),
+				() -> orderRepository.findByStoreId(store.getId(), page(LARGE_PAGE))
+						.map(EntityMapper::toOrderResponse).getContent());
+	}
+
+	@Test
+	void myOrderPageStatementsDoNotGrowWithPageSize() {
+		assertConstantStatements("my orders",
+				() -> orderRepository.findByUser(user, page(SMALL_PAGE))
+						.map(EntityMapper::toOrderResponse).getContent(),
+				() -> orderRepository.findByUser(user, page(LARGE_PAGE))
+						.map(EntityMapper::toOrderResponse).getContent());
+	}
+
+	@Test
+	void foodItemPageStatementsDoNotGrowWithPageSize() {
+		assertConstantStatements("store food items",
+				() -> foodItemRepository.findPageByStore(store.getId(), FoodItemStatus.DELETED, page(SMALL_PAGE))
+						.getContent(),
+				() -> foodItemRepository.findPageByStore(store.getId(), FoodItemStatus.DELETED, page(LARGE_PAGE))
+						.getContent());
+	}
+
+	@Test
+	void orderDetailLoadsInOneStatement() {
+		Order order = orderRepository.findByStoreId(store.getId(), page(1)).getContent().get(0);
+		entityManager.clear();
+		statistics.clear();
+
+		orderRepository.findByOrderNumber(order.getOrderNumber()).map(EntityMapper::toOrderResponse).orElseThrow();
+
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+
+	private void assertConstantStatements(String listing, Supplier<List<?>> smallPage, Supplier<List<?>> largePage) {
+		long small = countStatements(smallPage, SMALL_PAGE);
+		long large = countStatements(largePage, LARGE_PAGE);
+
+		assertThat(large).as("statements for a page of %d %s", LARGE_PAGE, listing).isEqualTo(small);
+	}
+
+	private long countStatements(Supplier<List<?>> loader, int expectedRows) {
+		entityManager.clear();
+		statistics.clear();
+		assertThat(loader.get()).hasSize(expectedRows);
+		return statistics.getPrepareStatementCount();
+	}
+
+	private static Pageable page(int size) {
+		return PageRequest.of(0, size, Sort.by(Sort.Direction.DESC, "createdAt"));
+	}
+
+}
@@ -0,0 +1,194 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.TestFixtures;
+import com.flashfood.flash_food.entity.Category;
+import com.flashfood.flash_food.entity.FoodItem;
+import com.flashfood.flash_food.entity.FoodItemStatus;
+import com.flashfood.flash_food.entity.StockMode;
+import com.flashfood.flash_food.entity.Store;
+import com.flashfood.flash_food.exception.InsufficientStockException;
+import com.flashfood.flash_food.repository.CategoryRepository;
+import com.flashfood.flash_food.repository.FoodItemRepository;
+import com.flashfood.flash_food.repository.StoreRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Stampede on a single food item: 1200 concurrent buyers against 500 units, on a real connection pool.
+ * Every buyer claims its unit the way OrderServiceImpl does, outside any transaction, and then holds one of the
+ * pool's few connections for a short order transaction. The batch writer borrows from the same pool, so buyers
+ * waiting on it must not starve it: a starved writer times out on the pool and its buyers fail.
+ * The same stampede then runs on a database-mode item, each buyer taking its unit with reserveQuantities inside
+ * the order transaction, and both runs log orders per second and per-buyer latency for comparison.
+ * Runs against the configured Postgres database; the food items are deleted afterwards.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = {
+		"spring.test.database.replace=none",
+		"spring.datasource.hikari.maximum-pool-size=4",
+		"spring.datasource.hikari.connection-timeout=2000"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BatchedStockServiceLoadTest {
+
+	private static final Logger log = LoggerFactory.getLogger(BatchedStockServiceLoadTest.class);
+
+	private static final int STOCK = 500;
+	private static final int BUYERS = 1200;
+
+	@Autowired
+	private FoodItemRepository foodItemRepository;
+
+	@Autowired
+	private StoreRepository storeRepository;
+
+	@Autowired
+	private CategoryRepository categoryRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private final ExecutorService writerPool = Executors.newFixedThreadPool(4);
+	private final List<FoodItem> foodItems = new ArrayList<>();
+	private TransactionTemplate transactionTemplate;
+	private Store store;
+	private Category category;
+
+	@BeforeEach
+	void setUp() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		store = storeRepository.save(TestFixtures.store("Stampede Bakery"));
+		category = categoryRepository.save(TestFixtures.category("Stampede"));
+	}
+
+	@AfterEach
+	void tearDown() {
+		writerPool.shutdownNow();
+		foodItems.forEach(foodItem -> foodItemRepository.deleteById(foodItem.getId()));
+		categoryRepository.deleteById(category.getId());
+		storeRepository.deleteById(store.getId());
+	}
+
+	@Test
+	void settlesStampedeWithoutOversellingOrStarvingTheWriter() throws Exception {
+		BatchedStockService service = new BatchedStockService(foodItemRepository, mock(SoldOutFilter.class), writerPool);
+		FoodItem batched = saveFoodItem(StockMode.BATCHED);
+		FoodItem database = saveFoodItem(StockMode.DATABASE);
+
+		Stampede batchedRun = stampede(() -> {
+			service.reserve(batched, 1);
+			// The order transaction, opened once the unit is claimed
+			transactionTemplate.executeWithoutResult(
+					status -> foodItemRepository.findAvailableQuantityById(batched.getId()));
+		});
+		Stampede databaseRun = stampede(() -> transactionTemplate.executeWithoutResult(status -> {
+			// The order transaction takes the unit itself and holds the row lock until it commits
+			if (!foodItemRepository.reserveQuantities(new Long[] {database.getId()}, new Integer[] {1},
+					StockMode.DATABASE.getCode(), FoodItemStatus.OUT_OF_STOCK.getCode()).isEmpty()) {
+				throw new InsufficientStockException("Sold out");
+			}
+		}));
+
+		log.info("{} buyers for {} units: batched {} orders/s (p50 {} ms, p99 {} ms), "
+				+ "database {} orders/s (p50 {} ms, p99 {} ms)", BUYERS, STOCK,
+				batchedRun.ordersPerSecond(), batchedRun.percentileMillis(50), batchedRun.percentileMillis(99),
+				databaseRun.ordersPerSecond(), databaseRun.percentileMillis(50), databaseRun.percentileMillis(99));
+
+		for (Stampede run : List.of(batchedRun, databaseRun)) {
+			assertThat(run.failed()).isZero();
+			assertThat(run.granted()).isEqualTo(STOCK);
+			assertThat(run.rejected()).isEqualTo(BUYERS - STOCK);
+		}
+		assertThat(foodItemRepository.findAvailableQuantityById(batched.getId())).contains(0);
+		assertThat(foodItemRepository.findAvailableQuantityById(database.getId())).contains(0);
+	}
+
+	/**
+	 * Release every buyer at once and time each one from the start signal until its order is placed or refused
+	 */
+	private Stampede stampede(Runnable buyer) throws InterruptedException {
+		AtomicInteger granted = new AtomicInteger();
+		AtomicInteger rejected = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		long[] latencies = new long[BUYERS];
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(BUYERS);
+		long startedAt;
+
+		try (ExecutorService buyers = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < BUYERS; i++) {
+				int index = i;
+				buyers.execute(() -> {
+					try {
+						start.await();
+						long began = System.nanoTime();
+						try {
+							buyer.run();
+							granted.incrementAndGet();
+						} catch (InsufficientStockException e) {
+							rejected.incrementAndGet();
+						} finally {
+							latencies[index] = System.nanoTime() - began;
+						}
+					} catch (Exception e) {
+						failed.incrementAndGet();
+					} finally {
+						done.countDown();
+					}
+				});
+			}
+
+			startedAt = System.nanoTime();
+			start.countDown();
+			assertThat(done.await(60, TimeUnit.SECONDS)).isTrue();
+		}
+
+		long elapsed = System.nanoTime() - startedAt;
+		Arrays.sort(latencies);
+		return new Stampede(granted.get(), rejected.get(), failed.get(), elapsed, latencies);
+	}
+
+	private FoodItem saveFoodItem(StockMode stockMode) {
+		FoodItem foodItem = TestFixtures.foodItem(store, category, "Banh mi", STOCK);
+		foodItem.setStockMode(stockMode);
+		foodItem = foodItemRepository.save(foodItem);
+		foodItems.add(foodItem);
+		return foodItem;
+	}
+
+	private record Stampede(int granted, int rejected, int failed, long elapsedNanos, long[] sortedLatencies) {
+
+		long ordersPerSecond() {
+			return granted * TimeUnit.SECONDS.toNanos(1) / Math.max(elapsedNanos, 1);
+		}
+
+		long percentileMillis(int percentile) {
+			int index = Math.min(sortedLatencies.length - 1, sortedLatencies.length * percentile / 100);
+			return TimeUnit.NANOSECONDS.toMillis(sortedLatencies[index]);
+		}
+
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.repository.FoodItemRepository;
+import com.flashfood.flash_food.repository.StoreRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Matching and ranking of the in-memory search index over a handful of food items
+ */
+class SearchIndexTest {
+
+	private FoodItemRepository foodItemRepository;
+	private SearchIndex searchIndex;
+
+	@BeforeEach
+	void setUp() {
+		foodItemRepository = mock(FoodItemRepository.class);
+		searchIndex = new SearchIndex(foodItemRepository, mock(StoreRepository.class), mock(StringRedisTemplate.class),
+				mock(RedisMessageListenerContainer.class), new SimpleMeterRegistry());
+		index(List.of(
+				new Document(1L, "Bánh mì thịt", "Giòn rụm", "Bánh mì", "Lò Mì Hòa"),
+				new Document(2L, "Bánh ngọt dâu", "Kem tươi", "Tráng miệng", "Tiệm Dâu"),
+				new Document(3L, "Cơm tấm sườn", "Sườn nướng", "Cơm", "Quán Cơm"),
+				new Document(4L, "Croissant bơ", null, "Điểm tâm", "Tiệm Pháp"),
+				new Document(5L, "Trà sữa", null, "Đồ uống", "Tiệm Bánh Kem")));
+	}
+
+	@Test
+	void matchesWithOrWithoutDiacritics() {
+		assertThat(search("BANH NGOT")).containsExactly(2L);
+		assertThat(search("bánh ngọt")).containsExactly(2L);
+	}
+
+	@Test
+	void matchesWordsStillBeingTyped() {
+		assertThat(search("ban")).containsExactlyInAnyOrder(1L, 2L, 5L);
+		assertThat(search("com ta")).containsExactly(3L);
+	}
+
+	@Test
+	void prefixMatchesEveryTermItStarts() {
+		List<Document> combos = new ArrayList<>();
+		for (long id = 1; id <= 60; id++) {
+			combos.add(new Document(id, "Combo" + id, null, null, "Quán Cơm"));
+		}
+		index(combos);
+
+		Page<Long> page = searchIndex.searchFoodItems("combo", PageRequest.of(0, 10));
+
+		assertThat(page.getTotalElements()).isEqualTo(60);
+		assertThat(page.getContent()).hasSize(10);
+	}
+
+	@Test
+	void toleratesTyposInLongerWords() {
+		assertThat(search("croisant")).containsExactly(4L);
+		// Too short to guess at: only exact and prefix matches
+		assertThat(search("cem")).isEmpty();
+	}
+
+	@Test
+	void ranksNameMatchesAboveStoreMatchesThenNewestFirst() {
+		assertThat(search("banh")).containsExactly(2L, 1L, 5L);
+	}
+
+	@Test
+	void pagesThroughRankedMatches() {
+		Page<Long> second = searchIndex.searchFoodItems("banh", PageRequest.of(1, 1));
+		Page<Long> beyond = searchIndex.searchFoodItems("banh", PageRequest.of(3, 1));
+
+		assertThat(second.getContent()).containsExactly(1L);
+		assertThat(second.getTotalElements()).isEqualTo(3);
+		assertThat(beyond.getContent()).isEmpty();
+		assertThat(beyond.getTotalElements()).isEqualTo(3);
+	}
+
+	private List<Long> search(String query) {
+		return searchIndex.searchFoodItems(query, PageRequest.of(0, 20)).getContent();
+	}
+
+	private void index(List<Document> documents) {
+		when(foodItemRepository.findSearchDocuments(any(), any())).thenReturn(new ArrayList<>(documents));
+		searchIndex.rebuild();
+	}
+
+	private record Document(Long id, String name, String description, String categoryName, String storeName)
+			implements FoodItemRepository.SearchDocumentView {
+
+		@Override
+		public Long getId() {
+			return id;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String getDescription() {
+			return description;
+		}
+
+		@Override
+		public String getCategoryName() {
+			return categoryName;
+		}
+
+		@Override
+		public String getStoreName() {
+			return storeName;
+		}
+	}
+
+}
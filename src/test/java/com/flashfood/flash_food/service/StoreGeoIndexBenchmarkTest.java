@@ -0,0 +1,217 @@
+package com.flashfood.flash_food.service;
+
+import com.flashfood.flash_food.repository.StoreRepository;
+import com.flashfood.flash_food.util.GeoGrid;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Nearby-store lookups from the in-memory GeoGrid against the Redis GEO path at 10k, 100k and 1M stores.
+ * Stores are spread uniformly over a 2 x 2 degree box around Ho Chi Minh City and every query asks for
+ * stores within 3 km, or the 10 nearest, of a random point in the box. "Redis" is RedisGeoService
+ * (GEOSEARCH round trip); both return IDs with distances.
+ * Redis is loaded with RedisGeoService.reindexStores() from a simulated repository, which also times the
+ * pipelined bulk load and swap.
+ * Both paths must find the same stores; timings are logged, not asserted.
+ * Needs the Redis from application.properties; the benchmark uses database 15 and removes its keys afterwards.
+ */
+@Tag("benchmark")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class StoreGeoIndexBenchmarkTest {
+
+	private static final Logger log = LoggerFactory.getLogger(StoreGeoIndexBenchmarkTest.class);
+
+	private static final String STORE_GEO_KEY = "geo:stores"; // RedisGeoService's key
+	private static final int BENCHMARK_DATABASE = 15;
+	private static final double CENTER_LAT = 10.77;
+	private static final double CENTER_LON = 106.70;
+	private static final double SPREAD_DEGREES = 1.0;
+	private static final double RADIUS_KM = 3.0;
+	// Redis' geohash precision and earth radius shift distances by a few meters
+	private static final double TOLERANCE_KM = 0.01;
+	private static final int NEAREST = 10;
+	private static final double NEAREST_MAX_RADIUS_KM = 20.0;
+	private static final int MAX_RESULTS = 100_000;
+	private static final int REINDEX_BATCH = 5000;
+	private static final int CHECKED_QUERIES = 20;
+	private static final int WARMUP = 200;
+	private static final int QUERIES = 1000;
+
+	private LettuceConnectionFactory connectionFactory;
+	private StringRedisTemplate redisTemplate;
+	private StoreRepository storeRepository;
+	private RedisGeoService redisGeoService;
+
+	@BeforeAll
+	void connect() {
+		RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration("localhost", 6379);
+		configuration.setDatabase(BENCHMARK_DATABASE);
+		connectionFactory = new LettuceConnectionFactory(configuration);
+		connectionFactory.afterPropertiesSet();
+		connectionFactory.start();
+		redisTemplate = new StringRedisTemplate(connectionFactory);
+		storeRepository = mock(StoreRepository.class);
+		redisGeoService = new RedisGeoService(redisTemplate, storeRepository, MAX_RESULTS, REINDEX_BATCH, 300, 60);
+	}
+
+	@AfterAll
+	void disconnect() {
+		redisTemplate.delete(redisTemplate.keys("geo:stores*"));
+		connectionFactory.destroy();
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {10_000, 100_000, 1_000_000})
+	void gridFindsTheSameStoresAsRedis(int stores) {
+		Random random = new Random(stores);
+		double[] latitudes = new double[stores];
+		double[] longitudes = new double[stores];
+		GeoGrid grid = new GeoGrid(0.02);
+		// Store i has ID i + 1
+		for (int i = 0; i < stores; i++) {
+			latitudes[i] = CENTER_LAT + (random.nextDouble() * 2 - 1) * SPREAD_DEGREES;
+			longitudes[i] = CENTER_LON + (random.nextDouble() * 2 - 1) * SPREAD_DEGREES;
+			grid.put(i + 1, latitudes[i], longitudes[i]);
+		}
+		long reindexMs = reindexRedis(latitudes, longitudes);
+
+		double[][] centers = new double[WARMUP + QUERIES][];
+		for (int i = 0; i < centers.length; i++) {
+			centers[i] = new double[] {
+					CENTER_LAT + (random.nextDouble() * 2 - 1) * SPREAD_DEGREES,
+					CENTER_LON + (random.nextDouble() * 2 - 1) * SPREAD_DEGREES};
+		}
+
+		// Same stores both ways, give or take stores within TOLERANCE_KM of the boundary
+		for (int q = 0; q < CHECKED_QUERIES; q++) {
+			double[] center = centers[q];
+			Set<Long> fromRedis = ids(redisGeoService.findNearbyStores(center[1], center[0], RADIUS_KM));
+			Map<Long, Double> distances = new HashMap<>();
+			grid.withinRadius(center[0], center[1], RADIUS_KM + TOLERANCE_KM, MAX_RESULTS)
+					.forEach(hit -> distances.put(hit.id(), hit.distanceKm()));
+			distances.forEach((id, distanceKm) -> {
+				if (distanceKm < RADIUS_KM - TOLERANCE_KM) {
+					assertThat(fromRedis).contains(id);
+				}
+			});
+			assertThat(distances.keySet()).containsAll(fromRedis);
+
+			List<GeoGrid.Hit> nearestFromRedis = redisGeoService.findNearestStores(center[1], center[0],
+					NEAREST_MAX_RADIUS_KM, NEAREST);
+			List<GeoGrid.Hit> nearestFromGrid = grid.nearest(center[0], center[1], NEAREST, NEAREST_MAX_RADIUS_KM);
+			assertThat(nearestFromGrid).hasSameSizeAs(nearestFromRedis);
+			for (int i = 0; i < nearestFromGrid.size(); i++) {
+				assertThat(nearestFromGrid.get(i).distanceKm())
+						.isCloseTo(nearestFromRedis.get(i).distanceKm(), within(TOLERANCE_KM));
+			}
+			// Only the last place can swap for a store at practically the same distance
+			double farthestKm = nearestFromRedis.get(nearestFromRedis.size() - 1).distanceKm();
+			Set<Long> nearestRedisIds = ids(nearestFromRedis);
+			nearestFromGrid.stream()
+					.filter(hit -> hit.distanceKm() < farthestKm - TOLERANCE_KM)
+					.forEach(hit -> assertThat(nearestRedisIds).contains(hit.id()));
+		}
+
+		long radiusRedis = measure(q -> redisGeoService.findNearbyStores(centers[q][1], centers[q][0], RADIUS_KM), centers.length);
+		long radiusGrid = measure(q -> grid.withinRadius(centers[q][0], centers[q][1], RADIUS_KM, MAX_RESULTS),
+				centers.length);
+		long nearestRedis = measure(q -> redisGeoService.findNearestStores(centers[q][1], centers[q][0],
+				NEAREST_MAX_RADIUS_KM, NEAREST), centers.length);
+		long nearestGrid = measure(q -> grid.nearest(centers[q][0], centers[q][1], NEAREST, NEAREST_MAX_RADIUS_KM),
+				centers.length);
+
+		log.info("{} stores: reindex {} ms; within {} km redis {} us/query, grid {} us/query ({}x); "
+						+ "nearest {} redis {} us/query, grid {} us/query ({}x)",
+				stores, reindexMs, RADIUS_KM, radiusRedis / 1000, radiusGrid / 1000,
+				String.format("%.1f", (double) radiusRedis / radiusGrid),
+				NEAREST, nearestRedis / 1000, nearestGrid / 1000,
+				String.format("%.1f", (double) nearestRedis / nearestGrid));
+	}
+
+	private static Set<Long> ids(List<GeoGrid.Hit> hits) {
+		return new HashSet<>(hits.stream().map(GeoGrid.Hit::id).toList());
+	}
+
+	/**
+	 * Milliseconds for a full reindex, with the repository serving keyset batches from the arrays
+	 */
+	private long reindexRedis(double[] latitudes, double[] longitudes) {
+		when(storeRepository.findActiveStoresWithCoordinates(anyLong(), any(Limit.class))).thenAnswer(invocation -> {
+			long afterId = invocation.getArgument(0);
+			int limit = invocation.<Limit>getArgument(1).max();
+			List<StoreRepository.LocationView> batch = new ArrayList<>(limit);
+			for (int i = (int) afterId; i < latitudes.length && batch.size() < limit; i++) {
+				batch.add(new Location((long) i + 1, latitudes[i], longitudes[i]));
+			}
+			return batch;
+		});
+
+		long startedAt = System.nanoTime();
+		redisGeoService.reindexStores();
+		long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+		assertThat(redisTemplate.opsForZSet().size(STORE_GEO_KEY)).isEqualTo(latitudes.length);
+		assertThat(redisTemplate.hasKey("geo:stores:reindex")).isFalse();
+		return elapsedMs;
+	}
+
+	/**
+	 * Mean nanoseconds per query after WARMUP untimed queries
+	 */
+	private long measure(IntFunction<List<?>> query, int queries) {
+		for (int q = 0; q < WARMUP; q++) {
+			query.apply(q);
+		}
+		long startedAt = System.nanoTime();
+		for (int q = WARMUP; q < queries; q++) {
+			query.apply(q);
+		}
+		return (System.nanoTime() - startedAt) / (queries - WARMUP);
+	}
+
+	private record Location(Long id, Double latitude, Double longitude) implements StoreRepository.LocationView {
+
+		@Override
+		public Long getId() {
+			return id;
+		}
+
+		@Override
+		public Double getLatitude() {
+			return latitude;
+		}
+
+		@Override
+		public Double getLongitude() {
+			return longitude;
+		}
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.flashfood.flash_food.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Folding and tokenizing of Vietnamese text for the search index
+ */
+class SearchTextTest {
+
+	@Test
+	void foldsDiacriticsAndCase() {
+		assertThat(SearchText.fold("Bánh ngọt")).isEqualTo("banh ngot");
+		assertThat(SearchText.fold("BÁNH NGỌT")).isEqualTo("banh ngot");
+		assertThat(SearchText.fold("Đậu hũ đỏ")).isEqualTo("dau hu do");
+	}
+
+	@Test
+	void splitsIntoDistinctTermsInOrder() {
+		assertThat(SearchText.terms("Bánh mì, bánh ngọt & trà sữa!")).containsExactly("banh", "mi", "ngot", "tra", "sua");
+		assertThat(SearchText.terms("  -- ")).isEmpty();
+	}
+
+	@Test
+	void marksTermBoundariesInTrigrams() {
+		assertThat(SearchText.trigrams("com")).containsExactly("$co", "com", "om$");
+	}
+
+}